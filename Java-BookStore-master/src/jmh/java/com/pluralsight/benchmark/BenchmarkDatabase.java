@@ -0,0 +1,55 @@
+package com.pluralsight.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Properties;
+
+import com.pluralsight.Book;
+import com.pluralsight.BookDAO;
+import com.pluralsight.DBConnection;
+
+/**
+ * A throwaway book_store database in the temp directory, filled with a given
+ * number of generated books.
+ */
+class BenchmarkDatabase {
+	final File file;
+	final DBConnection dbConnection;
+	final BookDAO bookDAO;
+
+	BenchmarkDatabase(int rows) throws IOException {
+		file = File.createTempFile("bookstore-bench", ".db");
+		file.delete();
+		Properties settings = new Properties();
+		settings.setProperty("db.url", "jdbc:sqlite:" + file.getAbsolutePath());
+		dbConnection = new DBConnection(settings);
+		bookDAO = new BookDAO(dbConnection.getConnectionPool(), dbConnection.getReadConnectionPool());
+		// the schema already holds one seed book
+		bookDAO.insertBooks(generate(rows - 1), 10000);
+	}
+
+	static Iterable<Book> generate(final int count) {
+		return () -> new Iterator<Book>() {
+			int i;
+
+			@Override
+			public boolean hasNext() {
+				return i < count;
+			}
+
+			@Override
+			public Book next() {
+				i++;
+				return new Book("Title " + i, "Author " + (i % 997), (i % 5000) / 100f);
+			}
+		};
+	}
+
+	void close() {
+		dbConnection.disconnect();
+		for (String suffix : new String[] {"", "-wal", "-shm"}) {
+			new File(file.getPath() + suffix).delete();
+		}
+	}
+}
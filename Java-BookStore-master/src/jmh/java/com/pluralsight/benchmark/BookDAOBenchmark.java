@@ -0,0 +1,89 @@
+package com.pluralsight.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.pluralsight.Book;
+import com.pluralsight.BookDAO;
+import com.pluralsight.CachingBookDAO;
+import com.pluralsight.SnapshotBookDAO;
+
+/**
+ * Read paths of BookDAO against catalogs of different sizes: straight to
+ * SQLite, through CachingBookDAO, or served from a SnapshotBookDAO.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookDAOBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	public int rows;
+
+	@Param({"database", "cache", "snapshot"})
+	public String dao;
+
+	private BenchmarkDatabase database;
+	private BookDAO bookDAO;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		database = new BenchmarkDatabase(rows);
+		if ("cache".equals(dao)) {
+			bookDAO = new CachingBookDAO(database.bookDAO, 10000, 256);
+		} else if ("snapshot".equals(dao)) {
+			bookDAO = new SnapshotBookDAO(database.bookDAO);
+		} else {
+			bookDAO = database.bookDAO;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (bookDAO instanceof SnapshotBookDAO) {
+			((SnapshotBookDAO) bookDAO).close();
+		}
+		database.close();
+	}
+
+	@Benchmark
+	public Book getBook() {
+		return bookDAO.getBook(1 + ThreadLocalRandom.current().nextInt(rows));
+	}
+
+	@Benchmark
+	public ArrayList<Book> listBooksPage() {
+		return bookDAO.listBooks(ThreadLocalRandom.current().nextInt(rows), 50);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public ArrayList<Book> listAllBooks() {
+		return bookDAO.listAllBooks();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void forEachBook(Blackhole blackhole) {
+		bookDAO.forEachBook(blackhole::consume);
+	}
+}
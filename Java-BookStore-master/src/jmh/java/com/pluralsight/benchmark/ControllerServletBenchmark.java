@@ -0,0 +1,96 @@
+package com.pluralsight.benchmark;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pluralsight.BookStoreListener;
+import com.pluralsight.CachingBookDAO;
+import com.pluralsight.ControllerServlet;
+
+/**
+ * ControllerServlet.doGet dispatch up to the JSP forward, which is stubbed
+ * out, so this measures routing, validators and DAO work but not rendering.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControllerServletBenchmark {
+
+	@Param({"false", "true"})
+	public boolean cached;
+
+	private BenchmarkDatabase database;
+	private ControllerServlet servlet;
+	private HttpServletRequest list;
+	private HttpServletRequest admin;
+	private HttpServletRequest newForm;
+	private HttpServletResponse response;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		database = new BenchmarkDatabase(10000);
+
+		Properties settings = new Properties();
+		settings.setProperty("async.enabled", "false");
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put(BookStoreListener.SETTINGS_ATTRIBUTE, settings);
+		attributes.put(BookStoreListener.BOOK_DAO_ATTRIBUTE,
+				cached ? new CachingBookDAO(database.bookDAO, 10000, 256) : database.bookDAO);
+
+		servlet = new ControllerServlet();
+		servlet.init(ServletStubs.config(attributes));
+
+		Map<String, String> noHeaders = Collections.emptyMap();
+		Map<String, String> page = new HashMap<>();
+		page.put("after", "5000");
+		page.put("size", "50");
+		list = ServletStubs.request("/list", page, noHeaders);
+		admin = ServletStubs.request("/admin", page, noHeaders);
+		newForm = ServletStubs.request("/new", Collections.emptyMap(), noHeaders);
+		response = ServletStubs.response();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		servlet.destroy();
+		database.close();
+	}
+
+	@Benchmark
+	public void list() throws Exception {
+		servlet.doGet(list, response);
+	}
+
+	@Benchmark
+	public void admin() throws Exception {
+		servlet.doGet(admin, response);
+	}
+
+	@Benchmark
+	public void newForm() throws Exception {
+		servlet.doGet(newForm, response);
+	}
+}
@@ -0,0 +1,58 @@
+package com.pluralsight.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pluralsight.Book;
+
+/**
+ * One auto-committed insertBook per row against insertBooks in batches. Both
+ * report the time per inserted row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+	private static final int BATCH = 1000;
+
+	private BenchmarkDatabase database;
+	private final Book book = new Book("Benchmark", "Author", 9.99f);
+	private final Iterable<Book> batch = BenchmarkDatabase.generate(BATCH);
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		database = new BenchmarkDatabase(1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		database.close();
+	}
+
+	@Benchmark
+	public boolean insertBook() {
+		return database.bookDAO.insertBook(book);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int insertBooksBatched() {
+		return database.bookDAO.insertBooks(batch, BATCH);
+	}
+}
@@ -0,0 +1,97 @@
+package com.pluralsight.benchmark;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Bare-bones servlet API objects for driving a servlet outside a container.
+ * They are dynamic proxies rather than mocks, so recording invocations does
+ * not show up in the measurements; any method not handled here returns
+ * null, false or zero.
+ */
+class ServletStubs {
+
+	static ServletConfig config(Map<String, Object> contextAttributes) {
+		ServletContext context = proxy(ServletContext.class, (name, args) ->
+				name.equals("getAttribute") ? contextAttributes.get(args[0]) : null);
+		return proxy(ServletConfig.class, (name, args) ->
+				name.equals("getServletContext") ? context : null);
+	}
+
+	static HttpServletRequest request(String pathInfo, Map<String, String> parameters,
+			Map<String, String> headers) {
+		Map<String, Object> attributes = new HashMap<>();
+		RequestDispatcher dispatcher = proxy(RequestDispatcher.class, (name, args) -> null);
+		return proxy(HttpServletRequest.class, (name, args) -> {
+			switch (name) {
+				case "getPathInfo": return pathInfo;
+				case "getMethod": return "GET";
+				case "getParameter": return parameters.get(args[0]);
+				case "getHeader": return headers.get(args[0]);
+				case "getDateHeader": return -1L;
+				case "getLocale": return Locale.US;
+				case "getAttribute": return attributes.get(args[0]);
+				case "setAttribute": attributes.put((String) args[0], args[1]); return null;
+				case "getRequestDispatcher": return dispatcher;
+				default: return null;
+			}
+		});
+	}
+
+	static HttpServletResponse response() {
+		PrintWriter writer = new PrintWriter(new Writer() {
+			@Override
+			public void write(char[] buffer, int offset, int length) {
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		return proxy(HttpServletResponse.class, (name, args) ->
+				name.equals("getWriter") ? writer : null);
+	}
+
+	interface Handler {
+		Object invoke(String method, Object[] args) throws Throwable;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+				(proxy, method, args) -> {
+					Object result = handler.invoke(method.getName(), args);
+					if (result == null && method.getReturnType().isPrimitive()) {
+						return defaultValue(method.getReturnType());
+					}
+					return result;
+				});
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == void.class) {
+			return null;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,130 @@
+package com.pluralsight.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.ApplicationParameter;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+
+import com.pluralsight.Book;
+import com.pluralsight.BookDAO;
+import com.pluralsight.DBConnection;
+import com.pluralsight.ShardedBookDAO;
+
+/**
+ * The webapp running in an embedded Tomcat against a fresh book_store
+ * database in a temporary directory.
+ *
+ * Settings given to the constructor replace the web.xml context-params of
+ * the same name, so one web.xml serves every configuration under test.
+ */
+class EmbeddedBookStore implements AutoCloseable {
+	// held so the level is not lost when the logger is garbage collected
+	private static final Logger TOMCAT_LOGGER = Logger.getLogger("org.apache");
+
+	private final Path directory;
+	private final Tomcat tomcat;
+	private final int port;
+
+	EmbeddedBookStore(File webapp, int rows, Map<String, String> settings) throws IOException, LifecycleException {
+		directory = Files.createTempDirectory("bookstore-load");
+		String dbUrl = "jdbc:sqlite:" + directory.resolve("book_store.db");
+		seed(dbUrl, rows, settings);
+
+		TOMCAT_LOGGER.setLevel(Level.WARNING);
+		tomcat = new Tomcat();
+		tomcat.setBaseDir(directory.resolve("tomcat").toString());
+		tomcat.setPort(0);
+		tomcat.getConnector();
+		Context context = tomcat.addWebapp("", webapp.getAbsolutePath());
+		// the test classpath is the webapp's classpath; its jars' manifest
+		// Class-Path entries point at files Maven never downloads
+		((StandardJarScanner) context.getJarScanner()).setScanManifest(false);
+		setParameter(context, "db.url", dbUrl);
+		setParameter(context, "writeBehind.journal", directory.resolve("book_store.journal").toString());
+		for (Map.Entry<String, String> setting : settings.entrySet()) {
+			setParameter(context, setting.getKey(), setting.getValue());
+		}
+		tomcat.start();
+		port = tomcat.getConnector().getLocalPort();
+	}
+
+	String getBaseUrl() {
+		return "http://localhost:" + port;
+	}
+
+	@Override
+	public void close() throws Exception {
+		tomcat.stop();
+		tomcat.destroy();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	// override=false lets the value win over the web.xml context-param
+	private static void setParameter(Context context, String name, String value) {
+		ApplicationParameter parameter = new ApplicationParameter();
+		parameter.setName(name);
+		parameter.setValue(value);
+		parameter.setOverride(false);
+		context.addApplicationParameter(parameter);
+	}
+
+	// through ShardedBookDAO when the run is sharded, so every shard gets its books
+	private static void seed(String dbUrl, int rows, Map<String, String> overrides) {
+		Properties settings = new Properties();
+		settings.putAll(overrides);
+		settings.setProperty("db.url", dbUrl);
+		int shardCount = Integer.parseInt(settings.getProperty("db.shards", "1"));
+		List<DBConnection> dbConnections = new ArrayList<>();
+		try {
+			BookDAO[] shards = new BookDAO[shardCount];
+			for (int i = 0; i < shardCount; i++) {
+				DBConnection dbConnection = new DBConnection(shardCount > 1
+						? ShardedBookDAO.shardSettings(settings, i, shardCount)
+						: settings);
+				dbConnections.add(dbConnection);
+				shards[i] = new BookDAO(dbConnection.getConnectionPool(), dbConnection.getReadConnectionPool());
+			}
+			BookDAO bookDAO = shardCount > 1 ? new ShardedBookDAO(shards) : shards[0];
+			// the schema already holds one seed book
+			bookDAO.insertBooks(generate(rows - 1), 10000);
+		} finally {
+			for (DBConnection dbConnection : dbConnections) {
+				dbConnection.disconnect();
+			}
+		}
+	}
+
+	private static Iterable<Book> generate(final int count) {
+		return () -> new Iterator<Book>() {
+			int i;
+
+			@Override
+			public boolean hasNext() {
+				return i < count;
+			}
+
+			@Override
+			public Book next() {
+				i++;
+				return new Book("Title " + i, "Author " + (i % 997), (i % 5000) / 100f);
+			}
+		};
+	}
+}
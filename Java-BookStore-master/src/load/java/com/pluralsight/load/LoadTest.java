@@ -0,0 +1,267 @@
+package com.pluralsight.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.pluralsight.LatencyHistogram;
+
+/**
+ * Drives the BookStore webapp with concurrent virtual users and reports
+ * throughput, latency percentiles and errors per operation.
+ *
+ * By default the webapp is started in an embedded Tomcat against a temporary
+ * database holding -rows generated books; -set overrides any web.xml
+ * context-param for the run, so configurations can be compared side by side:
+ *
+ *   -users 32 -duration 60 -set cache.enabled=false
+ *   -set db.pool.maxSize=4 -set db.sqlite.journalMode=DELETE
+ *   -users 2000 -think 100 -mix list=50,addcart=45,checkout=5
+ *
+ * With -url an already running server is driven instead. Either way the
+ * users start once the server's /ready probe reports its own startup warm-up
+ * finished. Requests sent during the -warmup period are not counted.
+ */
+public class LoadTest {
+	private static final String DEFAULT_MIX = "list=40,get=30,search=10,insert=10,update=7,delete=3";
+
+	enum Operation {
+		LIST, GET, SEARCH, INSERT, UPDATE, DELETE, ADDCART, CHECKOUT;
+
+		// redirects are what the write actions answer with; a book may
+		// already have been deleted by another user
+		boolean accepts(int status) {
+			return status < 400 || (this == GET && status == 404);
+		}
+	}
+
+	/** Operations weighted by how often they are picked. */
+	static class Mix {
+		private final Operation[] operations;
+		private final int[] cumulativeWeights;
+
+		Mix(String spec) {
+			Map<Operation, Integer> weights = new LinkedHashMap<>();
+			for (String part : spec.split(",")) {
+				String[] pair = part.trim().split("=");
+				if (pair.length != 2) {
+					throw new IllegalArgumentException("Mix entries look like list=40, got " + part);
+				}
+				int weight = Integer.parseInt(pair[1].trim());
+				if (weight > 0) {
+					weights.put(Operation.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)), weight);
+				}
+			}
+			if (weights.isEmpty()) {
+				throw new IllegalArgumentException("The mix needs at least one operation");
+			}
+			operations = weights.keySet().toArray(new Operation[0]);
+			cumulativeWeights = new int[operations.length];
+			int total = 0;
+			for (int i = 0; i < operations.length; i++) {
+				total += weights.get(operations[i]);
+				cumulativeWeights[i] = total;
+			}
+		}
+
+		Operation pick(ThreadLocalRandom random) {
+			int ticket = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+			for (int i = 0; ; i++) {
+				if (ticket < cumulativeWeights[i]) {
+					return operations[i];
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder spec = new StringBuilder();
+			for (int i = 0; i < operations.length; i++) {
+				spec.append(i == 0 ? "" : ",").append(operations[i].name().toLowerCase(Locale.ROOT))
+						.append('=').append(cumulativeWeights[i] - (i == 0 ? 0 : cumulativeWeights[i - 1]));
+			}
+			return spec.toString();
+		}
+	}
+
+	/** Latencies and failures per operation, shared by every virtual user. */
+	static class Results {
+		private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+		private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+		private final ConcurrentHashMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+		private final LatencyHistogram total = new LatencyHistogram();
+		private final LongAdder totalErrors = new LongAdder();
+
+		Results() {
+			for (Operation operation : Operation.values()) {
+				latencies.put(operation, new LatencyHistogram());
+				errors.put(operation, new LongAdder());
+			}
+		}
+
+		/** outcome is null for a success, otherwise the status code or exception. */
+		void record(Operation operation, long nanos, String outcome) {
+			latencies.get(operation).record(nanos);
+			total.record(nanos);
+			if (outcome != null) {
+				errors.get(operation).increment();
+				totalErrors.increment();
+				failures.computeIfAbsent(operation.name().toLowerCase(Locale.ROOT) + " " + outcome,
+						key -> new LongAdder()).increment();
+			}
+		}
+
+		void print(PrintStream out, double seconds) {
+			out.printf("%-8s %10s %8s %7s %10s %9s %9s %9s %9s%n",
+					"", "requests", "errors", "error%", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+			for (Operation operation : Operation.values()) {
+				LatencyHistogram histogram = latencies.get(operation);
+				if (histogram.getCount() > 0) {
+					printRow(out, operation.name().toLowerCase(Locale.ROOT), histogram,
+							errors.get(operation).sum(), seconds);
+				}
+			}
+			printRow(out, "total", total, totalErrors.sum(), seconds);
+			if (!failures.isEmpty()) {
+				out.println();
+				out.println("Failures:");
+				new TreeMap<>(failures).forEach((key, count) -> out.printf("  %-30s %d%n", key, count.sum()));
+			}
+		}
+
+		private static void printRow(PrintStream out, String name, LatencyHistogram histogram, long errors,
+				double seconds) {
+			long count = histogram.getCount();
+			out.printf("%-8s %10d %8d %6.2f%% %10.1f %9.2f %9.2f %9.2f %9.2f%n", name, count, errors,
+					count == 0 ? 0 : 100.0 * errors / count, count / seconds,
+					histogram.getValueAtQuantile(0.5) / 1e6, histogram.getValueAtQuantile(0.99) / 1e6,
+					histogram.getValueAtQuantile(0.999) / 1e6, histogram.getMaxNanos() / 1e6);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int users = 16;
+		int durationSeconds = 30;
+		int warmupSeconds = 5;
+		int rows = 10000;
+		long thinkMillis = 0;
+		String mixSpec = DEFAULT_MIX;
+		String url = null;
+		File webapp = new File("src/main/webapp");
+		Map<String, String> settings = new LinkedHashMap<>();
+
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("-help")) {
+				usage();
+				return;
+			}
+			if (i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value for " + option);
+			}
+			String value = args[++i];
+			switch (option) {
+				case "-users": users = Integer.parseInt(value); break;
+				case "-duration": durationSeconds = Integer.parseInt(value); break;
+				case "-warmup": warmupSeconds = Integer.parseInt(value); break;
+				case "-rows": rows = Integer.parseInt(value); break;
+				case "-think": thinkMillis = Long.parseLong(value); break;
+				case "-mix": mixSpec = value; break;
+				case "-url": url = value; break;
+				case "-webapp": webapp = new File(value); break;
+				case "-set":
+					int equals = value.indexOf('=');
+					if (equals < 1) {
+						throw new IllegalArgumentException("-set expects name=value, got " + value);
+					}
+					settings.put(value.substring(0, equals), value.substring(equals + 1));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + option + ", see -help");
+			}
+		}
+		Mix mix = new Mix(mixSpec);
+
+		// keep one pooled connection per user, and never resend a POST behind our back
+		System.setProperty("http.maxConnections", Integer.toString(users));
+		System.setProperty("sun.net.http.retryPost", "false");
+
+		EmbeddedBookStore store = url == null ? new EmbeddedBookStore(webapp, rows, settings) : null;
+		try {
+			String baseUrl = store != null ? store.getBaseUrl() : url;
+			awaitReady(baseUrl);
+			System.out.println();
+			System.out.println("Target   " + baseUrl + (store != null ? " (embedded, " + rows + " books)" : ""));
+			System.out.println("Settings " + (settings.isEmpty() ? "web.xml defaults" : settings));
+			System.out.println("Load     " + users + " users, mix " + mix + ", " + warmupSeconds + " s warm-up, "
+					+ durationSeconds + " s measured" + (thinkMillis > 0 ? ", " + thinkMillis + " ms think time" : ""));
+
+			Results results = new Results();
+			AtomicInteger maxId = new AtomicInteger(rows);
+			long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+			long stopAt = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+			List<Thread> threads = new ArrayList<>();
+			for (int i = 0; i < users; i++) {
+				Thread thread = new Thread(new VirtualUser(baseUrl, mix, results, maxId, measureFrom, stopAt,
+						thinkMillis), "virtual-user-" + (i + 1));
+				thread.start();
+				threads.add(thread);
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			System.out.println();
+			results.print(System.out, durationSeconds);
+		} finally {
+			if (store != null) {
+				store.close();
+			}
+		}
+	}
+
+	// Waits for the server's startup warm-up, as a load balancer would; a
+	// server without /ready is taken to be ready
+	private static void awaitReady(String baseUrl) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(120);
+		while (true) {
+			HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/ready").openConnection();
+			int status = connection.getResponseCode();
+			connection.disconnect();
+			if (status != HttpURLConnection.HTTP_UNAVAILABLE) {
+				return;
+			}
+			if (System.nanoTime() > deadline) {
+				throw new IOException(baseUrl + " did not become ready");
+			}
+			Thread.sleep(200);
+		}
+	}
+
+	private static void usage() {
+		System.out.println("Options:");
+		System.out.println("  -users <n>          concurrent virtual users (16)");
+		System.out.println("  -duration <s>       measured seconds (30)");
+		System.out.println("  -warmup <s>         seconds of load before measuring starts (5)");
+		System.out.println("  -rows <n>           books in the temporary database; ids requested are 1..n (10000)");
+		System.out.println("  -mix <spec>         operation weights (" + DEFAULT_MIX + ");");
+		System.out.println("                      addcart and checkout are also available");
+		System.out.println("  -think <ms>         pause between a user's requests (0)");
+		System.out.println("  -set <name=value>   override a web.xml context-param, repeatable");
+		System.out.println("  -url <base url>     drive a running server instead of starting one");
+		System.out.println("  -webapp <dir>       webapp directory (src/main/webapp)");
+	}
+}
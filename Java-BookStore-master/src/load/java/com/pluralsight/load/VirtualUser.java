@@ -0,0 +1,142 @@
+package com.pluralsight.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One simulated client: picks an operation from the mix, sends it, records
+ * how long the response took, and repeats until the run is over. Like a
+ * browser it keeps its session cookie and does not follow redirects.
+ */
+class VirtualUser implements Runnable {
+	private final String baseUrl;
+	private final LoadTest.Mix mix;
+	private final LoadTest.Results results;
+	private final AtomicInteger maxId;
+	private final long measureFromNanos;
+	private final long stopAtNanos;
+	private final long thinkMillis;
+	private final byte[] drain = new byte[8192];
+	private String cookie;
+
+	VirtualUser(String baseUrl, LoadTest.Mix mix, LoadTest.Results results, AtomicInteger maxId,
+			long measureFromNanos, long stopAtNanos, long thinkMillis) {
+		this.baseUrl = baseUrl;
+		this.mix = mix;
+		this.results = results;
+		this.maxId = maxId;
+		this.measureFromNanos = measureFromNanos;
+		this.stopAtNanos = stopAtNanos;
+		this.thinkMillis = thinkMillis;
+	}
+
+	@Override
+	public void run() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (System.nanoTime() < stopAtNanos) {
+			LoadTest.Operation operation = mix.pick(random);
+			int id = 1 + random.nextInt(Math.max(maxId.get(), 1));
+			long startNanos = System.nanoTime();
+			String outcome;
+			try {
+				int status = send(operation, id, random);
+				outcome = operation.accepts(status) ? null : Integer.toString(status);
+				if (outcome == null && operation == LoadTest.Operation.INSERT) {
+					maxId.incrementAndGet();
+				}
+			} catch (IOException e) {
+				outcome = e.getClass().getSimpleName();
+			}
+			if (startNanos >= measureFromNanos) {
+				results.record(operation, System.nanoTime() - startNanos, outcome);
+			}
+			if (thinkMillis > 0) {
+				try {
+					Thread.sleep(thinkMillis);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	private int send(LoadTest.Operation operation, int id, ThreadLocalRandom random) throws IOException {
+		String title = "Load " + random.nextInt(1000000);
+		String author = "Author " + random.nextInt(997);
+		String price = Float.toString(random.nextInt(5000) / 100f);
+		switch (operation) {
+			case LIST:
+				return request("/books/list?after=" + id + "&size=50", null);
+			case SEARCH:
+				return request("/books/search?q=" + encode(author), null);
+			case GET:
+				return request("/api/books/" + id, null);
+			case INSERT:
+				return request("/books/insert", "booktitle=" + encode(title) + "&bookauthor=" + encode(author)
+						+ "&bookprice=" + price);
+			case UPDATE:
+				return request("/books/update", "id=" + id + "&booktitle=" + encode(title)
+						+ "&bookauthor=" + encode(author) + "&bookprice=" + price);
+			case DELETE:
+				return request("/books/delete", "id=" + id);
+			case ADDCART:
+				return request("/cart/addcart", "id=" + id + "&quantity=" + (1 + random.nextInt(3)));
+			case CHECKOUT:
+				return request("/cart/checkout", "");
+			default:
+				throw new IllegalArgumentException(operation.toString());
+		}
+	}
+
+	// GET, or POST when there is a form body; reads the whole response so the
+	// connection can be kept alive
+	private int request(String path, String form) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		connection.setInstanceFollowRedirects(false);
+		connection.setConnectTimeout(5000);
+		connection.setReadTimeout(60000);
+		if (cookie != null) {
+			connection.setRequestProperty("Cookie", cookie);
+		}
+		if (form != null) {
+			byte[] body = form.getBytes(StandardCharsets.UTF_8);
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			connection.setFixedLengthStreamingMode(body.length);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body);
+			}
+		}
+
+		int status = connection.getResponseCode();
+		String setCookie = connection.getHeaderField("Set-Cookie");
+		if (setCookie != null && setCookie.startsWith("JSESSIONID=")) {
+			int end = setCookie.indexOf(';');
+			cookie = end < 0 ? setCookie : setCookie.substring(0, end);
+		}
+		InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		if (in != null) {
+			try {
+				while (in.read(drain) >= 0) {
+					// discard
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return status;
+	}
+
+	private static String encode(String value) throws UnsupportedEncodingException {
+		return URLEncoder.encode(value, "UTF-8");
+	}
+}
@@ -0,0 +1,317 @@
+package com.pluralsight;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * An asynchronous request being served by a worker thread.
+ *
+ * Exactly one of dispatch, complete or the timeout gets to finish the
+ * request; whichever comes second is ignored. Once it is finished the
+ * container may recycle the request and response for another client, so the
+ * worker is handed guarded views of them (request() and response()): every
+ * call made after that point throws FinishedException, and reads and writes
+ * through their readers, writers and streams fail with an IOException as if
+ * the client had gone away.
+ *
+ * The check and the call it guards run under lock, and so does finishing the
+ * request. A worker part way through a write therefore holds off the
+ * container's timeout until the write is done, rather than writing to a
+ * response the timeout has already completed.
+ */
+class AsyncRequest implements AsyncListener {
+	static final String ATTRIBUTE = AsyncRequest.class.getName();
+	static final String FAILURE_ATTRIBUTE = ATTRIBUTE + ".failure";
+
+	private final AsyncContext context;
+	private final AtomicBoolean finished = new AtomicBoolean();
+	// held by guarded calls and by whatever finishes the request
+	private final ReentrantLock lock = new ReentrantLock();
+	private final long startNanos;
+	private final LatencyHistogram requestTimer;
+	private final Metrics.Histograms renderTimers;
+	private volatile String dispatchedPage;
+	private volatile long dispatchNanos;
+
+	/**
+	 * When the request completes, the time since startNanos is recorded in
+	 * requestTimer, and the JSP's rendering time in renderTimers.
+	 */
+	AsyncRequest(AsyncContext context, long timeoutMillis, long startNanos,
+			LatencyHistogram requestTimer, Metrics.Histograms renderTimers) {
+		this.context = context;
+		this.startNanos = startNanos;
+		this.requestTimer = requestTimer;
+		this.renderTimers = renderTimers;
+		context.setTimeout(timeoutMillis);
+		context.addListener(this);
+		context.getRequest().setAttribute(ATTRIBUTE, this);
+	}
+
+	static AsyncRequest of(ServletRequest request) {
+		return (AsyncRequest) request.getAttribute(ATTRIBUTE);
+	}
+
+	boolean isFinished() {
+		return finished.get();
+	}
+
+	/** The request, for the worker; unusable once this request is finished. */
+	HttpServletRequest request() {
+		return guard(HttpServletRequest.class, (HttpServletRequest) context.getRequest());
+	}
+
+	/** The response, for the worker; unusable once this request is finished. */
+	HttpServletResponse response() {
+		return guard(HttpServletResponse.class, (HttpServletResponse) context.getResponse());
+	}
+
+	/** Hands the response over to a JSP, rendered on a container thread. */
+	void dispatch(String path) {
+		if (finish()) {
+			dispatchNanos = System.nanoTime();
+			dispatchedPage = path;
+			context.dispatch(path);
+		}
+	}
+
+	void complete() {
+		if (finish()) {
+			context.complete();
+		}
+	}
+
+	/**
+	 * Ends a response that is already under way with an error. The request is
+	 * dispatched back to the servlet, which throws failure on a container
+	 * thread (see FAILURE_ATTRIBUTE), so the container can drop the connection
+	 * instead of finishing the response as if it were whole.
+	 */
+	void abort(RuntimeException failure) {
+		if (finish()) {
+			context.getRequest().setAttribute(FAILURE_ATTRIBUTE, failure);
+			context.dispatch();
+		}
+	}
+
+	void fail(int status, String message) {
+		if (finish()) {
+			try {
+				HttpServletResponse response = (HttpServletResponse) context.getResponse();
+				if (!response.isCommitted()) {
+					response.sendError(status, message);
+				}
+			} catch (IOException | IllegalStateException e) {
+				// the client is gone or the response is already on its way
+			}
+			context.complete();
+		}
+	}
+
+	@Override
+	public void onTimeout(AsyncEvent event) {
+		fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Request timed out");
+	}
+
+	@Override
+	public void onError(AsyncEvent event) {
+		finish();
+	}
+
+	@Override
+	public void onComplete(AsyncEvent event) {
+		requestTimer.recordSince(startNanos);
+		String page = dispatchedPage;
+		if (page != null) {
+			renderTimers.get(page).recordSince(dispatchNanos);
+		}
+	}
+
+	@Override
+	public void onStartAsync(AsyncEvent event) {
+	}
+
+	// Marks the request finished once no guarded call is under way; false if
+	// it already was
+	private boolean finish() {
+		lock.lock();
+		try {
+			return finished.compareAndSet(false, true);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private <T> T guard(Class<T> type, T target) {
+		Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (self, method, args) -> {
+			Object result;
+			lock.lock();
+			try {
+				if (finished.get()) {
+					throw new FinishedException(method.getName());
+				}
+				result = method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				lock.unlock();
+			}
+			if (result instanceof BufferedReader) {
+				return new BufferedReader(new GuardedReader((Reader) result));
+			}
+			if (result instanceof PrintWriter) {
+				return new PrintWriter(new GuardedWriter((Writer) result));
+			}
+			if (result instanceof ServletOutputStream) {
+				return new GuardedOutputStream((ServletOutputStream) result);
+			}
+			return result;
+		});
+		return type.cast(proxy);
+	}
+
+	// Runs a read or write on the underlying stream unless the request is finished
+	private <T> T whileOpen(IOCall<T> call) throws IOException {
+		lock.lock();
+		try {
+			if (finished.get()) {
+				throw new IOException("Request already finished");
+			}
+			return call.run();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private interface IOCall<T> {
+		T run() throws IOException;
+	}
+
+	/** Thrown to a worker that touches its request or response after it has finished. */
+	static class FinishedException extends IllegalStateException {
+		private static final long serialVersionUID = 1L;
+
+		FinishedException(String call) {
+			super("Request already finished, " + call + " refused");
+		}
+	}
+
+	private class GuardedReader extends Reader {
+		private final Reader in;
+
+		GuardedReader(Reader in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			return whileOpen(() -> in.read(buffer, offset, length));
+		}
+
+		@Override
+		public void close() throws IOException {
+			whileOpen(() -> {
+				in.close();
+				return null;
+			});
+		}
+	}
+
+	private class GuardedWriter extends Writer {
+		private final Writer out;
+
+		GuardedWriter(Writer out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(char[] buffer, int offset, int length) throws IOException {
+			whileOpen(() -> {
+				out.write(buffer, offset, length);
+				return null;
+			});
+		}
+
+		@Override
+		public void flush() throws IOException {
+			whileOpen(() -> {
+				out.flush();
+				return null;
+			});
+		}
+
+		@Override
+		public void close() throws IOException {
+			whileOpen(() -> {
+				out.close();
+				return null;
+			});
+		}
+	}
+
+	private class GuardedOutputStream extends ServletOutputStream {
+		private final ServletOutputStream out;
+
+		GuardedOutputStream(ServletOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			whileOpen(() -> {
+				out.write(b);
+				return null;
+			});
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int length) throws IOException {
+			whileOpen(() -> {
+				out.write(buffer, offset, length);
+				return null;
+			});
+		}
+
+		@Override
+		public void flush() throws IOException {
+			whileOpen(() -> {
+				out.flush();
+				return null;
+			});
+		}
+
+		@Override
+		public void close() throws IOException {
+			whileOpen(() -> {
+				out.close();
+				return null;
+			});
+		}
+
+		@Override
+		public boolean isReady() {
+			return !finished.get() && out.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener listener) {
+			out.setWriteListener(listener);
+		}
+	}
+}
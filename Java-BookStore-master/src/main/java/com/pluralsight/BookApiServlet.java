@@ -0,0 +1,213 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * JSON API for books, mapped to /api/books/*.
+ *
+ *   GET /api/books?after=&lt;id&gt;&amp;size=&lt;n&gt;  one keyset page: {"books":[...],"next":id|null}
+ *   GET /api/books?ids=1,2,3               several books at once: {"books":[...]}
+ *   GET /api/books/&lt;id&gt;                    one book, or 404
+ *
+ * Responses are serialized straight onto the (optionally gzip-compressed)
+ * output stream. A database failure answers 503, never an empty page or a
+ * 404, so a client syncing the catalog does not mistake it for the end.
+ */
+public class BookApiServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	private static final int MAX_IDS = 1000;
+
+	private BookDAO bookDAO;
+	private int defaultPageSize = 50;
+	private int maxPageSize = 500;
+
+	public void init() {
+		ServletContext context = getServletContext();
+		Properties settings = (Properties) context.getAttribute(BookStoreListener.SETTINGS_ATTRIBUTE);
+		bookDAO = (BookDAO) context.getAttribute(BookStoreListener.BOOK_DAO_ATTRIBUTE);
+		defaultPageSize = Integer.parseInt(settings.getProperty("books.pageSize", "50"));
+		maxPageSize = Integer.parseInt(settings.getProperty("books.maxPageSize", "500"));
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		String path = request.getPathInfo();
+		if (path != null && path.length() > 1) {
+			getBook(path.substring(1), response);
+		} else if (request.getParameter("ids") != null) {
+			getBooks(request.getParameter("ids"), request, response);
+		} else {
+			listBooks(request, response);
+		}
+	}
+
+	private void getBook(String idString, HttpServletResponse response) throws IOException {
+		Integer id = parseId(idString);
+		Book book;
+		try {
+			book = id == null ? null : bookDAO.readBook(id);
+		} catch (BookDAOException e) {
+			e.printStackTrace();
+			sendError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Could not look up the book");
+			return;
+		}
+		if (book == null) {
+			sendError(response, HttpServletResponse.SC_NOT_FOUND, "No book with id " + idString);
+			return;
+		}
+		try (JsonResponse json = new JsonResponse(null, response)) {
+			json.writer.writeBook(book);
+		}
+	}
+
+	private void getBooks(String idList, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		List<Integer> ids = new ArrayList<>();
+		for (String part : idList.split(",")) {
+			if (part.trim().isEmpty()) {
+				continue;
+			}
+			Integer id = parseId(part);
+			if (id == null) {
+				sendError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid id " + part.trim());
+				return;
+			}
+			ids.add(id);
+		}
+		if (ids.size() > MAX_IDS) {
+			sendError(response, HttpServletResponse.SC_BAD_REQUEST, "At most " + MAX_IDS + " ids per request");
+			return;
+		}
+
+		Map<Integer, Book> found;
+		try {
+			found = bookDAO.getBooks(ids);
+		} catch (BookDAOException e) {
+			e.printStackTrace();
+			sendError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Could not look up the books");
+			return;
+		}
+		// Keep the caller's order; unknown ids are simply left out
+		List<Book> books = new ArrayList<>(found.size());
+		for (Integer id : ids) {
+			Book book = found.remove(id);
+			if (book != null) {
+				books.add(book);
+			}
+		}
+
+		try (JsonResponse json = new JsonResponse(request, response)) {
+			json.writer.write("{\"books\":[");
+			json.writer.writeBooks(books);
+			json.writer.write("]}");
+		}
+	}
+
+	private void listBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		int pageSize = Math.min(intParameter(request, "size", defaultPageSize), maxPageSize);
+		if (pageSize < 1) {
+			pageSize = defaultPageSize;
+		}
+		int after = intParameter(request, "after", 0);
+
+		// an empty page would tell a client it has reached the end
+		ArrayList<Book> books;
+		try {
+			books = bookDAO.readBooks(after, pageSize + 1);
+		} catch (BookDAOException e) {
+			e.printStackTrace();
+			sendError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Could not list the books");
+			return;
+		}
+		Integer next = null;
+		if (books.size() > pageSize) {
+			books.remove(pageSize);
+			next = books.get(pageSize - 1).getId();
+		}
+
+		try (JsonResponse json = new JsonResponse(request, response)) {
+			json.writer.write("{\"books\":[");
+			json.writer.writeBooks(books);
+			json.writer.write("],\"next\":");
+			json.writer.write(next == null ? "null" : next.toString());
+			json.writer.write("}");
+		}
+	}
+
+	private static Integer parseId(String value) {
+		try {
+			return Integer.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static int intParameter(HttpServletRequest request, String name, int defaultValue) {
+		String value = request.getParameter(name);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	private static void sendError(HttpServletResponse response, int status, String message) throws IOException {
+		response.setStatus(status);
+		try (JsonResponse json = new JsonResponse(null, response)) {
+			json.writer.write("{\"error\":");
+			json.writer.writeString(message);
+			json.writer.write("}");
+		}
+	}
+
+	/**
+	 * A UTF-8 JSON body, gzip-compressed when the request accepts it. Pass a
+	 * null request for small bodies not worth compressing.
+	 */
+	private static class JsonResponse implements AutoCloseable {
+		final JsonBookWriter writer;
+		private final BufferedWriter out;
+
+		JsonResponse(HttpServletRequest request, HttpServletResponse response) throws IOException {
+			response.setContentType("application/json;charset=UTF-8");
+			response.setHeader("Vary", "Accept-Encoding");
+			OutputStream stream = response.getOutputStream();
+			if (request != null && acceptsGzip(request)) {
+				response.setHeader("Content-Encoding", "gzip");
+				stream = new GZIPOutputStream(stream, 8192);
+			}
+			out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 8192);
+			writer = new JsonBookWriter(out);
+		}
+
+		private static boolean acceptsGzip(HttpServletRequest request) {
+			String acceptEncoding = request.getHeader("Accept-Encoding");
+			return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+		}
+
+		@Override
+		public void close() throws IOException {
+			// also finishes the gzip trailer
+			out.close();
+		}
+	}
+}
@@ -6,23 +6,129 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.Types;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class BookDAO {
-    private Connection jdbcConnection;
+    private static final int FETCH_SIZE = 500;
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final int MAX_IN_LIST = 512;
+    // A NULL id lets SQLite pick the next one
+    private static final String INSERT_SQL = "INSERT INTO book (id, title, author, price) VALUES (?, ?, ?, ?)";
+    // an insert whose id is already taken is skipped rather than refused, so
+    // a batch applied twice adds its rows once; NOT NULL is still enforced
+    private static final String INSERT_IF_NEW_SQL = "INSERT INTO book (id, title, author, price)"
+        + " SELECT ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM book WHERE id = ?)";
+    private static final String UPDATE_SQL = "UPDATE book SET title = ?, author = ?, price = ? WHERE id = ?";
+    private static final String DELETE_SQL = "DELETE FROM book WHERE id = ?";
+    private static final String GET_BOOK_SQL = "SELECT * FROM book WHERE id = ?";
+    private static final String LIST_BOOKS_SQL = "SELECT * FROM book WHERE id > ? ORDER BY id LIMIT ?";
+    // Rank and page inside the FTS table, where ORDER BY rank is optimized, then join
+    private static final String SEARCH_SQL = "SELECT book.*, hits.rank AS hit_rank FROM" +
+        " (SELECT rowid, rank FROM book_fts WHERE book_fts MATCH ? ORDER BY rank LIMIT ? OFFSET ?) hits" +
+        " JOIN book ON book.id = hits.rowid ORDER BY hits.rank";
+
+    private final ConnectionPool connectionPool;
+    private final ConnectionPool readConnectionPool;
+    // Time spent on each query once it has a connection; pool waits are
+    // measured by the pools themselves
+    private final Metrics.Histograms sqlTimers;
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private volatile long lastModified = System.currentTimeMillis();
+
+    public BookDAO(ConnectionPool connectionPool)
+    {
+      this(connectionPool, connectionPool);
+    }
+
+    /**
+     * Queries borrow from readConnectionPool, writes from connectionPool.
+     */
+    public BookDAO(ConnectionPool connectionPool, ConnectionPool readConnectionPool)
+    {
+      this(connectionPool, readConnectionPool, new Metrics());
+    }
+
+    /**
+     * Records per-query timings as bookstore_sql_seconds{query="getBook"} etc.
+     * in the given registry.
+     */
+    public BookDAO(ConnectionPool connectionPool, ConnectionPool readConnectionPool, Metrics metrics)
+    {
+      this.connectionPool = connectionPool;
+      this.readConnectionPool = readConnectionPool;
+      this.sqlTimers = sqlTimers(metrics);
+    }
+
     public BookDAO(Connection connection)
     {
-      jdbcConnection = connection;
+      this(ConnectionPool.ofSingle(connection));
+    }
+
+    /**
+     * For decorators such as CachingBookDAO that override every public method
+     * and delegate to another BookDAO instead of talking to the database.
+     */
+    protected BookDAO()
+    {
+      this.connectionPool = null;
+      this.readConnectionPool = null;
+      this.sqlTimers = sqlTimers(new Metrics());
+    }
+
+    private static Metrics.Histograms sqlTimers(Metrics metrics) {
+      return metrics.histograms("bookstore_sql_seconds",
+          "BookDAO query time, excluding the wait for a connection", "query");
+    }
+
+    /**
+     * Counter bumped by every write that changed at least one row. Listings
+     * rendered at the same version are identical.
+     */
+    public long getCatalogVersion() {
+      return catalogVersion.get();
+    }
+
+    /** Time of the last write, or of startup if nothing was written since. */
+    public long getLastModified() {
+      return lastModified;
     }
 
+    protected void catalogChanged() {
+      lastModified = System.currentTimeMillis();
+      catalogVersion.incrementAndGet();
+    }
+
+    /** Returns the book, or null if there is none or the database fails. */
     public Book getBook(int id) {
+      try {
+        return readBook(id);
+      } catch (BookDAOException e) {
+        e.printStackTrace();
+        return null;
+      }
+    }
+
+    /**
+     * getBook for callers that must tell a failed lookup from a missing book:
+     * null means there is no such book, a database error is thrown as a
+     * BookDAOException. Decorators override this rather than getBook.
+     */
+    public Book readBook(int id) {
       Book book = null;
-      String sql = "SELECT * FROM book WHERE id = ?";
 
-      try {
-        PreparedStatement statement = jdbcConnection.prepareStatement(sql);
+      try (PooledConnection jdbcConnection = readConnectionPool.borrow()) {
+        long startNanos = System.nanoTime();
+        PreparedStatement statement = jdbcConnection.prepareStatement(GET_BOOK_SQL);
         statement.setInt(1, id);
 
         ResultSet resultSet = statement.executeQuery();
@@ -36,9 +142,10 @@ public class BookDAO {
         }
 
         resultSet.close();
-        statement.close();
+        jdbcConnection.closeStatement(statement);
+        sqlTimers.get("getBook").recordSince(startNanos);
       } catch (SQLException e) {
-          e.printStackTrace();
+          throw new BookDAOException("Could not look up book " + id, e);
       }
 
       return book;
@@ -49,45 +156,484 @@ public class BookDAO {
 
       String sql = "SELECT * FROM book";
 
-		  try {
-			    Statement statement = jdbcConnection.createStatement();
+		  try (PooledConnection jdbcConnection = readConnectionPool.borrow()) {
+			    long startNanos = System.nanoTime();
+			    PreparedStatement statement = jdbcConnection.prepareStatement(sql);
 
-	        ResultSet resultSet = statement.executeQuery(sql);
+	        ResultSet resultSet = statement.executeQuery();
 
 	        while (resultSet.next()) {
-              int id = resultSet.getInt("id");
-	            String title = resultSet.getString("title");
-	            String author = resultSet.getString("author");
-	            float price = resultSet.getFloat("price");
-
-	            Book book = new Book(id, title, author, price);
-	            listBook.add(book);
+	            listBook.add(readBook(resultSet));
 	        }
 
 	        resultSet.close();
-	        statement.close();
+	        jdbcConnection.closeStatement(statement);
+	        sqlTimers.get("listAllBooks").recordSince(startNanos);
   		} catch (SQLException e) {
   			e.printStackTrace();
   		}
         return listBook;
     }
 
+    /**
+     * Looks up several books with one IN (...) query per chunk of ids instead
+     * of one query per id. Ids that do not exist are absent from the result;
+     * a database error is thrown as a BookDAOException, never passed off as
+     * missing books.
+     */
+    public Map<Integer, Book> getBooks(Collection<Integer> ids) {
+      Map<Integer, Book> books = new HashMap<>();
+      if (ids.isEmpty()) {
+        return books;
+      }
+      Integer[] unique = new LinkedHashSet<>(ids).toArray(new Integer[0]);
+
+      try (PooledConnection jdbcConnection = readConnectionPool.borrow()) {
+        long startNanos = System.nanoTime();
+        for (int start = 0; start < unique.length; start += MAX_IN_LIST) {
+          int count = Math.min(MAX_IN_LIST, unique.length - start);
+          // Round the placeholder count up to a power of two, padding with a
+          // repeated id, so the statement cache sees a handful of SQL strings
+          int slots = Math.min(MAX_IN_LIST, Integer.highestOneBit(count - 1) << 1);
+          slots = Math.max(slots, count);
+          PreparedStatement statement = jdbcConnection.prepareStatement(inListSql(slots));
+          for (int i = 0; i < slots; i++) {
+            statement.setInt(i + 1, unique[start + Math.min(i, count - 1)]);
+          }
+
+          ResultSet resultSet = statement.executeQuery();
+          while (resultSet.next()) {
+            Book book = readBook(resultSet);
+            books.put(book.getId(), book);
+          }
+
+          resultSet.close();
+          jdbcConnection.closeStatement(statement);
+        }
+        sqlTimers.get("getBooks").recordSince(startNanos);
+      } catch (SQLException e) {
+          throw new BookDAOException("Could not look up " + unique.length + " books", e);
+      }
+      return books;
+    }
+
+    private static String inListSql(int slots) {
+      StringBuilder sql = new StringBuilder("SELECT * FROM book WHERE id IN (");
+      for (int i = 0; i < slots; i++) {
+        sql.append(i == 0 ? "?" : ", ?");
+      }
+      return sql.append(')').toString();
+    }
+
+    /**
+     * Returns up to limit books with an id greater than afterId, in id order.
+     * Pass the last id of one page as afterId to fetch the next page. A
+     * database failure comes back as an empty page.
+     */
+    public ArrayList<Book> listBooks(int afterId, int limit) {
+      try {
+        return readBooks(afterId, limit);
+      } catch (BookDAOException e) {
+        e.printStackTrace();
+        return new ArrayList<>();
+      }
+    }
+
+    /**
+     * listBooks for callers that must tell a failed read from the last page:
+     * a database error is thrown as a BookDAOException. Decorators override
+     * this rather than listBooks.
+     */
+    public ArrayList<Book> readBooks(int afterId, int limit) {
+      return readBooks(afterId, limit, "listBooks");
+    }
+
+    private ArrayList<Book> readBooks(int afterId, int limit, String timerName) {
+      ArrayList<Book> listBook = new ArrayList<>();
+
+      try (PooledConnection jdbcConnection = readConnectionPool.borrow()) {
+        long startNanos = System.nanoTime();
+        PreparedStatement statement = jdbcConnection.prepareStatement(LIST_BOOKS_SQL);
+        statement.setInt(1, afterId);
+        statement.setInt(2, limit);
+
+        ResultSet resultSet = statement.executeQuery();
+
+        while (resultSet.next()) {
+            listBook.add(readBook(resultSet));
+        }
+
+        resultSet.close();
+        jdbcConnection.closeStatement(statement);
+        sqlTimers.get(timerName).recordSince(startNanos);
+      } catch (SQLException e) {
+          throw new BookDAOException("Could not list books after id " + afterId, e);
+      }
+      return listBook;
+    }
+
+    /**
+     * Hands every book to the consumer in id order without collecting the
+     * catalog in memory. Books are read in keyset pages of FETCH_SIZE, and
+     * the connection goes back to the pool before the consumer sees a page,
+     * so a slow consumer (a download to a slow client) does not keep a
+     * reader from everyone else. Each page is consistent on its own; a write
+     * between pages shows up if it lands after the current position. An
+     * exception thrown by the consumer stops the iteration; a database error
+     * does too, as a BookDAOException, since the consumer has then seen only
+     * part of the catalog.
+     */
+    public void forEachBook(Consumer<Book> consumer) {
+      int after = Integer.MIN_VALUE;
+      while (true) {
+        ArrayList<Book> page = readBooks(after, FETCH_SIZE, "forEachBook");
+        for (Book book : page) {
+          consumer.accept(book);
+        }
+        if (page.size() < FETCH_SIZE) {
+          return;
+        }
+        after = page.get(page.size() - 1).getId();
+      }
+    }
+
+    /**
+     * Full-text search over title and author, best matches first. Every word
+     * in the query must match the start of a word in the title or author, so
+     * "orw 198" finds "1984" by George Orwell. Returns up to limit hits,
+     * skipping the first offset. When ranks is given it receives each hit's
+     * FTS rank, lower being better, so that hits from several databases can
+     * be merged (see ShardedBookDAO).
+     */
+    public ArrayList<Book> searchBooks(String query, int offset, int limit, List<Double> ranks) {
+      ArrayList<Book> listBook = new ArrayList<>();
+      String match = toMatchExpression(query);
+      if (match.isEmpty()) {
+        return listBook;
+      }
+
+      try (PooledConnection jdbcConnection = readConnectionPool.borrow()) {
+        long startNanos = System.nanoTime();
+        PreparedStatement statement = jdbcConnection.prepareStatement(SEARCH_SQL);
+        statement.setString(1, match);
+        statement.setInt(2, limit);
+        statement.setInt(3, offset);
+
+        ResultSet resultSet = statement.executeQuery();
+
+        while (resultSet.next()) {
+            listBook.add(readBook(resultSet));
+            if (ranks != null) {
+              ranks.add(resultSet.getDouble("hit_rank"));
+            }
+        }
+
+        resultSet.close();
+        jdbcConnection.closeStatement(statement);
+        sqlTimers.get("searchBooks").recordSince(startNanos);
+      } catch (SQLException e) {
+          e.printStackTrace();
+      }
+      return listBook;
+    }
+
+    // Highest id in the table, 0 when it is empty. Callers hand out ids above
+    // it, so a failed lookup is thrown rather than read as an empty table.
+    int getMaxId() {
+      try (PooledConnection jdbcConnection = readConnectionPool.borrow()) {
+        PreparedStatement statement = jdbcConnection.prepareStatement("SELECT MAX(id) FROM book");
+        ResultSet resultSet = statement.executeQuery();
+        int maxId = resultSet.next() ? resultSet.getInt(1) : 0;
+        resultSet.close();
+        jdbcConnection.closeStatement(statement);
+        return maxId;
+      } catch (SQLException e) {
+          throw new BookDAOException("Could not read the highest book id", e);
+      }
+    }
+
+    /**
+     * Opens as many connections as each pool allows and compiles the request
+     * paths' statements into every one's statement cache, so the first
+     * requests after startup neither open connections nor parse SQL. Returns
+     * the number of statements prepared.
+     */
+    int prepareStatements() {
+      List<String> reads = new ArrayList<>(Arrays.asList(GET_BOOK_SQL, LIST_BOOKS_SQL, SEARCH_SQL));
+      for (int slots = 1; slots <= MAX_IN_LIST; slots <<= 1) {
+        reads.add(inListSql(slots));
+      }
+      List<String> writes = Arrays.asList(INSERT_SQL, INSERT_IF_NEW_SQL, UPDATE_SQL, DELETE_SQL);
+      if (connectionPool == readConnectionPool) {
+        reads.addAll(writes);
+        return prepareStatements(connectionPool, reads);
+      }
+      return prepareStatements(readConnectionPool, reads) + prepareStatements(connectionPool, writes);
+    }
+
+    // Borrows every connection at once, so that none is handed out twice
+    private static int prepareStatements(ConnectionPool pool, List<String> sqls) {
+      List<PooledConnection> borrowed = new ArrayList<>();
+      int prepared = 0;
+      try {
+        for (int i = 0; i < pool.getMaxSize(); i++) {
+          borrowed.add(pool.borrow());
+        }
+      } catch (SQLException e) {
+        // the pool is busy; warm what we got
+      }
+      try {
+        for (PooledConnection jdbcConnection : borrowed) {
+          for (String sql : sqls) {
+            jdbcConnection.closeStatement(jdbcConnection.prepareStatement(sql));
+            prepared++;
+          }
+        }
+      } catch (SQLException e) {
+          e.printStackTrace();
+      } finally {
+        for (PooledConnection jdbcConnection : borrowed) {
+          jdbcConnection.close();
+        }
+      }
+      return prepared;
+    }
+
+    // Quotes each word of the user's input as an FTS5 prefix term, so operators
+    // and punctuation in the input are never interpreted as query syntax.
+    static String toMatchExpression(String query) {
+      StringBuilder match = new StringBuilder();
+      if (query == null) {
+        return "";
+      }
+      for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+        if (word.isEmpty()) {
+          continue;
+        }
+        if (match.length() > 0) {
+          match.append(' ');
+        }
+        match.append('"').append(word).append("\"*");
+      }
+      return match.toString();
+    }
+
+    private static Book readBook(ResultSet resultSet) throws SQLException {
+      int id = resultSet.getInt("id");
+      String title = resultSet.getString("title");
+      String author = resultSet.getString("author");
+      float price = resultSet.getFloat("price");
+
+      return new Book(id, title, author, price);
+    }
+
+    /**
+     * Stores a book under its id if it has one (a positive id), otherwise
+     * under the next id SQLite picks. The same goes for insertBooks and
+     * writeBatch.
+     */
     public boolean insertBook(Book book)  {
-        String sql = "INSERT INTO book (title, author, price) VALUES (?, ?, ?)";
+        try (PooledConnection jdbcConnection = connectionPool.borrow()) {
+	        long startNanos = System.nanoTime();
+	        PreparedStatement statement = jdbcConnection.prepareStatement(INSERT_SQL);
+	        bindInsert(statement, book);
+
+	        boolean rowInserted = statement.executeUpdate() > 0;
+	        jdbcConnection.closeStatement(statement);
+	        sqlTimers.get("insertBook").recordSince(startNanos);
+	        if (rowInserted) {
+	          catalogChanged();
+	        }
+	        return rowInserted;
+        } catch (SQLException e) {
+        		e.printStackTrace();
+        }
 
+        return false;
+    }
+
+    public int insertBooks(Iterable<Book> books) {
+      return insertBooks(books, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Inserts the books as JDBC batches, committing one transaction per
+     * chunkSize rows instead of one per row. Chunks committed before a failure
+     * stay in the table; the failing chunk is rolled back. Returns the number
+     * of rows committed. If the books themselves throw, for instance on a
+     * malformed row, or the database fails, that comes out as a
+     * BookImportException carrying the number of rows committed before it.
+     */
+    public int insertBooks(Iterable<Book> books, int chunkSize) {
+      int inserted = 0;
+
+      try (PooledConnection jdbcConnection = connectionPool.borrow()) {
+        long startNanos = System.nanoTime();
+        Connection connection = jdbcConnection.getConnection();
+        PreparedStatement statement = jdbcConnection.prepareStatement(INSERT_SQL);
+        connection.setAutoCommit(false);
+
+        int pending = 0;
         try {
-	        PreparedStatement statement = jdbcConnection.prepareStatement(sql);
+          for (Book book : books) {
+            bindInsert(statement, book);
+            statement.addBatch();
+
+            if (++pending == chunkSize) {
+              inserted += commitBatch(statement, connection);
+              pending = 0;
+            }
+          }
+          if (pending > 0) {
+            inserted += commitBatch(statement, connection);
+          }
+        } catch (RuntimeException e) {
+          throw new BookImportException(inserted, e);
+        } finally {
+          // rolls back the failing chunk, if any
+          jdbcConnection.endTransaction();
+          // the iterator may throw with rows added but not executed
+          statement.clearBatch();
+        }
+
+        jdbcConnection.closeStatement(statement);
+        sqlTimers.get("insertBooks").recordSince(startNanos);
+      } catch (SQLException e) {
+          throw new BookImportException(inserted, e);
+      } finally {
+        // chunks committed before a failure change the catalog too
+        if (inserted > 0) {
+          catalogChanged();
+        }
+      }
+      return inserted;
+    }
+
+    private static void bindInsert(PreparedStatement statement, Book book) throws SQLException {
+      if (book.getId() > 0) {
+        statement.setInt(1, book.getId());
+      } else {
+        statement.setNull(1, Types.INTEGER);
+      }
+      statement.setString(2, book.getTitle());
+      statement.setString(3, book.getAuthor());
+      statement.setFloat(4, book.getPrice());
+    }
+
+    private static int commitBatch(PreparedStatement statement, Connection connection) throws SQLException {
+      int rows = 0;
+      for (int count : statement.executeBatch()) {
+        rows += count == PreparedStatement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+      }
+      connection.commit();
+      return rows;
+    }
+
+    public boolean updateBook(Book book) {
+        try (PooledConnection jdbcConnection = connectionPool.borrow()) {
+	        long startNanos = System.nanoTime();
+	        PreparedStatement statement = jdbcConnection.prepareStatement(UPDATE_SQL);
 	        statement.setString(1, book.getTitle());
 	        statement.setString(2, book.getAuthor());
 	        statement.setFloat(3, book.getPrice());
+	        statement.setInt(4, book.getId());
 
-	        boolean rowInserted = statement.executeUpdate() > 0;
-	        statement.close();
-	        return rowInserted;
+	        boolean rowUpdated = statement.executeUpdate() > 0;
+	        jdbcConnection.closeStatement(statement);
+	        sqlTimers.get("updateBook").recordSince(startNanos);
+	        if (rowUpdated) {
+	          catalogChanged();
+	        }
+	        return rowUpdated;
         } catch (SQLException e) {
         		e.printStackTrace();
         }
 
         return false;
     }
+
+    public boolean deleteBook(int id) {
+        try (PooledConnection jdbcConnection = connectionPool.borrow()) {
+	        long startNanos = System.nanoTime();
+	        PreparedStatement statement = jdbcConnection.prepareStatement(DELETE_SQL);
+	        statement.setInt(1, id);
+
+	        boolean rowDeleted = statement.executeUpdate() > 0;
+	        jdbcConnection.closeStatement(statement);
+	        sqlTimers.get("deleteBook").recordSince(startNanos);
+	        if (rowDeleted) {
+	          catalogChanged();
+	        }
+	        return rowDeleted;
+        } catch (SQLException e) {
+        		e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    /**
+     * Applies inserts, updates and deletes as one transaction, each kind as a
+     * JDBC batch. Returns false, with nothing applied, if the transaction
+     * failed.
+     *
+     * An insert that carries an id already in the table is skipped, so a
+     * batch that is retried or replayed after it committed does not add its
+     * rows twice.
+     */
+    public boolean writeBatch(Collection<Book> inserts, Collection<Book> updates, Collection<Integer> deletes) {
+      try (PooledConnection jdbcConnection = connectionPool.borrow()) {
+        long startNanos = System.nanoTime();
+        Connection connection = jdbcConnection.getConnection();
+        connection.setAutoCommit(false);
+        try {
+          if (!inserts.isEmpty()) {
+            PreparedStatement statement = jdbcConnection.prepareStatement(INSERT_IF_NEW_SQL);
+            for (Book book : inserts) {
+              bindInsert(statement, book);
+              if (book.getId() > 0) {
+                statement.setInt(5, book.getId());
+              } else {
+                statement.setNull(5, Types.INTEGER);
+              }
+              statement.addBatch();
+            }
+            statement.executeBatch();
+            jdbcConnection.closeStatement(statement);
+          }
+          if (!updates.isEmpty()) {
+            PreparedStatement statement = jdbcConnection.prepareStatement(UPDATE_SQL);
+            for (Book book : updates) {
+              statement.setString(1, book.getTitle());
+              statement.setString(2, book.getAuthor());
+              statement.setFloat(3, book.getPrice());
+              statement.setInt(4, book.getId());
+              statement.addBatch();
+            }
+            statement.executeBatch();
+            jdbcConnection.closeStatement(statement);
+          }
+          if (!deletes.isEmpty()) {
+            PreparedStatement statement = jdbcConnection.prepareStatement(DELETE_SQL);
+            for (int id : deletes) {
+              statement.setInt(1, id);
+              statement.addBatch();
+            }
+            statement.executeBatch();
+            jdbcConnection.closeStatement(statement);
+          }
+
+          connection.commit();
+        } finally {
+          // nothing is applied unless the commit went through
+          jdbcConnection.endTransaction();
+        }
+        sqlTimers.get("writeBatch").recordSince(startNanos);
+        catalogChanged();
+        return true;
+      } catch (SQLException e) {
+          e.printStackTrace();
+      }
+      return false;
+    }
 }
@@ -0,0 +1,16 @@
+package com.pluralsight;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown by BookDAO reads whose callers cannot make do with a partial or
+ * empty answer when the database fails, so that a failure is never mistaken
+ * for the end of the catalog. The cause is the SQLException.
+ */
+public class BookDAOException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public BookDAOException(String message, SQLException cause) {
+		super(message, cause);
+	}
+}
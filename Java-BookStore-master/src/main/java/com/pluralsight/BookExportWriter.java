@@ -0,0 +1,130 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+/**
+ * Writes a catalog export one book at a time, so it can be fed straight from
+ * BookDAO.forEachBook into a response without holding the catalog in memory.
+ *
+ * CSV exports start with an id,title,author,price header and quote fields as
+ * RFC 4180 describes; NDJSON exports have one JSON object per line. Both can
+ * be read back by BookImportReader, which ignores the id. Write errors, such
+ * as the client going away, surface as an UncheckedIOException from accept,
+ * which ends the iteration.
+ */
+public abstract class BookExportWriter implements Consumer<Book> {
+	protected final Writer out;
+
+	protected BookExportWriter(Writer out) {
+		this.out = out;
+	}
+
+	public static BookExportWriter csv(Writer out) {
+		return new Csv(out);
+	}
+
+	public static BookExportWriter ndjson(Writer out) {
+		return new Ndjson(out);
+	}
+
+	/** Writes whatever precedes the first book. */
+	public abstract void begin() throws IOException;
+
+	protected abstract void write(Book book) throws IOException;
+
+	public abstract String getContentType();
+
+	public abstract String getFileExtension();
+
+	@Override
+	public void accept(Book book) {
+		try {
+			write(book);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static class Csv extends BookExportWriter {
+		Csv(Writer out) {
+			super(out);
+		}
+
+		@Override
+		public void begin() throws IOException {
+			out.write("id,title,author,price\r\n");
+		}
+
+		@Override
+		protected void write(Book book) throws IOException {
+			out.write(Integer.toString(book.getId()));
+			out.write(',');
+			writeField(book.getTitle());
+			out.write(',');
+			writeField(book.getAuthor());
+			out.write(',');
+			out.write(Float.toString(book.getPrice()));
+			out.write("\r\n");
+		}
+
+		private void writeField(String value) throws IOException {
+			if (value == null) {
+				return;
+			}
+			boolean quote = false;
+			for (int i = 0; i < value.length() && !quote; i++) {
+				char c = value.charAt(i);
+				quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+			}
+			if (!quote) {
+				out.write(value);
+				return;
+			}
+			out.write('"');
+			out.write(value.replace("\"", "\"\""));
+			out.write('"');
+		}
+
+		@Override
+		public String getContentType() {
+			return "text/csv;charset=UTF-8";
+		}
+
+		@Override
+		public String getFileExtension() {
+			return "csv";
+		}
+	}
+
+	private static class Ndjson extends BookExportWriter {
+		private final JsonBookWriter json;
+
+		Ndjson(Writer out) {
+			super(out);
+			this.json = new JsonBookWriter(out);
+		}
+
+		@Override
+		public void begin() {
+		}
+
+		@Override
+		protected void write(Book book) throws IOException {
+			json.writeBook(book);
+			out.write('\n');
+		}
+
+		@Override
+		public String getContentType() {
+			return "application/x-ndjson;charset=UTF-8";
+		}
+
+		@Override
+		public String getFileExtension() {
+			return "ndjson";
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.pluralsight;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown by BookDAO.insertBooks when an import fails part way through,
+ * because of a malformed row in the feed or because the database refused a
+ * chunk. The chunks committed before the failure stay in the catalog;
+ * getImportedCount() says how many rows that is, and the cause is what the
+ * feed or the driver threw.
+ */
+public class BookImportException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private final int importedCount;
+
+	public BookImportException(int importedCount, Exception cause) {
+		super(cause.getMessage(), cause);
+		this.importedCount = importedCount;
+	}
+
+	/** True when the database failed rather than the feed. */
+	public boolean isDatabaseFailure() {
+		return getCause() instanceof SQLException;
+	}
+
+	/** Rows committed before the failure. */
+	public int getImportedCount() {
+		return importedCount;
+	}
+}
@@ -0,0 +1,301 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Parses a publisher feed one book at a time, so an upload can be fed into
+ * BookDAO.insertBooks without ever holding the whole file in memory.
+ *
+ * CSV feeds have the columns title, author, price, optionally preceded by a
+ * header row naming them in any order. JSON feeds are either an array of
+ * objects or newline-delimited objects with the same three fields. Malformed
+ * input surfaces as an IllegalArgumentException naming the offending record.
+ */
+public abstract class BookImportReader implements Iterable<Book>, Iterator<Book> {
+	private final Reader in;
+	private int peeked = -2;
+	private Book next;
+	protected int record;
+
+	protected BookImportReader(Reader in) {
+		this.in = in;
+	}
+
+	public static BookImportReader csv(Reader in) {
+		return new Csv(in);
+	}
+
+	public static BookImportReader json(Reader in) {
+		return new Json(in);
+	}
+
+	/** Reads the next book, or returns null at the end of the feed. */
+	protected abstract Book read() throws IOException;
+
+	@Override
+	public Iterator<Book> iterator() {
+		return this;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = read();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public Book next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Book book = next;
+		next = null;
+		return book;
+	}
+
+	protected int peek() throws IOException {
+		if (peeked == -2) {
+			peeked = in.read();
+		}
+		return peeked;
+	}
+
+	protected int take() throws IOException {
+		int c = peek();
+		peeked = -2;
+		return c;
+	}
+
+	protected Book toBook(String title, String author, String price) {
+		if (title == null || author == null || price == null) {
+			throw new IllegalArgumentException("Record " + record + ": title, author and price are required");
+		}
+		try {
+			return new Book(title, author, Float.parseFloat(price.trim()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Record " + record + ": invalid price \"" + price + "\"");
+		}
+	}
+
+	private static class Csv extends BookImportReader {
+		private int titleColumn = 0;
+		private int authorColumn = 1;
+		private int priceColumn = 2;
+		private final List<String> fields = new ArrayList<>();
+		private final StringBuilder field = new StringBuilder();
+
+		Csv(Reader in) {
+			super(in);
+		}
+
+		@Override
+		protected Book read() throws IOException {
+			while (readRecord()) {
+				record++;
+				if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+					continue;
+				}
+				if (record == 1 && isHeader()) {
+					mapHeader();
+					continue;
+				}
+				return toBook(column(titleColumn), column(authorColumn), column(priceColumn));
+			}
+			return null;
+		}
+
+		private boolean isHeader() {
+			for (String name : fields) {
+				if ("title".equalsIgnoreCase(name.trim())) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private String column(int index) {
+			return index < fields.size() ? fields.get(index) : null;
+		}
+
+		private void mapHeader() {
+			titleColumn = authorColumn = priceColumn = -1;
+			for (int i = 0; i < fields.size(); i++) {
+				String name = fields.get(i).trim().toLowerCase();
+				if (name.equals("title")) {
+					titleColumn = i;
+				} else if (name.equals("author")) {
+					authorColumn = i;
+				} else if (name.equals("price")) {
+					priceColumn = i;
+				}
+			}
+			if (titleColumn < 0 || authorColumn < 0 || priceColumn < 0) {
+				throw new IllegalArgumentException("CSV header must name title, author and price columns");
+			}
+		}
+
+		// RFC 4180: fields separated by commas, optionally double-quoted, with "" as an escaped quote
+		private boolean readRecord() throws IOException {
+			fields.clear();
+			if (peek() == -1) {
+				return false;
+			}
+			field.setLength(0);
+			boolean quoted = false;
+			while (true) {
+				int c = take();
+				if (quoted) {
+					if (c == -1) {
+						throw new IllegalArgumentException("Record " + (record + 1) + ": unterminated quoted field");
+					} else if (c == '"') {
+						if (peek() == '"') {
+							field.append((char) take());
+						} else {
+							quoted = false;
+						}
+					} else {
+						field.append((char) c);
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					fields.add(field.toString());
+					field.setLength(0);
+				} else if (c == '\r') {
+					// handled by the following \n
+				} else if (c == '\n' || c == -1) {
+					fields.add(field.toString());
+					return true;
+				} else {
+					field.append((char) c);
+				}
+			}
+		}
+	}
+
+	private static class Json extends BookImportReader {
+		private final StringBuilder buffer = new StringBuilder();
+
+		Json(Reader in) {
+			super(in);
+		}
+
+		@Override
+		protected Book read() throws IOException {
+			// Skip the separators between objects: whitespace, commas and the enclosing array brackets
+			int c;
+			while ((c = peek()) != -1 && c != '{') {
+				if (!Character.isWhitespace(c) && c != ',' && c != '[' && c != ']') {
+					throw new IllegalArgumentException("Record " + (record + 1) + ": expected '{' but found '" + (char) c + "'");
+				}
+				take();
+			}
+			if (c == -1) {
+				return null;
+			}
+			take();
+			record++;
+
+			String title = null;
+			String author = null;
+			String price = null;
+			while (true) {
+				skipWhitespace();
+				c = take();
+				if (c == '}') {
+					break;
+				} else if (c == ',') {
+					continue;
+				} else if (c != '"') {
+					throw unexpected(c);
+				}
+				String name = readString();
+				skipWhitespace();
+				if (take() != ':') {
+					throw new IllegalArgumentException("Record " + record + ": expected ':' after \"" + name + "\"");
+				}
+				skipWhitespace();
+				String value = readValue();
+				if (name.equals("title")) {
+					title = value;
+				} else if (name.equals("author")) {
+					author = value;
+				} else if (name.equals("price")) {
+					price = value;
+				}
+			}
+			return toBook(title, author, price);
+		}
+
+		private String readValue() throws IOException {
+			int c = peek();
+			if (c == '"') {
+				take();
+				return readString();
+			}
+			if (c == '{' || c == '[') {
+				throw new IllegalArgumentException("Record " + record + ": nested values are not supported");
+			}
+			buffer.setLength(0);
+			while ((c = peek()) != -1 && c != ',' && c != '}' && !Character.isWhitespace(c)) {
+				buffer.append((char) take());
+			}
+			String literal = buffer.toString();
+			return literal.equals("null") ? null : literal;
+		}
+
+		private String readString() throws IOException {
+			buffer.setLength(0);
+			while (true) {
+				int c = take();
+				if (c == -1) {
+					throw new IllegalArgumentException("Record " + record + ": unterminated string");
+				} else if (c == '"') {
+					return buffer.toString();
+				} else if (c == '\\') {
+					int escaped = take();
+					switch (escaped) {
+						case 'n': buffer.append('\n'); break;
+						case 't': buffer.append('\t'); break;
+						case 'r': buffer.append('\r'); break;
+						case 'b': buffer.append('\b'); break;
+						case 'f': buffer.append('\f'); break;
+						case 'u':
+							char[] hex = new char[4];
+							for (int i = 0; i < 4; i++) {
+								hex[i] = (char) take();
+							}
+							buffer.append((char) Integer.parseInt(new String(hex), 16));
+							break;
+						default: buffer.append((char) escaped); break;
+					}
+				} else {
+					buffer.append((char) c);
+				}
+			}
+		}
+
+		private void skipWhitespace() throws IOException {
+			while (peek() != -1 && Character.isWhitespace(peek())) {
+				take();
+			}
+		}
+
+		private IllegalArgumentException unexpected(int c) {
+			return new IllegalArgumentException("Record " + record + ": unexpected "
+					+ (c == -1 ? "end of input" : "'" + (char) c + "'"));
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.pluralsight;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pre-rendered rows of the BookList.jsp table.
+ *
+ * Each row is kept per book id and locale with title and author already
+ * HTML-escaped and the price formatted. A cached row remembers the values it
+ * was rendered from and is only reused while the book still has them, so an
+ * updated book is re-rendered the next time it is shown and nothing has to
+ * be invalidated by hand. Rendering a page then costs a lookup and a
+ * comparison per unchanged row.
+ */
+public class BookRowCache {
+	// Accept-Language is client supplied; beyond this many locales rows are
+	// rendered without caching
+	private static final int MAX_LOCALES = 8;
+
+	private final int maxRowsPerLocale;
+	private final ConcurrentHashMap<Locale, LruCache<Integer, Row>> rows = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public BookRowCache(int maxRowsPerLocale) {
+		this.maxRowsPerLocale = maxRowsPerLocale;
+	}
+
+	/** The table rows for books, in order, as one HTML string. */
+	public String render(List<Book> books, Locale locale) {
+		LruCache<Integer, Row> cache = cacheFor(locale);
+		StringBuilder html = new StringBuilder(books.size() * 256);
+		for (Book book : books) {
+			Row row = cache == null ? null : cache.get(book.getId());
+			if (row != null && row.renders(book)) {
+				hits.increment();
+			} else {
+				misses.increment();
+				row = new Row(book, locale);
+				if (cache != null) {
+					cache.put(book.getId(), row);
+				}
+			}
+			html.append(row.html);
+		}
+		return html.toString();
+	}
+
+	/** Rows reused as they were. */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/** Rows rendered because they were not cached or their book had changed. */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	private LruCache<Integer, Row> cacheFor(Locale locale) {
+		LruCache<Integer, Row> cache = rows.get(locale);
+		if (cache == null && rows.size() < MAX_LOCALES) {
+			cache = rows.computeIfAbsent(locale, l -> new LruCache<>(maxRowsPerLocale));
+		}
+		return cache;
+	}
+
+	static String escapeHtml(String value) {
+		if (value == null) {
+			return "";
+		}
+		StringBuilder escaped = null;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			String entity;
+			switch (c) {
+				case '<': entity = "&lt;"; break;
+				case '>': entity = "&gt;"; break;
+				case '&': entity = "&amp;"; break;
+				case '"': entity = "&#034;"; break;
+				case '\'': entity = "&#039;"; break;
+				default: entity = null; break;
+			}
+			if (entity == null) {
+				if (escaped != null) {
+					escaped.append(c);
+				}
+				continue;
+			}
+			if (escaped == null) {
+				escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+			}
+			escaped.append(entity);
+		}
+		return escaped == null ? value : escaped.toString();
+	}
+
+	private static class Row {
+		final String title;
+		final String author;
+		final float price;
+		final String html;
+
+		Row(Book book, Locale locale) {
+			this.title = book.getTitle();
+			this.author = book.getAuthor();
+			this.price = book.getPrice();
+			this.html = "<tr><form name=\"cart_form\" action=\"/cart/addcart\" method=\"post\">\n"
+					+ "<input type=\"hidden\" name=\"id\" value=\"" + book.getId() + "\" />\n"
+					+ "<td> " + escapeHtml(title) + " </td>\n"
+					+ "<td> " + escapeHtml(author) + " </td>\n"
+					+ "<td> " + escapeHtml(PriceFormatter.format(price, locale)) + " </td>\n"
+					+ "<td> <input type=\"number\" name=\"quantity\" value=\"1\" min=\"1\" max=\"99\" />"
+					+ " <input type=\"submit\" value=\"Add to Cart\" /> </td>\n"
+					+ "</form></tr>\n";
+		}
+
+		boolean renders(Book book) {
+			return Float.floatToIntBits(price) == Float.floatToIntBits(book.getPrice())
+					&& Objects.equals(title, book.getTitle()) && Objects.equals(author, book.getAuthor());
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package com.pluralsight;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Opens the database once per web application and shares the resulting
+ * BookDAO between ControllerServlet and BookApiServlet, and the CartService
+ * with CartServlet, through context attributes.
+ */
+public class BookStoreListener implements ServletContextListener {
+	public static final String SETTINGS_ATTRIBUTE = "com.pluralsight.settings";
+	public static final String DB_CONNECTION_ATTRIBUTE = "com.pluralsight.dbConnection";
+	public static final String BOOK_DAO_ATTRIBUTE = "com.pluralsight.bookDAO";
+	public static final String METRICS_ATTRIBUTE = "com.pluralsight.metrics";
+	public static final String CART_SERVICE_ATTRIBUTE = "com.pluralsight.cartService";
+	public static final String WARMUP_ATTRIBUTE = "com.pluralsight.warmup";
+
+	private SnapshotBookDAO snapshotBookDAO;
+	private WriteBehindBookDAO writeBehindBookDAO;
+	private final List<DBConnection> dbConnections = new ArrayList<>();
+	// the undecorated DAO of each database, for the warm-up
+	private final List<BookDAO> databases = new ArrayList<>();
+	private BookStoreWarmup warmup;
+	private Thread warmupThread;
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		Properties settings = contextSettings(context);
+
+		Metrics metrics = new Metrics();
+		BookDAO bookDAO;
+		int shardCount = Integer.parseInt(settings.getProperty("db.shards", "1"));
+		if (shardCount > 1) {
+			BookDAO[] shards = new BookDAO[shardCount];
+			for (int i = 0; i < shardCount; i++) {
+				shards[i] = openDatabase(ShardedBookDAO.shardSettings(settings, i, shardCount), "-" + i, metrics);
+			}
+			bookDAO = new ShardedBookDAO(shards);
+		} else {
+			bookDAO = openDatabase(settings, "", metrics);
+			// only meaningful with a single database
+			context.setAttribute(DB_CONNECTION_ATTRIBUTE, dbConnections.get(0));
+		}
+		if (Boolean.parseBoolean(settings.getProperty("snapshot.enabled", "false"))) {
+			snapshotBookDAO = new SnapshotBookDAO(bookDAO);
+			registerSnapshot(metrics, snapshotBookDAO);
+			bookDAO = snapshotBookDAO;
+		}
+		if (Boolean.parseBoolean(settings.getProperty("cache.enabled", "true"))) {
+			CachingBookDAO cachingBookDAO = new CachingBookDAO(bookDAO,
+					Integer.parseInt(settings.getProperty("cache.books.maxSize", "10000")),
+					Integer.parseInt(settings.getProperty("cache.pages.maxSize", "256")));
+			registerCache(metrics, cachingBookDAO);
+			bookDAO = cachingBookDAO;
+		}
+		// Outermost, so that flushed writes pass through the cache and snapshot
+		if (Boolean.parseBoolean(settings.getProperty("writeBehind.enabled", "false"))) {
+			String journal = settings.getProperty("writeBehind.journal", "").trim();
+			writeBehindBookDAO = new WriteBehindBookDAO(bookDAO,
+					Integer.parseInt(settings.getProperty("writeBehind.queueSize", "10000")),
+					Long.parseLong(settings.getProperty("writeBehind.flushIntervalMillis", "20")),
+					Long.parseLong(settings.getProperty("writeBehind.maxWaitMillis", "1000")),
+					journal.isEmpty() ? null : Paths.get(journal),
+					Boolean.parseBoolean(settings.getProperty("writeBehind.journal.fsync", "false")));
+			registerWriteBehind(metrics, writeBehindBookDAO);
+			bookDAO = writeBehindBookDAO;
+		}
+
+		// Orders go to the first database, shard 0 when sharded, so that a
+		// checkout is a single local transaction
+		OrderDAO orderDAO = new OrderDAO(dbConnections.get(0).getConnectionPool(), metrics);
+		CartService cartService = new CartService(bookDAO, orderDAO);
+		registerCart(metrics, cartService);
+		// drops a session's cart when the session ends
+		context.addListener(cartService);
+
+		context.setAttribute(SETTINGS_ATTRIBUTE, settings);
+		context.setAttribute(BOOK_DAO_ATTRIBUTE, bookDAO);
+		context.setAttribute(CART_SERVICE_ATTRIBUTE, cartService);
+
+		if (Boolean.parseBoolean(settings.getProperty("warmup.enabled", "true"))) {
+			warmup = new BookStoreWarmup(databases, bookDAO,
+					Integer.parseInt(settings.getProperty("warmup.pages", "10")),
+					Integer.parseInt(settings.getProperty("books.pageSize", "50")),
+					Integer.parseInt(settings.getProperty("warmup.iterations", "2000")));
+			registerWarmup(metrics, warmup);
+			context.setAttribute(WARMUP_ATTRIBUTE, warmup);
+			warmupThread = new Thread(warmup, "bookstore-warmup");
+			warmupThread.setDaemon(true);
+			warmupThread.start();
+		}
+		context.setAttribute(METRICS_ATTRIBUTE, metrics);
+	}
+
+	// poolSuffix tells the pools of different shards apart in the metrics
+	private BookDAO openDatabase(Properties settings, String poolSuffix, Metrics metrics) {
+		DBConnection dbConnection = new DBConnection(settings);
+		dbConnections.add(dbConnection);
+		metrics.registerPool("write" + poolSuffix, dbConnection.getConnectionPool());
+		if (dbConnection.getReadConnectionPool() != dbConnection.getConnectionPool()) {
+			metrics.registerPool("read" + poolSuffix, dbConnection.getReadConnectionPool());
+		}
+		BookDAO database = new BookDAO(dbConnection.getConnectionPool(), dbConnection.getReadConnectionPool(), metrics);
+		databases.add(database);
+		return database;
+	}
+
+	private static void registerWarmup(Metrics metrics, BookStoreWarmup warmup) {
+		metrics.gauge("bookstore_ready", "1 once the startup warm-up has finished", null, null,
+				() -> warmup.isDone() ? 1 : 0);
+		metrics.gauge("bookstore_warmup_seconds", "How long the startup warm-up took", null, null,
+				() -> warmup.getDurationMillis() / 1000.0);
+	}
+
+	private static void registerWriteBehind(Metrics metrics, WriteBehindBookDAO writeBehind) {
+		metrics.gauge("bookstore_write_behind_pending", "Mutations waiting to be flushed", null, null,
+				writeBehind::getPendingCount);
+		metrics.counter("bookstore_write_behind_submitted_total", "Mutations accepted into the queue", null, null,
+				writeBehind::getSubmittedCount);
+		metrics.counter("bookstore_write_behind_coalesced_total", "Mutations merged into one already queued",
+				null, null, writeBehind::getCoalescedCount);
+		metrics.counter("bookstore_write_behind_rejected_total", "Mutations refused because the queue was full",
+				null, null, writeBehind::getRejectedCount);
+		metrics.counter("bookstore_write_behind_flushes_total", "Batches committed", null, null,
+				writeBehind::getFlushCount);
+		metrics.counter("bookstore_write_behind_failed_flushes_total", "Batch commits that failed and were retried",
+				null, null, writeBehind::getFailedFlushCount);
+		metrics.counter("bookstore_write_behind_dead_lettered_total", "Mutations set aside after failing on their own",
+				null, null, writeBehind::getDeadLetterCount);
+	}
+
+	private static void registerCart(Metrics metrics, CartService cartService) {
+		metrics.gauge("bookstore_carts", "Sessions holding a cart", null, null, cartService::getCartCount);
+		metrics.counter("bookstore_cart_items_added_total", "Copies added to carts", null, null,
+				cartService::getItemsAddedCount);
+		metrics.counter("bookstore_checkouts_total", "Orders placed", null, null,
+				cartService::getCheckoutCount);
+		metrics.counter("bookstore_failed_checkouts_total", "Checkouts whose order could not be stored", null, null,
+				cartService::getFailedCheckoutCount);
+	}
+
+	private static void registerSnapshot(Metrics metrics, SnapshotBookDAO snapshotBookDAO) {
+		metrics.gauge("bookstore_snapshot_books", "Books in the current catalog snapshot", null, null,
+				() -> snapshotBookDAO.getSnapshot().size());
+		metrics.gauge("bookstore_snapshot_bytes", "Heap used by the current catalog snapshot", null, null,
+				() -> snapshotBookDAO.getSnapshot().getMemoryBytes());
+		metrics.counter("bookstore_snapshot_reads_total", "Reads served from the catalog snapshot", null, null,
+				snapshotBookDAO::getSnapshotReadCount);
+		metrics.counter("bookstore_snapshot_stale_reads_total",
+				"Reads passed to the database while the snapshot was being rebuilt", null, null,
+				snapshotBookDAO::getStaleReadCount);
+		metrics.counter("bookstore_snapshot_rebuilds_total", "Catalog snapshots built", null, null,
+				snapshotBookDAO::getRebuildCount);
+	}
+
+	private static void registerCache(Metrics metrics, CachingBookDAO cache) {
+		LruCache<Integer, Book> books = cache.getBookCache();
+		metrics.counter("bookstore_cache_hits_total", "Lookups answered by CachingBookDAO", "cache", "book",
+				books::getHitCount);
+		metrics.counter("bookstore_cache_hits_total", "Lookups answered by CachingBookDAO", "cache", "list",
+				cache::getListHitCount);
+		metrics.counter("bookstore_cache_misses_total", "Lookups CachingBookDAO passed to the database", "cache",
+				"book", books::getMissCount);
+		metrics.counter("bookstore_cache_misses_total", "Lookups CachingBookDAO passed to the database", "cache",
+				"list", cache::getListMissCount);
+		metrics.gauge("bookstore_cache_entries", "Books held by CachingBookDAO", null, null, books::size);
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		Object bookDAO = context.getAttribute(BOOK_DAO_ATTRIBUTE);
+		if (warmup != null) {
+			warmup.stop();
+			try {
+				warmupThread.join(10000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (writeBehindBookDAO != null) {
+			// flushes what is still queued while the database is open
+			writeBehindBookDAO.close();
+			System.out.println("Closed " + writeBehindBookDAO);
+		}
+		if (bookDAO instanceof CachingBookDAO) {
+			System.out.println("Closing book cache, " + bookDAO);
+		}
+		if (snapshotBookDAO != null) {
+			System.out.println("Closing " + snapshotBookDAO);
+			snapshotBookDAO.close();
+		}
+		for (DBConnection dbConnection : dbConnections) {
+			dbConnection.disconnect();
+		}
+		dbConnections.clear();
+		databases.clear();
+	}
+
+	// Collects the <context-param> entries from web.xml, e.g. db.pool.maxSize
+	private static Properties contextSettings(ServletContext context) {
+		Properties settings = new Properties();
+		for (String name : Collections.list(context.getInitParameterNames())) {
+			settings.setProperty(name, context.getInitParameter(name));
+		}
+		return settings;
+	}
+}
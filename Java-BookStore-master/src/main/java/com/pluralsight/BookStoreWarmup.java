@@ -0,0 +1,102 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gets the application up to speed in the background after startup, so the
+ * first requests after a deploy do not pay for it:
+ *
+ *   - every pooled connection is opened and the hot statements are compiled
+ *     into its statement cache (BookDAO.prepareStatements)
+ *   - the first catalog pages, and their books, are read through the full
+ *     DAO chain, which leaves them in CachingBookDAO
+ *   - the list, get and search paths are run a number of times so that the
+ *     JIT has compiled them before real traffic arrives
+ *
+ * ReadinessServlet reports the application as not ready until this is done.
+ * A warm-up that fails still ends; it only makes startup faster.
+ */
+public class BookStoreWarmup implements Runnable {
+	private final List<BookDAO> databases;
+	private final BookDAO bookDAO;
+	private final int pages;
+	private final int pageSize;
+	private final int iterations;
+	private volatile boolean stopped;
+	private volatile boolean done;
+	private volatile long durationMillis;
+
+	/**
+	 * @param databases the DAOs talking to each database, beneath any decorators
+	 * @param bookDAO the DAO the servlets use
+	 */
+	public BookStoreWarmup(List<BookDAO> databases, BookDAO bookDAO, int pages, int pageSize, int iterations) {
+		this.databases = databases;
+		this.bookDAO = bookDAO;
+		this.pages = pages;
+		this.pageSize = pageSize;
+		this.iterations = iterations;
+	}
+
+	@Override
+	public void run() {
+		long startNanos = System.nanoTime();
+		int statements = 0;
+		List<Integer> ids = new ArrayList<>();
+		String query = null;
+		try {
+			for (BookDAO database : databases) {
+				statements += database.prepareStatements();
+			}
+
+			// the same pageSize + 1 requests /books/list makes, so they are cached
+			int after = 0;
+			for (int page = 0; page < pages && !stopped; page++) {
+				ArrayList<Book> books = bookDAO.listBooks(after, pageSize + 1);
+				for (int i = 0; i < Math.min(books.size(), pageSize); i++) {
+					ids.add(books.get(i).getId());
+				}
+				if (query == null && !books.isEmpty()) {
+					query = books.get(0).getAuthor();
+				}
+				if (books.size() <= pageSize) {
+					break;
+				}
+				after = books.get(pageSize - 1).getId();
+			}
+			bookDAO.getBooks(ids);
+
+			if (!ids.isEmpty()) {
+				for (int i = 0; i < iterations && !stopped; i++) {
+					bookDAO.listBooks(0, pageSize + 1);
+					bookDAO.getBook(ids.get(i % ids.size()));
+					if (i % 100 == 0) {
+						bookDAO.searchBooks(query, 0, pageSize + 1, null);
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		} finally {
+			durationMillis = (System.nanoTime() - startNanos) / 1000000;
+			done = true;
+			System.out.println("Warm-up finished in " + durationMillis + " ms: " + statements
+					+ " statements prepared, " + ids.size() + " books loaded");
+		}
+	}
+
+	/** Cuts a running warm-up short, for shutdown. */
+	public void stop() {
+		stopped = true;
+	}
+
+	public boolean isDone() {
+		return done;
+	}
+
+	/** How long the warm-up took, once it is done. */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+}
@@ -0,0 +1,246 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Read-through cache in front of another BookDAO.
+ *
+ * Single books live in an LRU map keyed by id. Listings (the full catalog and
+ * keyset pages) are kept as snapshots tagged with the catalog version they
+ * were read at; every write bumps the version, which retires all of them at
+ * once. A value read from the database is only cached if no write happened
+ * while it was being read, so a slow reader cannot put back stale data.
+ *
+ * Book is mutable, so the cache keeps copies of its own and hands out fresh
+ * copies: a caller changing a Book it got back changes nothing the next
+ * reader sees. Only writes that changed something bump the version.
+ */
+public class CachingBookDAO extends BookDAO {
+	private final BookDAO delegate;
+	private final LruCache<Integer, Book> books;
+	private final LruCache<Long, Listing> pages;
+	private final AtomicLong version = new AtomicLong();
+	private volatile Listing allBooks;
+
+	private final LongAdder listHits = new LongAdder();
+	private final LongAdder listMisses = new LongAdder();
+
+	public CachingBookDAO(BookDAO delegate, int maxBooks, int maxPages) {
+		this.delegate = delegate;
+		this.books = new LruCache<>(maxBooks);
+		this.pages = new LruCache<>(maxPages);
+	}
+
+	@Override
+	public Book readBook(int id) {
+		Book book = books.get(id);
+		if (book != null) {
+			return copyOf(book);
+		}
+		long seen = version.get();
+		book = delegate.readBook(id);
+		if (book != null && version.get() == seen) {
+			books.put(id, copyOf(book));
+		}
+		return book;
+	}
+
+	@Override
+	public Map<Integer, Book> getBooks(Collection<Integer> ids) {
+		Map<Integer, Book> found = new HashMap<>();
+		List<Integer> missing = new ArrayList<>();
+		for (Integer id : ids) {
+			Book book = books.get(id);
+			if (book != null) {
+				found.put(id, copyOf(book));
+			} else {
+				missing.add(id);
+			}
+		}
+		if (!missing.isEmpty()) {
+			long seen = version.get();
+			Map<Integer, Book> loaded = delegate.getBooks(missing);
+			if (version.get() == seen) {
+				for (Book book : loaded.values()) {
+					books.put(book.getId(), copyOf(book));
+				}
+			}
+			found.putAll(loaded);
+		}
+		return found;
+	}
+
+	@Override
+	public ArrayList<Book> listAllBooks() {
+		Listing listing = allBooks;
+		long current = version.get();
+		if (listing != null && listing.version == current) {
+			listHits.increment();
+			return copiesOf(listing.books);
+		}
+		listMisses.increment();
+		ArrayList<Book> loaded = delegate.listAllBooks();
+		allBooks = new Listing(current, copiesOf(loaded));
+		return loaded;
+	}
+
+	@Override
+	public ArrayList<Book> readBooks(int afterId, int limit) {
+		Long key = ((long) afterId << 32) | (limit & 0xffffffffL);
+		Listing listing = pages.get(key);
+		long current = version.get();
+		if (listing != null && listing.version == current) {
+			listHits.increment();
+			return copiesOf(listing.books);
+		}
+		listMisses.increment();
+		ArrayList<Book> loaded = delegate.readBooks(afterId, limit);
+		pages.put(key, new Listing(current, copiesOf(loaded)));
+		return loaded;
+	}
+
+	@Override
+	public ArrayList<Book> searchBooks(String query, int offset, int limit, List<Double> ranks) {
+		return delegate.searchBooks(query, offset, limit, ranks);
+	}
+
+	@Override
+	public void forEachBook(Consumer<Book> consumer) {
+		delegate.forEachBook(consumer);
+	}
+
+	@Override
+	public boolean insertBook(Book book) {
+		boolean rowInserted = delegate.insertBook(book);
+		if (rowInserted) {
+			version.incrementAndGet();
+		}
+		return rowInserted;
+	}
+
+	@Override
+	public int insertBooks(Iterable<Book> books, int chunkSize) {
+		int inserted;
+		try {
+			inserted = delegate.insertBooks(books, chunkSize);
+		} catch (BookImportException e) {
+			// chunks committed before the failure change the catalog too
+			if (e.getImportedCount() > 0) {
+				version.incrementAndGet();
+			}
+			throw e;
+		}
+		if (inserted > 0) {
+			version.incrementAndGet();
+		}
+		return inserted;
+	}
+
+	@Override
+	public boolean updateBook(Book book) {
+		boolean rowUpdated = delegate.updateBook(book);
+		if (rowUpdated) {
+			version.incrementAndGet();
+			books.remove(book.getId());
+		}
+		return rowUpdated;
+	}
+
+	@Override
+	public boolean deleteBook(int id) {
+		boolean rowDeleted = delegate.deleteBook(id);
+		if (rowDeleted) {
+			version.incrementAndGet();
+			books.remove(id);
+		}
+		return rowDeleted;
+	}
+
+	// A sharded delegate can commit some shards and still report failure, so
+	// the cache is dropped whenever the delegate's catalog moved
+	@Override
+	public boolean writeBatch(Collection<Book> inserts, Collection<Book> updates, Collection<Integer> deletes) {
+		long before = delegate.getCatalogVersion();
+		boolean committed = false;
+		try {
+			committed = delegate.writeBatch(inserts, updates, deletes);
+			return committed;
+		} finally {
+			if (committed || delegate.getCatalogVersion() != before) {
+				version.incrementAndGet();
+				for (Book book : updates) {
+					books.remove(book.getId());
+				}
+				for (Integer id : deletes) {
+					books.remove(id);
+				}
+			}
+		}
+	}
+
+	@Override
+	public long getCatalogVersion() {
+		return delegate.getCatalogVersion();
+	}
+
+	@Override
+	public long getLastModified() {
+		return delegate.getLastModified();
+	}
+
+	@Override
+	int getMaxId() {
+		return delegate.getMaxId();
+	}
+
+	public LruCache<Integer, Book> getBookCache() {
+		return books;
+	}
+
+	public long getListHitCount() {
+		return listHits.sum();
+	}
+
+	public long getListMissCount() {
+		return listMisses.sum();
+	}
+
+	public long getListEvictionCount() {
+		return pages.getEvictionCount();
+	}
+
+	@Override
+	public String toString() {
+		return "CachingBookDAO(books: " + books + "; lists: hits=" + getListHitCount()
+				+ ", misses=" + getListMissCount() + ", evictions=" + getListEvictionCount() + ")";
+	}
+
+	private static Book copyOf(Book book) {
+		return new Book(book.getId(), book.getTitle(), book.getAuthor(), book.getPrice());
+	}
+
+	private static ArrayList<Book> copiesOf(List<Book> books) {
+		ArrayList<Book> copies = new ArrayList<>(books.size());
+		for (Book book : books) {
+			copies.add(copyOf(book));
+		}
+		return copies;
+	}
+
+	private static class Listing {
+		final long version;
+		final List<Book> books;
+
+		Listing(long version, List<Book> books) {
+			this.version = version;
+			this.books = books;
+		}
+	}
+}
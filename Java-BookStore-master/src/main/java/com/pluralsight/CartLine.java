@@ -0,0 +1,37 @@
+package com.pluralsight;
+
+import java.util.List;
+
+/**
+ * One book in a priced cart: the book as the catalog has it now, and how many
+ * copies the customer wants.
+ */
+public class CartLine {
+	private final Book book;
+	private final int quantity;
+
+	public CartLine(Book book, int quantity) {
+		this.book = book;
+		this.quantity = quantity;
+	}
+
+	public Book getBook() {
+		return book;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public double getLineTotal() {
+		return (double) book.getPrice() * quantity;
+	}
+
+	public static double total(List<CartLine> lines) {
+		double total = 0;
+		for (CartLine line : lines) {
+			total += line.getLineTotal();
+		}
+		return total;
+	}
+}
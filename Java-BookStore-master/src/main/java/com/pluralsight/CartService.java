@@ -0,0 +1,202 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+/**
+ * Shopping carts, one per HTTP session.
+ *
+ * Carts live in a ConcurrentHashMap keyed by session id, and each cart is a
+ * ConcurrentHashMap from book id to quantity, so sessions never wait for each
+ * other and adding a book does not touch the database. Adding takes the
+ * cart's own lock, so that concurrent requests of one session cannot take
+ * it past MAX_BOOKS; nothing else needs it, as nothing else grows a cart.
+ * Prices are looked up only when a cart is shown or checked out, for the
+ * whole cart in one BookDAO.getBooks call. Registered as a session listener,
+ * the service drops a cart when its session ends.
+ */
+public class CartService implements HttpSessionListener {
+	public static final int MAX_BOOKS = 100;
+	public static final int MAX_QUANTITY = 99;
+
+	private final BookDAO bookDAO;
+	private final OrderDAO orderDAO;
+	private final ConcurrentHashMap<String, Cart> carts = new ConcurrentHashMap<>();
+
+	private final LongAdder itemsAdded = new LongAdder();
+	private final LongAdder checkouts = new LongAdder();
+	private final LongAdder failedCheckouts = new LongAdder();
+
+	public CartService(BookDAO bookDAO, OrderDAO orderDAO) {
+		this.bookDAO = bookDAO;
+		this.orderDAO = orderDAO;
+	}
+
+	/**
+	 * Adds copies of a book, up to MAX_QUANTITY in all. Returns false if the
+	 * quantity is not positive or the cart already holds MAX_BOOKS other books.
+	 * Whether the book exists is only checked when the cart is priced.
+	 */
+	public boolean add(String sessionId, int bookId, int quantity) {
+		if (quantity <= 0) {
+			return false;
+		}
+		Cart cart = cart(sessionId);
+		synchronized (cart) {
+			if (!cart.items.containsKey(bookId) && cart.items.size() >= MAX_BOOKS) {
+				return false;
+			}
+			cart.items.merge(bookId, Math.min(quantity, MAX_QUANTITY),
+					(current, added) -> Math.min(current + added, MAX_QUANTITY));
+		}
+		itemsAdded.add(quantity);
+		return true;
+	}
+
+	/** Sets the quantity of a book already in the cart; 0 or less removes it. */
+	public boolean setQuantity(String sessionId, int bookId, int quantity) {
+		Cart cart = carts.get(sessionId);
+		if (cart == null) {
+			return false;
+		}
+		if (quantity <= 0) {
+			return cart.items.remove(bookId) != null;
+		}
+		return cart.items.computeIfPresent(bookId, (id, current) -> Math.min(quantity, MAX_QUANTITY)) != null;
+	}
+
+	public boolean remove(String sessionId, int bookId) {
+		return setQuantity(sessionId, bookId, 0);
+	}
+
+	/** Number of copies in the cart, over all books. */
+	public int getItemCount(String sessionId) {
+		Cart cart = carts.get(sessionId);
+		int count = 0;
+		if (cart != null) {
+			for (int quantity : cart.items.values()) {
+				count += quantity;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The cart priced at today's catalog prices, ordered by book id. Books that
+	 * have left the catalog are dropped from the cart. If the prices cannot be
+	 * looked up, the BookDAOException is passed on and the cart is untouched.
+	 */
+	public List<CartLine> getLines(String sessionId) {
+		Cart cart = carts.get(sessionId);
+		if (cart == null) {
+			return new ArrayList<>();
+		}
+		return price(cart, new HashMap<>(cart.items));
+	}
+
+	/**
+	 * Places an order for everything in the cart, priced and stored in one
+	 * transaction, and takes the ordered copies out of the cart. Returns the
+	 * order id; 0 if the cart was empty or another checkout of the same cart
+	 * was already running; -1 if the cart could not be priced or the order
+	 * could not be stored, in which case the cart is left as it was.
+	 */
+	public long checkout(String sessionId) {
+		Cart cart = carts.get(sessionId);
+		if (cart == null || !cart.checkingOut.compareAndSet(false, true)) {
+			return 0;
+		}
+		try {
+			List<CartLine> lines;
+			try {
+				lines = price(cart, new HashMap<>(cart.items));
+			} catch (BookDAOException e) {
+				e.printStackTrace();
+				failedCheckouts.increment();
+				return -1;
+			}
+			if (lines.isEmpty()) {
+				return 0;
+			}
+			long orderId = orderDAO.placeOrder(lines);
+			if (orderId < 0) {
+				failedCheckouts.increment();
+				return -1;
+			}
+			// books added while the order was being placed stay in the cart
+			for (CartLine line : lines) {
+				int ordered = line.getQuantity();
+				cart.items.computeIfPresent(line.getBook().getId(),
+						(id, current) -> current > ordered ? current - ordered : null);
+			}
+			checkouts.increment();
+			return orderId;
+		} finally {
+			cart.checkingOut.set(false);
+		}
+	}
+
+	public int getCartCount() {
+		return carts.size();
+	}
+
+	public long getItemsAddedCount() {
+		return itemsAdded.sum();
+	}
+
+	public long getCheckoutCount() {
+		return checkouts.sum();
+	}
+
+	public long getFailedCheckoutCount() {
+		return failedCheckouts.sum();
+	}
+
+	@Override
+	public void sessionCreated(HttpSessionEvent event) {
+		// carts are created on the first add
+	}
+
+	@Override
+	public void sessionDestroyed(HttpSessionEvent event) {
+		carts.remove(event.getSession().getId());
+	}
+
+	private Cart cart(String sessionId) {
+		Cart cart = carts.get(sessionId);
+		if (cart == null) {
+			cart = carts.computeIfAbsent(sessionId, id -> new Cart());
+		}
+		return cart;
+	}
+
+	private List<CartLine> price(Cart cart, Map<Integer, Integer> items) {
+		Map<Integer, Book> books = bookDAO.getBooks(items.keySet());
+		List<CartLine> lines = new ArrayList<>(books.size());
+		for (Map.Entry<Integer, Integer> item : items.entrySet()) {
+			Book book = books.get(item.getKey());
+			if (book == null) {
+				cart.items.remove(item.getKey());
+			} else {
+				lines.add(new CartLine(book, item.getValue()));
+			}
+		}
+		lines.sort(Comparator.comparingInt(line -> line.getBook().getId()));
+		return lines;
+	}
+
+	private static class Cart {
+		final ConcurrentHashMap<Integer, Integer> items = new ConcurrentHashMap<>();
+		// set while an order is placed, so a double submit orders once
+		final AtomicBoolean checkingOut = new AtomicBoolean();
+	}
+}
@@ -0,0 +1,150 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The shopping cart, mapped to /cart/*.
+ *
+ *   POST /cart/addcart   id=&lt;book&gt;&amp;quantity=&lt;n&gt;  add copies of a book (quantity defaults to 1)
+ *   POST /cart/update    id=&lt;book&gt;&amp;quantity=&lt;n&gt;  change a quantity; 0 removes the book
+ *   POST /cart/delete    id=&lt;book&gt;                remove a book
+ *   POST /cart/checkout                         order everything in the cart
+ *   GET  /cart/show                             the cart page
+ *
+ * Changes must be posted; a GET to one of them answers 405, so links,
+ * prefetchers and crawlers cannot change a cart. Changes redirect to the
+ * cart page, so reloading it repeats nothing.
+ */
+public class CartServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	private CartService cartService;
+
+	public void init() {
+		cartService = (CartService) getServletContext().getAttribute(BookStoreListener.CART_SERVICE_ATTRIBUTE);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		String action = action(request);
+		if (isChange(action)) {
+			response.setHeader("Allow", "POST");
+			response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Use POST for " + action);
+			return;
+		}
+		showCart(request.getSession().getId(), request, response);
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		String action = action(request);
+		String sessionId = request.getSession().getId();
+
+		switch (action) {
+			case "/addcart": {
+				Integer id = intParameter(request, "id");
+				Integer quantity = request.getParameter("quantity") == null ? Integer.valueOf(1)
+						: intParameter(request, "quantity");
+				if (id == null || quantity == null) {
+					response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid book id or quantity");
+					return;
+				}
+				if (!cartService.add(sessionId, id, quantity)) {
+					response.sendError(HttpServletResponse.SC_CONFLICT, "The cart holds at most "
+							+ CartService.MAX_BOOKS + " different books");
+					return;
+				}
+				response.sendRedirect("show");
+				break;
+			}
+			case "/update": {
+				Integer id = intParameter(request, "id");
+				Integer quantity = intParameter(request, "quantity");
+				if (id == null || quantity == null) {
+					response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid book id or quantity");
+					return;
+				}
+				cartService.setQuantity(sessionId, id, quantity);
+				response.sendRedirect("show");
+				break;
+			}
+			case "/delete": {
+				Integer id = intParameter(request, "id");
+				if (id == null) {
+					response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid book id");
+					return;
+				}
+				cartService.remove(sessionId, id);
+				response.sendRedirect("show");
+				break;
+			}
+			case "/checkout":
+				checkout(sessionId, response);
+				break;
+			default:
+				showCart(sessionId, request, response);
+				break;
+		}
+	}
+
+	private static String action(HttpServletRequest request) {
+		return request.getPathInfo() == null ? "/show" : request.getPathInfo();
+	}
+
+	private static boolean isChange(String action) {
+		return "/addcart".equals(action) || "/update".equals(action)
+				|| "/delete".equals(action) || "/checkout".equals(action);
+	}
+
+	private void checkout(String sessionId, HttpServletResponse response) throws IOException {
+		long orderId = cartService.checkout(sessionId);
+		if (orderId < 0) {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+					"The order could not be placed, please try again");
+			return;
+		}
+		response.sendRedirect(orderId > 0 ? "show?order=" + orderId : "show");
+	}
+
+	private void showCart(String sessionId, HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		List<CartLine> lines;
+		try {
+			lines = cartService.getLines(sessionId);
+		} catch (BookDAOException e) {
+			e.printStackTrace();
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+					"The cart could not be priced, please try again");
+			return;
+		}
+		request.setAttribute("lines", lines);
+		request.setAttribute("total", CartLine.total(lines));
+		Integer order = intParameter(request, "order");
+		if (order != null) {
+			request.setAttribute("order", order);
+		}
+		RequestDispatcher dispatcher = request.getRequestDispatcher("/ShoppingCart.jsp");
+		dispatcher.forward(request, response);
+	}
+
+	private static Integer intParameter(HttpServletRequest request, String name) {
+		String value = request.getParameter(name);
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
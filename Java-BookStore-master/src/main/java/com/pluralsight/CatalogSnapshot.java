@@ -0,0 +1,185 @@
+package com.pluralsight;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Immutable, compact copy of the whole catalog.
+ *
+ * Books are stored column-wise in id order: ids and prices in primitive
+ * arrays, and every title and author back to back in one UTF-8 byte array,
+ * located through an offsets array. A null title or author is an empty span
+ * with its bit set in a bitmap, which exists only if some value is null. That
+ * is roughly 16 bytes per book plus the text, instead of a Book, two Strings
+ * and their char arrays per row, and the garbage collector sees at most six
+ * objects however large the catalog gets.
+ *
+ * Lookups by id are binary searches. Ids and prices are read without
+ * allocating; titles and authors are decoded on access.
+ */
+public final class CatalogSnapshot {
+	private final long version;
+	private final int size;
+	private final int[] ids;
+	private final float[] prices;
+	// title i spans offsets[2i]..offsets[2i+1], author i offsets[2i+1]..offsets[2i+2]
+	private final int[] offsets;
+	private final byte[] text;
+	// bit 2i set when title i is null, bit 2i+1 when author i is; null when none are
+	private final long[] nulls;
+
+	private CatalogSnapshot(long version, int size, int[] ids, float[] prices, int[] offsets, byte[] text,
+			long[] nulls) {
+		this.version = version;
+		this.size = size;
+		this.ids = ids;
+		this.prices = prices;
+		this.offsets = offsets;
+		this.text = text;
+		this.nulls = nulls;
+	}
+
+	/**
+	 * Reads every book from the DAO. The snapshot is tagged with the catalog
+	 * version seen before reading, so a write that races with the load leaves
+	 * it looking out of date rather than current.
+	 */
+	public static CatalogSnapshot load(BookDAO bookDAO) {
+		long version = bookDAO.getCatalogVersion();
+		Builder builder = new Builder();
+		bookDAO.forEachBook(builder::add);
+		return builder.build(version);
+	}
+
+	/** The BookDAO catalog version this snapshot was read at. */
+	public long getVersion() {
+		return version;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** Position of the book with this id, or -1 if there is none. */
+	public int indexOf(int id) {
+		int index = Arrays.binarySearch(ids, 0, size, id);
+		return index >= 0 ? index : -1;
+	}
+
+	/** Position of the first book with an id greater than afterId; size() if none. */
+	public int indexAfter(int afterId) {
+		int index = Arrays.binarySearch(ids, 0, size, afterId);
+		return index >= 0 ? index + 1 : -index - 1;
+	}
+
+	public int getId(int index) {
+		return ids[index];
+	}
+
+	public float getPrice(int index) {
+		return prices[index];
+	}
+
+	public String getTitle(int index) {
+		return decode(2 * index);
+	}
+
+	public String getAuthor(int index) {
+		return decode(2 * index + 1);
+	}
+
+	public Book getBook(int index) {
+		return new Book(ids[index], getTitle(index), getAuthor(index), prices[index]);
+	}
+
+	/** Same contract as BookDAO.listBooks. */
+	public ArrayList<Book> listBooks(int afterId, int limit) {
+		int from = indexAfter(afterId);
+		int to = (int) Math.min(size, (long) from + Math.max(limit, 0));
+		ArrayList<Book> books = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) {
+			books.add(getBook(i));
+		}
+		return books;
+	}
+
+	/** Approximate heap footprint of the arrays, in bytes. */
+	public long getMemoryBytes() {
+		return 4L * ids.length + 4L * prices.length + 4L * offsets.length + text.length
+				+ (nulls == null ? 0 : 8L * nulls.length);
+	}
+
+	// Field f of the flattened title/author sequence
+	private String decode(int field) {
+		if (nulls != null && (nulls[field >>> 6] & 1L << field) != 0) {
+			return null;
+		}
+		int start = offsets[field];
+		return new String(text, start, offsets[field + 1] - start, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return "CatalogSnapshot(version=" + version + ", books=" + size
+				+ ", bytes=" + getMemoryBytes() + ")";
+	}
+
+	/** Collects books in ascending id order. */
+	static class Builder {
+		private int size;
+		private int[] ids = new int[1024];
+		private float[] prices = new float[1024];
+		private int[] offsets = new int[2 * 1024 + 1];
+		private byte[] text = new byte[32 * 1024];
+		private int textLength;
+		private long[] nulls;
+
+		void add(Book book) {
+			if (size > 0 && book.getId() <= ids[size - 1]) {
+				throw new IllegalArgumentException("Books must be added in ascending id order, got "
+						+ book.getId() + " after " + ids[size - 1]);
+			}
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+				prices = Arrays.copyOf(prices, size * 2);
+				offsets = Arrays.copyOf(offsets, size * 4 + 1);
+			}
+			ids[size] = book.getId();
+			prices[size] = book.getPrice();
+			offsets[2 * size] = textLength;
+			append(2 * size, book.getTitle());
+			offsets[2 * size + 1] = textLength;
+			append(2 * size + 1, book.getAuthor());
+			offsets[2 * size + 2] = textLength;
+			size++;
+		}
+
+		private void append(int field, String value) {
+			if (value == null) {
+				if (nulls == null) {
+					nulls = new long[(ids.length * 2 + 63) >>> 6];
+				} else if (field >>> 6 >= nulls.length) {
+					nulls = Arrays.copyOf(nulls, Math.max(nulls.length * 2, (field >>> 6) + 1));
+				}
+				nulls[field >>> 6] |= 1L << field;
+				return;
+			}
+			if (value.isEmpty()) {
+				return;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			if (textLength + bytes.length > text.length) {
+				text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + bytes.length));
+			}
+			System.arraycopy(bytes, 0, text, textLength, bytes.length);
+			textLength += bytes.length;
+		}
+
+		CatalogSnapshot build(long version) {
+			return new CatalogSnapshot(version, size, Arrays.copyOf(ids, size), Arrays.copyOf(prices, size),
+					Arrays.copyOf(offsets, 2 * size + 1), Arrays.copyOf(text, textLength),
+					nulls == null ? null : Arrays.copyOf(nulls, (2 * size + 63) >>> 6));
+		}
+	}
+}
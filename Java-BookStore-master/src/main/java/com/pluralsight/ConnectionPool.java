@@ -0,0 +1,339 @@
+package com.pluralsight;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of JDBC connections.
+ *
+ * At most maxSize connections are handed out at once; borrowers beyond that
+ * wait up to maxWaitMillis for one to be returned. Idle connections are
+ * validated before they are handed out, and connections idle for longer than
+ * idleTimeoutMillis are closed down to minIdle. Each connection keeps up to
+ * statementCacheSize prepared statements for reuse (0 disables the cache).
+ */
+public class ConnectionPool {
+
+	public interface ConnectionFactory {
+		Connection open() throws SQLException;
+	}
+
+	private final ConnectionFactory factory;
+	private final int minIdle;
+	private final int maxSize;
+	private final long maxWaitMillis;
+	private final long idleTimeoutMillis;
+	private final int validationTimeoutSeconds;
+	private final int statementCacheSize;
+	private final boolean ownsConnections;
+
+	private final Semaphore permits;
+	// Most recently returned connections sit at the head, so the tail holds the eviction candidates.
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	private final AtomicInteger total = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed;
+
+	private final LongAdder borrowCount = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final LatencyHistogram waitHistogram = new LatencyHistogram();
+	private final LongAdder timeoutCount = new LongAdder();
+	private final LongAdder createdCount = new LongAdder();
+	private final LongAdder evictedCount = new LongAdder();
+	private final LongAdder invalidCount = new LongAdder();
+	private final LongAdder statementHits = new LongAdder();
+	private final LongAdder statementMisses = new LongAdder();
+	private final LongAdder statementEvictions = new LongAdder();
+
+	public ConnectionPool(ConnectionFactory factory, int minIdle, int maxSize,
+			long maxWaitMillis, long idleTimeoutMillis, int validationTimeoutSeconds,
+			int statementCacheSize) {
+		this(factory, minIdle, maxSize, maxWaitMillis, idleTimeoutMillis, validationTimeoutSeconds,
+				statementCacheSize, true);
+	}
+
+	private ConnectionPool(ConnectionFactory factory, int minIdle, int maxSize,
+			long maxWaitMillis, long idleTimeoutMillis, int validationTimeoutSeconds,
+			int statementCacheSize, boolean ownsConnections) {
+		if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: minIdle=" + minIdle + ", maxSize=" + maxSize);
+		}
+		this.factory = factory;
+		this.minIdle = minIdle;
+		this.maxSize = maxSize;
+		this.maxWaitMillis = maxWaitMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		this.statementCacheSize = statementCacheSize;
+		this.ownsConnections = ownsConnections;
+		this.permits = new Semaphore(maxSize, true);
+
+		fillToMinIdle();
+
+		if (idleTimeoutMillis > 0) {
+			evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "bookstore-pool-evictor");
+				thread.setDaemon(true);
+				return thread;
+			});
+			long period = Math.max(1000, idleTimeoutMillis / 2);
+			evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+		} else {
+			evictor = null;
+		}
+	}
+
+	/**
+	 * Wraps a single, externally managed connection. Borrowers take turns on it,
+	 * it is never validated or evicted, statements are not cached, and closing
+	 * the pool leaves it open.
+	 */
+	public static ConnectionPool ofSingle(Connection connection) {
+		return new ConnectionPool(() -> connection, 0, 1, Long.MAX_VALUE, 0, 0, 0, false);
+	}
+
+	public PooledConnection borrow() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+				timeoutCount.increment();
+				throw new SQLTimeoutException("Timed out after " + maxWaitMillis + " ms waiting for a connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		}
+		recordWait(System.nanoTime() - start);
+
+		try {
+			PooledConnection connection;
+			while ((connection = idle.pollFirst()) != null) {
+				if (isValid(connection)) {
+					break;
+				}
+				invalidCount.increment();
+				discard(connection);
+			}
+			if (connection == null) {
+				connection = create();
+			}
+			connection.markBorrowed();
+			active.incrementAndGet();
+			return connection;
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	void release(PooledConnection connection) {
+		active.decrementAndGet();
+		try {
+			if (closed || !resetForReuse(connection) || total.get() > maxSize) {
+				discard(connection);
+			} else {
+				connection.touch();
+				idle.offerFirst(connection);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	public void close() {
+		closed = true;
+		if (evictor != null) {
+			evictor.shutdownNow();
+		}
+		PooledConnection connection;
+		while ((connection = idle.pollFirst()) != null) {
+			discard(connection);
+		}
+	}
+
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	public int getTotalCount() {
+		return total.get();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getBorrowCount() {
+		return borrowCount.sum();
+	}
+
+	public long getTotalWaitNanos() {
+		return waitNanos.sum();
+	}
+
+	public long getMaxWaitNanos() {
+		return maxWaitNanos.get();
+	}
+
+	/** Time each successful borrow spent waiting for a permit. */
+	public LatencyHistogram getWaitHistogram() {
+		return waitHistogram;
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.sum();
+	}
+
+	public long getCreatedCount() {
+		return createdCount.sum();
+	}
+
+	public long getEvictedCount() {
+		return evictedCount.sum();
+	}
+
+	public long getInvalidCount() {
+		return invalidCount.sum();
+	}
+
+	public long getStatementCacheHits() {
+		return statementHits.sum();
+	}
+
+	public long getStatementCacheMisses() {
+		return statementMisses.sum();
+	}
+
+	public long getStatementCacheEvictions() {
+		return statementEvictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		long borrows = getBorrowCount();
+		double avgWaitMicros = borrows == 0 ? 0 : getTotalWaitNanos() / 1000.0 / borrows;
+		return "ConnectionPool(active=" + getActiveCount() + ", idle=" + getIdleCount()
+				+ ", total=" + getTotalCount() + "/" + maxSize + ", borrows=" + borrows
+				+ ", avgWaitMicros=" + String.format("%.1f", avgWaitMicros)
+				+ ", maxWaitMicros=" + getMaxWaitNanos() / 1000
+				+ ", timeouts=" + getTimeoutCount() + ", created=" + getCreatedCount()
+				+ ", evicted=" + getEvictedCount() + ", invalid=" + getInvalidCount()
+				+ ", statementHits=" + getStatementCacheHits()
+				+ ", statementMisses=" + getStatementCacheMisses()
+				+ ", statementEvictions=" + getStatementCacheEvictions() + ")";
+	}
+
+	private PooledConnection create() throws SQLException {
+		Connection connection = factory.open();
+		total.incrementAndGet();
+		createdCount.increment();
+		StatementCache statementCache = statementCacheSize > 0
+				? new StatementCache(connection, statementCacheSize, statementHits, statementMisses, statementEvictions)
+				: null;
+		return new PooledConnection(this, connection, statementCache);
+	}
+
+	private void discard(PooledConnection connection) {
+		total.decrementAndGet();
+		if (!ownsConnections) {
+			return;
+		}
+		connection.clearStatements();
+		try {
+			connection.getConnection().close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private boolean isValid(PooledConnection connection) {
+		if (!ownsConnections) {
+			return true;
+		}
+		try {
+			return connection.getConnection().isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	// Leaves the connection the way the next borrower expects it: auto-commit on,
+	// no transaction in progress.
+	private boolean resetForReuse(PooledConnection connection) {
+		if (!ownsConnections) {
+			return true;
+		}
+		try {
+			Connection raw = connection.getConnection();
+			if (raw.isClosed()) {
+				return false;
+			}
+			if (!raw.getAutoCommit()) {
+				raw.rollback();
+				raw.setAutoCommit(true);
+			}
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void recordWait(long nanos) {
+		borrowCount.increment();
+		waitNanos.add(nanos);
+		waitHistogram.record(nanos);
+		long max;
+		while (nanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, nanos)) {
+			// retry until we either win or someone recorded a longer wait
+		}
+	}
+
+	private void fillToMinIdle() {
+		while (!closed && total.get() < minIdle && permits.tryAcquire()) {
+			try {
+				PooledConnection connection = create();
+				connection.touch();
+				idle.offerLast(connection);
+			} catch (SQLException e) {
+				e.printStackTrace();
+				return;
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
+	private void evictIdle() {
+		long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+		while (total.get() > minIdle) {
+			PooledConnection candidate = idle.peekLast();
+			if (candidate == null || candidate.getLastUsedMillis() > cutoff) {
+				break;
+			}
+			if (idle.removeLastOccurrence(candidate)) {
+				evictedCount.increment();
+				discard(candidate);
+			}
+		}
+		fillToMinIdle();
+	}
+}
@@ -1,18 +1,35 @@
 package com.pluralsight;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import javax.inject.Inject;
 /**
  * Servlet implementation class HelloWorld
@@ -20,7 +37,30 @@ import javax.inject.Inject;
 
 public class ControllerServlet extends HttpServlet {
 		private static final long serialVersionUID = 1L;
-		private DBConnection dbConnection;
+		private int defaultPageSize = 50;
+		private int maxPageSize = 500;
+		private int maxSearchOffset = 10000;
+		private int importChunkSize = BookDAO.DEFAULT_CHUNK_SIZE;
+		// DAO work runs here instead of on container threads; writes get their
+		// own executor so a slow import cannot starve page views
+		private ExecutorService readExecutor;
+		private ExecutorService writeExecutor;
+		private long asyncTimeoutMillis = 10000;
+		private final String etagPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
+		// Latencies by action, JSP and executor; the servlet starts with a
+		// private registry and switches to the application's in init()
+		private Metrics.Histograms actionTimers;
+		private Metrics.Histograms renderTimers;
+		private Metrics.Histograms queueTimers;
+		private final LongAdder notModifiedCount = new LongAdder();
+		private final LongAdder rejectedCount = new LongAdder();
+		// Set when writes are queued; a session's reads then wait for its own
+		// writes to be flushed, up to readYourWritesMillis
+		private static final String WRITE_SEQUENCE_ATTRIBUTE = "com.pluralsight.writeSequence";
+		private WriteBehindBookDAO writeBehind;
+		private long readYourWritesMillis = 2000;
+		// null when fragments.enabled is false; BookList.jsp then renders every row itself
+		private BookRowCache bookRowCache;
 
 		@Inject
     private BookDAO bookDAO;
@@ -29,16 +69,93 @@ public class ControllerServlet extends HttpServlet {
      */
 
     public void init() {
-			dbConnection = new DBConnection();
-			bookDAO = new BookDAO(dbConnection.getConnection());
+			ServletContext context = getServletContext();
+			Properties settings = (Properties) context.getAttribute(BookStoreListener.SETTINGS_ATTRIBUTE);
+			bookDAO = (BookDAO) context.getAttribute(BookStoreListener.BOOK_DAO_ATTRIBUTE);
+			defaultPageSize = Integer.parseInt(settings.getProperty("books.pageSize", "50"));
+			maxPageSize = Integer.parseInt(settings.getProperty("books.maxPageSize", "500"));
+			maxSearchOffset = Integer.parseInt(settings.getProperty("search.maxOffset", "10000"));
+			importChunkSize = Integer.parseInt(settings.getProperty("import.chunkSize",
+					String.valueOf(BookDAO.DEFAULT_CHUNK_SIZE)));
+			if (bookDAO instanceof WriteBehindBookDAO) {
+				writeBehind = (WriteBehindBookDAO) bookDAO;
+				readYourWritesMillis = Long.parseLong(settings.getProperty("writeBehind.readYourWritesMillis", "2000"));
+			}
+			if (Boolean.parseBoolean(settings.getProperty("async.enabled", "true"))) {
+				int queueSize = Integer.parseInt(settings.getProperty("async.queueSize", "200"));
+				readExecutor = newExecutor("bookstore-read",
+						Integer.parseInt(settings.getProperty("async.readThreads", "16")), queueSize);
+				writeExecutor = newExecutor("bookstore-write",
+						Integer.parseInt(settings.getProperty("async.writeThreads", "2")), queueSize);
+				asyncTimeoutMillis = Long.parseLong(settings.getProperty("async.timeoutMillis", "10000"));
+			}
+			if (Boolean.parseBoolean(settings.getProperty("fragments.enabled", "true"))) {
+				bookRowCache = new BookRowCache(Integer.parseInt(settings.getProperty("fragments.maxRows", "10000")));
+			}
+			Metrics metrics = (Metrics) context.getAttribute(BookStoreListener.METRICS_ATTRIBUTE);
+			if (metrics != null) {
+				useMetrics(metrics);
+			}
     }
 
+		private void useMetrics(Metrics metrics) {
+			actionTimers = metrics.histograms("bookstore_request_seconds",
+					"Time from doGet to the finished response, JSP included", "action");
+			renderTimers = metrics.histograms("bookstore_render_seconds", "Time spent rendering a JSP", "page");
+			queueTimers = metrics.histograms("bookstore_async_queue_seconds",
+					"Time an asynchronous request waited for a worker thread", "executor");
+			metrics.counter("bookstore_not_modified_total", "Catalog pages answered with 304 Not Modified",
+					null, null, notModifiedCount::sum);
+			metrics.counter("bookstore_rejected_total", "Requests turned away with 503 because the executor was full",
+					null, null, rejectedCount::sum);
+			if (readExecutor != null) {
+				metrics.gauge("bookstore_async_queue_depth", "Requests waiting for a worker thread",
+						"executor", "read", ((ThreadPoolExecutor) readExecutor).getQueue()::size);
+				metrics.gauge("bookstore_async_queue_depth", "Requests waiting for a worker thread",
+						"executor", "write", ((ThreadPoolExecutor) writeExecutor).getQueue()::size);
+			}
+			if (bookRowCache != null) {
+				metrics.counter("bookstore_fragment_hits_total", "BookList rows served pre-rendered",
+						null, null, bookRowCache::getHitCount);
+				metrics.counter("bookstore_fragment_misses_total", "BookList rows rendered afresh",
+						null, null, bookRowCache::getMissCount);
+			}
+		}
+
+		// Fixed number of threads and a bounded queue; once both are full new
+		// work is rejected, and the request is answered with 503
+		private static ExecutorService newExecutor(String name, int threads, int queueSize) {
+			AtomicInteger count = new AtomicInteger();
+			return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<>(queueSize),
+					r -> {
+						Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					},
+					new ThreadPoolExecutor.AbortPolicy());
+		}
+
 		public void destroy() {
-			dbConnection.disconnect();
+			shutdown(readExecutor);
+			shutdown(writeExecutor);
+		}
+
+		private static void shutdown(ExecutorService executor) {
+			if (executor == null) {
+				return;
+			}
+			executor.shutdown();
+			try {
+				executor.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
 
     public ControllerServlet() {
         super();
+        useMetrics(new Metrics());
     }
 
 	/**
@@ -46,9 +163,175 @@ public class ControllerServlet extends HttpServlet {
 	 */
 	public void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException  {
+		RuntimeException failure = (RuntimeException) request.getAttribute(AsyncRequest.FAILURE_ATTRIBUTE);
+		if (failure != null) {
+			// back from AsyncRequest.abort
+			throw new ServletException(failure);
+		}
+		long start = System.nanoTime();
 		String action = request.getPathInfo();
+		if (isWrite(action) && isSafeMethod(request)) {
+			// links, prefetchers and crawlers follow GETs; changes need a form post
+			response.setHeader("Allow", "POST");
+			response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Use POST for " + action);
+			return;
+		}
+		if (isCatalogPage(action) && notModified(request, response)) {
+			notModifiedCount.increment();
+			return;
+		}
+		LatencyHistogram timer = actionTimers.get(actionName(action));
+		if (readExecutor != null && request.isAsyncSupported()) {
+			processAsync(request, response, start, timer);
+		} else {
+			process(request, response);
+			timer.recordSince(start);
+		}
+	}
+
+	// Label for the latency metrics; unknown paths are served by the listing
+	private static String actionName(String action) {
+		if (action == null) {
+			return "list";
+		}
+		switch (action) {
+			case "/admin":
+			case "/new":
+			case "/insert":
+			case "/edit":
+			case "/update":
+			case "/delete":
+			case "/search":
+			case "/import":
+			case "/export":
+				return action.substring(1);
+			default:
+				return "list";
+		}
+	}
 
+	// Frees the container thread: the action runs on a worker and either
+	// dispatches to a JSP or completes the response itself.
+	private void processAsync(HttpServletRequest request, HttpServletResponse response,
+			long start, LatencyHistogram timer) {
+		// exports and imports stream for as long as the catalog or the upload
+		// takes; they stop on their own when the client goes away
+		String path = request.getPathInfo();
+		long timeoutMillis = "/export".equals(path) || "/import".equals(path) ? 0 : asyncTimeoutMillis;
+		AsyncRequest async = new AsyncRequest(request.startAsync(request, response), timeoutMillis,
+				start, timer, renderTimers);
+		boolean write = isWrite(path);
+		ExecutorService executor = write ? writeExecutor : readExecutor;
+		LatencyHistogram queueTimer = queueTimers.get(write ? "write" : "read");
+		long queued = System.nanoTime();
 		try {
+			executor.execute(() -> {
+				queueTimer.recordSince(queued);
+				try {
+					// once the request times out these refuse to be used
+					process(async.request(), async.response());
+				} catch (BookDAOException e) {
+					async.abort(e);
+				} finally {
+					async.complete();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejectedCount.increment();
+			response.setHeader("Retry-After", "1");
+			async.fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server busy, try again");
+		}
+	}
+
+	// Pages whose content depends only on the catalog and the query string
+	private static boolean isCatalogPage(String action) {
+		return action == null || "/list".equals(action) || "/admin".equals(action)
+				|| "/search".equals(action) || "/".equals(action);
+	}
+
+	// Conditional GET for catalog pages. The ETag combines the DAO's catalog
+	// version with the servlet's start time, so versions from a previous run
+	// never match, and with the request's locale, since prices are formatted
+	// for it; Vary: Accept-Language tells shared caches the same. Answers 304
+	// before any DAO or JSP work when the client's copy is current; otherwise
+	// sets the validators for the full response.
+	// A session with a queued write gets neither: the catalog version does not
+	// include that write yet, so a 304 or an ETag would hide it.
+	private boolean notModified(HttpServletRequest request, HttpServletResponse response) {
+		if (bookDAO == null || !isSafeMethod(request) || hasUnflushedWrite(request)) {
+			return false;
+		}
+		long lastModified = bookDAO.getLastModified();
+		String etag = "\"" + etagPrefix + bookDAO.getCatalogVersion() + "-"
+				+ request.getLocale().toLanguageTag() + "\"";
+
+		boolean current;
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			current = etagMatches(ifNoneMatch, etag);
+		} else {
+			long ifModifiedSince = -1;
+			try {
+				ifModifiedSince = request.getDateHeader("If-Modified-Since");
+			} catch (IllegalArgumentException e) {
+				// unparseable date, treat as absent
+			}
+			current = ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+		}
+
+		response.setHeader("ETag", etag);
+		response.addHeader("Vary", "Accept-Language");
+		response.setDateHeader("Last-Modified", lastModified);
+		response.setHeader("Cache-Control", "no-cache");
+		if (current) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		}
+		return current;
+	}
+
+	private static boolean etagMatches(String ifNoneMatch, String etag) {
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isSafeMethod(HttpServletRequest request) {
+		return "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+	}
+
+	private static boolean isWrite(String action) {
+		return "/insert".equals(action) || "/import".equals(action)
+				|| "/update".equals(action) || "/delete".equals(action);
+	}
+
+	// Renders a JSP, from a worker thread when the request is asynchronous
+	private void forward(HttpServletRequest request, HttpServletResponse response, String page)
+			throws ServletException, IOException {
+		AsyncRequest async = AsyncRequest.of(request);
+		if (async != null) {
+			async.dispatch(page);
+		} else {
+			long start = System.nanoTime();
+			RequestDispatcher dispatcher = request.getRequestDispatcher(page);
+			dispatcher.forward(request, response);
+			renderTimers.get(page).recordSince(start);
+		}
+	}
+
+	private void process(HttpServletRequest request, HttpServletResponse response) {
+		String action = request.getPathInfo();
+
+		try {
+			if (writeBehind != null && !isWrite(action)) {
+				awaitOwnWrites(request);
+			}
 			switch(action) {
 				case "/admin":
 					 showBookAdmin(request, response);
@@ -58,39 +341,188 @@ public class ControllerServlet extends HttpServlet {
           break;
 				case "/insert":
 					insertBook(request, response);
+          break;
+				case "/edit":
+					showEditForm(request, response);
+          break;
+				case "/update":
+					updateBook(request, response);
+          break;
+				case "/delete":
+					deleteBook(request, response);
+          break;
+				case "/search":
+					searchBooks(request, response);
+          break;
+				case "/import":
+					importBooks(request, response);
+          break;
+				case "/export":
+					exportBooks(request, response);
           break;
         default:
 				   listBooks(request, response);
            break;
 			}
+		} catch (AsyncRequest.FinishedException e) {
+			// timed out; the container has already answered the client
+		} catch (BookDAOException e) {
+			// a response cut short by the database, see exportBooks
+			throw e;
+		} catch (IllegalArgumentException e) {
+			// a malformed id or price, or a book the table cannot hold
+			sendErrorIfPossible(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid request: " + e.getMessage());
 		} catch (Exception e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
+			sendErrorIfPossible(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Could not handle " + action);
 		}
 	}
 
+	// Once the page has started going out the status can no longer change
+	private static void sendErrorIfPossible(HttpServletResponse response, int status, String message) {
+		if (response.isCommitted()) {
+			return;
+		}
+		try {
+			response.sendError(status, message);
+		} catch (IOException e) {
+			// the client went away
+		}
+	}
+
+	// Remembers the last queued write for this session, see awaitOwnWrites
+	private void rememberWrite(HttpServletRequest request) {
+		if (writeBehind != null) {
+			request.getSession().setAttribute(WRITE_SEQUENCE_ATTRIBUTE, writeBehind.getSubmittedSequence());
+		}
+	}
+
+	private boolean hasUnflushedWrite(HttpServletRequest request) {
+		if (writeBehind == null) {
+			return false;
+		}
+		HttpSession session = request.getSession(false);
+		Long sequence = session == null ? null : (Long) session.getAttribute(WRITE_SEQUENCE_ATTRIBUTE);
+		return sequence != null && writeBehind.getFlushedSequence() < sequence;
+	}
+
+	private void awaitOwnWrites(HttpServletRequest request) {
+		HttpSession session = request.getSession(false);
+		Long sequence = session == null ? null : (Long) session.getAttribute(WRITE_SEQUENCE_ATTRIBUTE);
+		if (sequence != null && writeBehind.awaitFlushed(sequence, readYourWritesMillis)) {
+			session.removeAttribute(WRITE_SEQUENCE_ATTRIBUTE);
+		}
+	}
+
+	// In write-behind mode false means the queue was full, not that no row changed
+	private boolean writeQueued(boolean accepted, HttpServletResponse response) throws IOException {
+		if (writeBehind != null && !accepted) {
+			response.setHeader("Retry-After", "1");
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many pending writes, try again");
+			return false;
+		}
+		return true;
+	}
+
+	// title and author are NOT NULL in the book table
+	private static boolean hasTitleAndAuthor(String title, String author, HttpServletResponse response)
+			throws IOException {
+		if (title == null || author == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "booktitle and bookauthor are required");
+			return false;
+		}
+		return true;
+	}
+
 	private void showBookAdmin(HttpServletRequest request, HttpServletResponse response)
 			throws ClassNotFoundException, SQLException, ServletException, IOException {
-		ArrayList<Book> books_list = bookDAO.listAllBooks();
-
-		request.setAttribute("books", books_list);
-		RequestDispatcher dispatcher = request.getRequestDispatcher("/BookAdmin.jsp");
-		dispatcher.forward(request, response);
+		setBookPage(request);
+		forward(request, response, "/BookAdmin.jsp");
 	}
 
 	private void listBooks(HttpServletRequest request, HttpServletResponse response)
 			throws ClassNotFoundException, SQLException, ServletException, IOException {
-		ArrayList<Book> books_list = bookDAO.listAllBooks();
+		setBookPage(request);
+		setBookRows(request);
+		forward(request, response, "/BookList.jsp");
+	}
+
+	// Loads one keyset page of books: ?after=<last id seen>&size=<page size>.
+	// nextCursor is only set when there is another page after this one.
+	private void setBookPage(HttpServletRequest request) {
+		int pageSize = Math.min(intParameter(request, "size", defaultPageSize), maxPageSize);
+		if (pageSize < 1) {
+			pageSize = defaultPageSize;
+		}
+		int after = intParameter(request, "after", 0);
+
+		ArrayList<Book> books_list = bookDAO.listBooks(after, pageSize + 1);
+		if (books_list.size() > pageSize) {
+			books_list.remove(pageSize);
+			request.setAttribute("nextCursor", books_list.get(pageSize - 1).getId());
+		}
 
 		request.setAttribute("books", books_list);
-		RequestDispatcher dispatcher = request.getRequestDispatcher("/BookList.jsp");
-		dispatcher.forward(request, response);
+		request.setAttribute("pageSize", pageSize);
+	}
+
+	// /search?q=<words>&page=<n>&size=<page size>, rendered like the listing
+	private void searchBooks(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		String query = request.getParameter("q");
+		int pageSize = Math.min(intParameter(request, "size", defaultPageSize), maxPageSize);
+		if (pageSize < 1) {
+			pageSize = defaultPageSize;
+		}
+		int page = Math.max(intParameter(request, "page", 0), 0);
+
+		// one hit past the page tells whether there is a next one
+		long offset = (long) page * pageSize;
+		if (offset > maxSearchOffset) {
+			// every page costs a scan of all the hits before it, on every shard
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Search results end at hit " + maxSearchOffset
+					+ "; narrow the query instead");
+			return;
+		}
+		ArrayList<Book> books_list = bookDAO.searchBooks(query, (int) offset, pageSize + 1, null);
+		if (books_list.size() > pageSize) {
+			books_list.remove(pageSize);
+			request.setAttribute("nextPage", page + 1);
+		}
+
+		request.setAttribute("books", books_list);
+		request.setAttribute("pageSize", pageSize);
+		request.setAttribute("query", query);
+		setBookRows(request);
+		forward(request, response, "/BookList.jsp");
+	}
+
+	// Pre-renders the table rows for the books attribute so BookList.jsp only
+	// has to print them; unchanged books come out of bookRowCache
+	@SuppressWarnings("unchecked")
+	private void setBookRows(HttpServletRequest request) {
+		if (bookRowCache == null) {
+			return;
+		}
+		List<Book> books = (List<Book>) request.getAttribute("books");
+		request.setAttribute("bookRows", bookRowCache.render(books, request.getLocale()));
+	}
+
+	private static int intParameter(HttpServletRequest request, String name, int defaultValue) {
+		String value = request.getParameter(name);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
 	}
 
 	private void showNewForm(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
-		RequestDispatcher dispatcher = request.getRequestDispatcher("/BookForm.jsp");
-		dispatcher.forward(request, response);
+		forward(request, response, "/BookForm.jsp");
 	}
 
 	private void insertBook(HttpServletRequest request, HttpServletResponse response)
@@ -98,22 +530,148 @@ public class ControllerServlet extends HttpServlet {
 		String title = request.getParameter("booktitle");
 		String author = request.getParameter("bookauthor");
 		String priceString = request.getParameter("bookprice");
+		if (!hasTitleAndAuthor(title, author, response)) {
+			return;
+		}
 
 		Book newBook = new Book(title, author, Float.parseFloat(priceString));
 
-		bookDAO.insertBook(newBook);
+		if (!writeQueued(bookDAO.insertBook(newBook), response)) {
+			return;
+		}
+		rememberWrite(request);
+		response.sendRedirect("list");
+	}
+
+	// Admin edits: /edit fills BookForm in with the book, which posts to
+	// /update; BookAdmin deletes through a POST form
+	private void showEditForm(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		int id = Integer.parseInt(request.getParameter("id"));
+		Book book = bookDAO.getBook(id);
+		if (book == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "No book with id " + id);
+			return;
+		}
+		request.setAttribute("book", book);
+		forward(request, response, "/BookForm.jsp");
+	}
+
+	private void updateBook(HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		int id = Integer.parseInt(request.getParameter("id"));
+		String title = request.getParameter("booktitle");
+		String author = request.getParameter("bookauthor");
+		float price = Float.parseFloat(request.getParameter("bookprice"));
+		if (!hasTitleAndAuthor(title, author, response)) {
+			return;
+		}
+
+		Book book = new Book(id, title, author, price);
+		if (!writeQueued(bookDAO.updateBook(book), response)) {
+			return;
+		}
+		rememberWrite(request);
 		response.sendRedirect("list");
 	}
 
+	private void deleteBook(HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		int id = Integer.parseInt(request.getParameter("id"));
+		if (!writeQueued(bookDAO.deleteBook(id), response)) {
+			return;
+		}
+		rememberWrite(request);
+		response.sendRedirect("list");
+	}
+
+	// Bulk load: POST a CSV or JSON feed as the request body (not multipart).
+	// The body is parsed as it arrives and inserted in batched transactions.
+	private void importBooks(HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		String contentType = request.getContentType();
+		String format = request.getParameter("format");
+		if (format == null) {
+			format = contentType != null && contentType.contains("json") ? "json" : "csv";
+		}
+		if (request.getCharacterEncoding() == null) {
+			request.setCharacterEncoding("UTF-8");
+		}
+
+		BufferedReader reader = request.getReader();
+		BookImportReader books = "json".equals(format)
+				? BookImportReader.json(reader)
+				: BookImportReader.csv(reader);
+
+		int imported;
+		try {
+			imported = bookDAO.insertBooks(books, importChunkSize);
+		} catch (BookImportException e) {
+			// earlier chunks are committed, so say how far the import got
+			int status = e.isDatabaseFailure()
+					? HttpServletResponse.SC_INTERNAL_SERVER_ERROR
+					: HttpServletResponse.SC_BAD_REQUEST;
+			response.sendError(status, e.getMessage() + "; imported " + e.getImportedCount() + " books before it");
+			return;
+		}
+
+		response.setContentType("text/plain;charset=UTF-8");
+		response.getWriter().println("Imported " + imported + " books");
+	}
+
+	// /export?format=csv|ndjson streams the whole catalog a keyset page at a
+	// time, gzip-compressed when the client accepts it. No connection is held
+	// while a page is written, however slowly the client reads.
+	private void exportBooks(HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		String format = request.getParameter("format");
+		if (format == null) {
+			format = "csv";
+		}
+		if (!"csv".equals(format) && !"ndjson".equals(format)) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown export format " + format);
+			return;
+		}
+
+		response.setHeader("Vary", "Accept-Encoding");
+		OutputStream stream = response.getOutputStream();
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		if (acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip")) {
+			response.setHeader("Content-Encoding", "gzip");
+			stream = new GZIPOutputStream(stream, 8192);
+		}
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 8192);
+		BookExportWriter export = "ndjson".equals(format)
+				? BookExportWriter.ndjson(out)
+				: BookExportWriter.csv(out);
+		response.setContentType(export.getContentType());
+		response.setHeader("Content-Disposition", "attachment; filename=\"books." + export.getFileExtension() + "\"");
+
+		try {
+			export.begin();
+			bookDAO.forEachBook(export);
+			// also finishes the gzip trailer
+			out.close();
+		} catch (UncheckedIOException e) {
+			// the client went away mid-export
+		} catch (BookDAOException e) {
+			if (!response.isCommitted()) {
+				response.reset();
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Could not read the catalog");
+				return;
+			}
+			// Part of the export has been sent. Leave out the gzip trailer and
+			// the final flush and let the container abort the connection, so
+			// the client sees a broken download rather than a short one.
+			throw e;
+		}
+	}
+
 	/**
 	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse response)
 	 */
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		// TODO Auto-generated method stub
-		PrintWriter out = response.getWriter();
-		out.println("This is the doPost() method!");
 		doGet(request, response);
-
 	}
 
 }
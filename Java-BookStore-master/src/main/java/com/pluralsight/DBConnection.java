@@ -1,42 +1,115 @@
 package com.pluralsight;
 
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.sqlite.SQLiteConfig;
 
 public class DBConnection {
-  private Connection jdbcConnection;
+  private static final String DEFAULT_URL = "jdbc:sqlite:book_store.db";
+
+  // Registers the driver once per class loader rather than on every connect()
+  static {
+    try {
+      Class.forName("org.sqlite.JDBC");
+    } catch (ClassNotFoundException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final Properties settings;
+  private ConnectionPool connectionPool;
+  private ConnectionPool readConnectionPool;
 
   public DBConnection() {
+    this(new Properties());
+  }
+
+  public DBConnection(Properties settings) {
+    this.settings = settings;
     connect();
   }
 
-  public Connection getConnection() {
-    return jdbcConnection;
+  public ConnectionPool getConnectionPool() {
+    return connectionPool;
+  }
+
+  /**
+   * Pool of read-only connections for queries, or the main pool when
+   * db.readPool.maxSize is 0.
+   */
+  public ConnectionPool getReadConnectionPool() {
+    return readConnectionPool != null ? readConnectionPool : connectionPool;
   }
 
   public void connect()  {
     try {
-      Class.forName("org.sqlite.JDBC");
-      jdbcConnection = DriverManager.getConnection("jdbc:sqlite:book_store.db");
-      System.out.println("Opened database successfully");
+      String url = settings.getProperty("db.url", DEFAULT_URL);
+      SqliteTuning tuning = new SqliteTuning(settings);
+      connectionPool = new ConnectionPool(() -> {
+            Connection connection = DriverManager.getConnection(url);
+            tuning.apply(connection);
+            return connection;
+          },
+          intSetting("db.pool.minIdle", 1),
+          intSetting("db.pool.maxSize", 8),
+          intSetting("db.pool.maxWaitMillis", 5000),
+          intSetting("db.pool.idleTimeoutMillis", 300000),
+          intSetting("db.pool.validationTimeoutSeconds", 1),
+          intSetting("db.pool.statementCacheSize", 32));
+      System.out.println("Opened database successfully (" + tuning + ")");
 
       createTableIfNotExists();
+
+      // Opened after the schema exists so read-only connections never see an empty file
+      int readPoolSize = intSetting("db.readPool.maxSize", 4);
+      if (readPoolSize > 0) {
+        SQLiteConfig readOnly = new SQLiteConfig();
+        readOnly.setReadOnly(true);
+        Properties readOnlyProperties = readOnly.toProperties();
+        readConnectionPool = new ConnectionPool(() -> {
+              Connection connection = DriverManager.getConnection(url, readOnlyProperties);
+              tuning.applyReadOnly(connection);
+              return connection;
+            },
+            Math.min(intSetting("db.pool.minIdle", 1), readPoolSize),
+            readPoolSize,
+            intSetting("db.pool.maxWaitMillis", 5000),
+            intSetting("db.pool.idleTimeoutMillis", 300000),
+            intSetting("db.pool.validationTimeoutSeconds", 1),
+            intSetting("db.pool.statementCacheSize", 32));
+      }
     } catch ( Exception e ) {
      System.err.println( e.getClass().getName() + ": " + e.getMessage() );
      System.exit(0);
    }
  }
 
+ private int intSetting(String key, int defaultValue) {
+   String value = settings.getProperty(key);
+   return value == null ? defaultValue : Integer.parseInt(value.trim());
+ }
+
+ // One read of sqlite_master tells which parts of the schema are missing, so
+ // opening a database that has them all costs a single query
  private void createTableIfNotExists() {
-   try {
-       DatabaseMetaData meta = jdbcConnection.getMetaData();
-       ResultSet res = meta.getTables(null, null, null, new String[] {"TABLE"});
+   try (PooledConnection pooled = connectionPool.borrow()) {
+       Connection jdbcConnection = pooled.getConnection();
        Statement stmt = jdbcConnection.createStatement();
-       if (!res.next()) {
+       Set<String> tables = new HashSet<>();
+       ResultSet res = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table'");
+       while (res.next()) {
+           tables.add(res.getString(1));
+       }
+       res.close();
+       boolean newTable = !tables.contains("book");
+       if (newTable) {
        	// Create table
 
            String sql = "CREATE TABLE book " +
@@ -45,26 +118,73 @@ public class DBConnection {
                           " author TEXT NOT NULL, " +
                           " price REAL)";
            stmt.executeUpdate(sql);
+       }
 
-           sql = "INSERT INTO book (title, author, price) VALUES (\"1984\", \"George Orwell\", 1.00)";
-           stmt.executeUpdate(sql);
+       if (!tables.contains("book_fts")) {
+           createSearchIndex(stmt);
+       }
+       if (!tables.contains("book_order") || !tables.contains("book_order_item")) {
+           createOrderTables(stmt);
+       }
 
-           stmt.close();
+       // db.seed=false leaves a new table empty, as for all but one shard
+       if (newTable && Boolean.parseBoolean(settings.getProperty("db.seed", "true"))) {
+           String sql = "INSERT INTO book (title, author, price) VALUES (\"1984\", \"George Orwell\", 1.00)";
+           stmt.executeUpdate(sql);
        }
+       stmt.close();
     } catch ( Exception e ) {
        System.err.println( e.getClass().getName() + ": " + e.getMessage() );
        System.exit(0);
     }
  }
 
+ // Full-text index over title and author for /books/search. It is an FTS5
+ // external-content table: it stores only the index and reads the text back
+ // from book, and the triggers keep it in step with every insert, update and
+ // delete. A database created before the index existed is indexed once here.
+ private void createSearchIndex(Statement stmt) throws SQLException {
+   stmt.executeUpdate("CREATE VIRTUAL TABLE book_fts USING fts5(title, author," +
+                      " content='book', content_rowid='id', prefix='2 3')");
+   stmt.executeUpdate("CREATE TRIGGER book_fts_insert AFTER INSERT ON book BEGIN" +
+                      " INSERT INTO book_fts(rowid, title, author) VALUES (new.id, new.title, new.author);" +
+                      " END");
+   stmt.executeUpdate("CREATE TRIGGER book_fts_delete AFTER DELETE ON book BEGIN" +
+                      " INSERT INTO book_fts(book_fts, rowid, title, author) VALUES ('delete', old.id, old.title, old.author);" +
+                      " END");
+   stmt.executeUpdate("CREATE TRIGGER book_fts_update AFTER UPDATE ON book BEGIN" +
+                      " INSERT INTO book_fts(book_fts, rowid, title, author) VALUES ('delete', old.id, old.title, old.author);" +
+                      " INSERT INTO book_fts(rowid, title, author) VALUES (new.id, new.title, new.author);" +
+                      " END");
+   stmt.executeUpdate("INSERT INTO book_fts(book_fts) VALUES ('rebuild')");
+ }
+
+ // Orders placed through the cart, see OrderDAO. Items keep the title, author
+ // and price the customer was charged, so later catalog edits leave them alone.
+ private void createOrderTables(Statement stmt) throws SQLException {
+   stmt.executeUpdate("CREATE TABLE IF NOT EXISTS book_order " +
+                      "(id INTEGER PRIMARY KEY NOT NULL," +
+                      " placed INTEGER NOT NULL," +
+                      " total REAL NOT NULL)");
+   stmt.executeUpdate("CREATE TABLE IF NOT EXISTS book_order_item " +
+                      "(order_id INTEGER NOT NULL REFERENCES book_order(id)," +
+                      " book_id INTEGER NOT NULL," +
+                      " title TEXT NOT NULL," +
+                      " author TEXT NOT NULL," +
+                      " price REAL NOT NULL," +
+                      " quantity INTEGER NOT NULL," +
+                      " PRIMARY KEY (order_id, book_id))");
+ }
+
 
   public void disconnect() {
-    try {
-    	if (jdbcConnection != null && !jdbcConnection.isClosed()) {
-    	    jdbcConnection.close();
-    	}
-    } catch (SQLException e) {
-    	e.printStackTrace();
+    if (readConnectionPool != null) {
+      System.out.println("Closing read-only connections, " + readConnectionPool);
+      readConnectionPool.close();
+    }
+    if (connectionPool != null) {
+      System.out.println("Closing database, " + connectionPool);
+      connectionPool.close();
     }
   }
 }
@@ -0,0 +1,96 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes books as JSON straight onto a Writer, a character at a time, so a
+ * response never exists as one big String. Callers are expected to pass a
+ * buffered Writer.
+ */
+public class JsonBookWriter {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Writer out;
+
+	public JsonBookWriter(Writer out) {
+		this.out = out;
+	}
+
+	/** {"id":1,"title":"1984","author":"George Orwell","price":1.0} */
+	public void writeBook(Book book) throws IOException {
+		out.write("{\"id\":");
+		out.write(Integer.toString(book.getId()));
+		out.write(",\"title\":");
+		writeString(book.getTitle());
+		out.write(",\"author\":");
+		writeString(book.getAuthor());
+		out.write(",\"price\":");
+		writeNumber(book.getPrice());
+		out.write('}');
+	}
+
+	/** Writes books as the elements of an array, without the brackets. */
+	public void writeBooks(Iterable<Book> books) throws IOException {
+		boolean first = true;
+		for (Book book : books) {
+			if (!first) {
+				out.write(',');
+			}
+			writeBook(book);
+			first = false;
+		}
+	}
+
+	public void writeString(String value) throws IOException {
+		if (value == null) {
+			out.write("null");
+			return;
+		}
+		out.write('"');
+		int length = value.length();
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+				continue;
+			}
+			// flush the plain run before the character that needs escaping;
+			// U+2028/U+2029 are escaped so the output is also safe inside a script
+			out.write(value, start, i - start);
+			start = i + 1;
+			switch (c) {
+				case '"': out.write("\\\""); break;
+				case '\\': out.write("\\\\"); break;
+				case '\n': out.write("\\n"); break;
+				case '\r': out.write("\\r"); break;
+				case '\t': out.write("\\t"); break;
+				default:
+					out.write("\\u");
+					out.write(HEX[(c >> 12) & 0xf]);
+					out.write(HEX[(c >> 8) & 0xf]);
+					out.write(HEX[(c >> 4) & 0xf]);
+					out.write(HEX[c & 0xf]);
+					break;
+			}
+		}
+		out.write(value, start, length - start);
+		out.write('"');
+	}
+
+	public void writeNumber(float value) throws IOException {
+		if (Float.isNaN(value) || Float.isInfinite(value)) {
+			out.write("null");
+		} else {
+			out.write(Float.toString(value));
+		}
+	}
+
+	public void write(String raw) throws IOException {
+		out.write(raw);
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+}
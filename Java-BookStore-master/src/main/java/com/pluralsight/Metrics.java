@@ -0,0 +1,196 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the application's metrics, written out in the Prometheus text
+ * exposition format by MetricsServlet.
+ *
+ * Every metric has at most one label (a null labelName means none).
+ * Latencies are LatencyHistograms, exported as summaries in seconds;
+ * counters and gauges are read from a supplier at scrape time, so the code
+ * being measured only keeps its own LongAdders and getters. Look a histogram
+ * family up once and keep it; the per-label lookup on the hot path is a
+ * single ConcurrentHashMap get.
+ */
+public class Metrics {
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	// guarded by this; registration is rare, scrapes copy the values
+	private final Map<String, Family> families = new LinkedHashMap<>();
+
+	/** Summary of latencies, one LatencyHistogram per value of labelName. */
+	public synchronized Histograms histograms(String name, String help, String labelName) {
+		return register(new Histograms(name, help, labelName));
+	}
+
+	/** A monotonically increasing count, read from value at scrape time. */
+	public void counter(String name, String help, String labelName, String labelValue, DoubleSupplier value) {
+		values(name, help, "counter", labelName).register(labelValue, value);
+	}
+
+	/** A value that can go up and down, read at scrape time. */
+	public void gauge(String name, String help, String labelName, String labelValue, DoubleSupplier value) {
+		values(name, help, "gauge", labelName).register(labelValue, value);
+	}
+
+	/**
+	 * Publishes the pool's wait times, occupancy and statement cache counters,
+	 * labelled pool=&lt;poolName&gt;.
+	 */
+	public void registerPool(String poolName, ConnectionPool pool) {
+		histograms("bookstore_pool_wait_seconds", "Time spent waiting for a pooled connection", "pool")
+				.register(poolName, pool.getWaitHistogram());
+		gauge("bookstore_pool_active_connections", "Connections currently borrowed", "pool", poolName,
+				pool::getActiveCount);
+		gauge("bookstore_pool_idle_connections", "Connections open and waiting to be borrowed", "pool", poolName,
+				pool::getIdleCount);
+		gauge("bookstore_pool_max_connections", "Upper bound on open connections", "pool", poolName,
+				pool::getMaxSize);
+		counter("bookstore_pool_timeouts_total", "Borrows that gave up waiting", "pool", poolName,
+				pool::getTimeoutCount);
+		counter("bookstore_pool_created_total", "Connections opened", "pool", poolName,
+				pool::getCreatedCount);
+		counter("bookstore_statement_cache_hits_total", "Prepared statements reused", "pool", poolName,
+				pool::getStatementCacheHits);
+		counter("bookstore_statement_cache_misses_total", "Prepared statements compiled", "pool", poolName,
+				pool::getStatementCacheMisses);
+	}
+
+	public void write(Writer out) throws IOException {
+		List<Family> snapshot;
+		synchronized (this) {
+			snapshot = new ArrayList<>(families.values());
+		}
+		for (Family family : snapshot) {
+			out.write("# HELP " + family.name + " " + family.help + "\n");
+			out.write("# TYPE " + family.name + " " + family.type + "\n");
+			family.write(out);
+		}
+	}
+
+	private synchronized Values values(String name, String help, String type, String labelName) {
+		return register(new Values(name, help, type, labelName));
+	}
+
+	@SuppressWarnings("unchecked")
+	private <F extends Family> F register(F family) {
+		Family existing = families.get(family.name);
+		if (existing == null) {
+			families.put(family.name, family);
+			return family;
+		}
+		if (existing.getClass() != family.getClass() || !existing.type.equals(family.type)
+				|| !Objects.equals(existing.labelName, family.labelName)) {
+			throw new IllegalArgumentException("Metric " + family.name + " is already registered as "
+					+ existing.type + " with label " + existing.labelName);
+		}
+		return (F) existing;
+	}
+
+	private abstract static class Family {
+		final String name;
+		final String help;
+		final String type;
+		final String labelName;
+
+		Family(String name, String help, String type, String labelName) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+			this.labelName = labelName;
+		}
+
+		abstract void write(Writer out) throws IOException;
+
+		void writeSample(Writer out, String suffix, String labelValue, String extraLabel, double value)
+				throws IOException {
+			out.write(name);
+			out.write(suffix);
+			if (labelName != null || extraLabel != null) {
+				out.write('{');
+				if (labelName != null) {
+					out.write(labelName);
+					out.write("=\"");
+					out.write(escape(labelValue));
+					out.write('"');
+				}
+				if (extraLabel != null) {
+					out.write(labelName != null ? "," : "");
+					out.write(extraLabel);
+				}
+				out.write('}');
+			}
+			out.write(' ');
+			out.write(Double.toString(value));
+			out.write('\n');
+		}
+
+		private static String escape(String value) {
+			return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+		}
+	}
+
+	public static class Histograms extends Family {
+		private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+		Histograms(String name, String help, String labelName) {
+			super(name, help, "summary", labelName);
+		}
+
+		public LatencyHistogram get(String labelValue) {
+			LatencyHistogram histogram = histograms.get(labelValue);
+			if (histogram == null) {
+				histogram = histograms.computeIfAbsent(labelValue, value -> new LatencyHistogram());
+			}
+			return histogram;
+		}
+
+		/** Exports a histogram that someone else records into. */
+		public void register(String labelValue, LatencyHistogram histogram) {
+			histograms.put(labelValue, histogram);
+		}
+
+		@Override
+		void write(Writer out) throws IOException {
+			for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+				LatencyHistogram histogram = entry.getValue();
+				for (double quantile : QUANTILES) {
+					writeSample(out, "", entry.getKey(), "quantile=\"" + quantile + "\"",
+							histogram.getValueAtQuantile(quantile) / 1e9);
+				}
+				writeSample(out, "_sum", entry.getKey(), null, histogram.getSumNanos() / 1e9);
+				writeSample(out, "_count", entry.getKey(), null, histogram.getCount());
+			}
+		}
+	}
+
+	private static class Values extends Family {
+		private final ConcurrentHashMap<String, DoubleSupplier> values = new ConcurrentHashMap<>();
+
+		Values(String name, String help, String type, String labelName) {
+			super(name, help, type, labelName);
+		}
+
+		void register(String labelValue, DoubleSupplier value) {
+			values.put(labelValue == null ? "" : labelValue, value);
+		}
+
+		@Override
+		void write(Writer out) throws IOException {
+			for (Map.Entry<String, DoubleSupplier> entry : new TreeMap<>(values).entrySet()) {
+				writeSample(out, "", entry.getKey(), null, entry.getValue().getAsDouble());
+			}
+		}
+	}
+}
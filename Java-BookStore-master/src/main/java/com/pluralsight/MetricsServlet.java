@@ -0,0 +1,37 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the application's Metrics in the Prometheus text format, mapped to
+ * /metrics.
+ */
+public class MetricsServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	private Metrics metrics;
+
+	public void init() {
+		metrics = (Metrics) getServletContext().getAttribute(BookStoreListener.METRICS_ATTRIBUTE);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		response.setContentType(Metrics.CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-store");
+		try (Writer out = new BufferedWriter(
+				new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8), 8192)) {
+			metrics.write(out);
+		}
+	}
+}
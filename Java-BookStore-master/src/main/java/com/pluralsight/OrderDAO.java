@@ -0,0 +1,81 @@
+package com.pluralsight;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Writes the orders placed through the cart: a book_order row, and one
+ * book_order_item row per book with the title, author and price the customer
+ * was charged.
+ */
+public class OrderDAO {
+	private final ConnectionPool connectionPool;
+	private final Metrics.Histograms sqlTimers;
+
+	public OrderDAO(ConnectionPool connectionPool) {
+		this(connectionPool, new Metrics());
+	}
+
+	/** Records timings as bookstore_sql_seconds{query="placeOrder"}, next to BookDAO's. */
+	public OrderDAO(ConnectionPool connectionPool, Metrics metrics) {
+		this.connectionPool = connectionPool;
+		this.sqlTimers = metrics.histograms("bookstore_sql_seconds",
+				"BookDAO query time, excluding the wait for a connection", "query");
+	}
+
+	/**
+	 * Stores the order and its items as one transaction. Returns the new
+	 * order's id, or -1, with nothing stored, if the transaction failed.
+	 */
+	public long placeOrder(List<CartLine> lines) {
+		try (PooledConnection jdbcConnection = connectionPool.borrow()) {
+			long startNanos = System.nanoTime();
+			Connection connection = jdbcConnection.getConnection();
+			connection.setAutoCommit(false);
+			long orderId;
+			try {
+				PreparedStatement statement = jdbcConnection.prepareStatement(
+						"INSERT INTO book_order (placed, total) VALUES (?, ?)");
+				statement.setLong(1, System.currentTimeMillis());
+				statement.setDouble(2, CartLine.total(lines));
+				statement.executeUpdate();
+				jdbcConnection.closeStatement(statement);
+
+				statement = jdbcConnection.prepareStatement("SELECT last_insert_rowid()");
+				try (ResultSet resultSet = statement.executeQuery()) {
+					resultSet.next();
+					orderId = resultSet.getLong(1);
+				}
+				jdbcConnection.closeStatement(statement);
+
+				statement = jdbcConnection.prepareStatement("INSERT INTO book_order_item"
+						+ " (order_id, book_id, title, author, price, quantity) VALUES (?, ?, ?, ?, ?, ?)");
+				for (CartLine line : lines) {
+					Book book = line.getBook();
+					statement.setLong(1, orderId);
+					statement.setInt(2, book.getId());
+					statement.setString(3, book.getTitle());
+					statement.setString(4, book.getAuthor());
+					statement.setFloat(5, book.getPrice());
+					statement.setInt(6, line.getQuantity());
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				jdbcConnection.closeStatement(statement);
+
+				connection.commit();
+			} finally {
+				// nothing is stored unless the commit went through
+				jdbcConnection.endTransaction();
+			}
+			sqlTimers.get("placeOrder").recordSince(startNanos);
+			return orderId;
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,88 @@
+package com.pluralsight;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * A connection on loan from a {@link ConnectionPool}. Closing it hands the
+ * underlying JDBC connection back to the pool instead of closing it.
+ *
+ * Statements obtained through {@link #prepareStatement(String)} may come from
+ * the connection's statement cache; give them back with
+ * {@link #closeStatement(PreparedStatement)} rather than closing them.
+ */
+public class PooledConnection implements AutoCloseable {
+	private final ConnectionPool pool;
+	private final Connection connection;
+	private final StatementCache statementCache;
+	private volatile long lastUsedMillis;
+	private boolean borrowed;
+
+	PooledConnection(ConnectionPool pool, Connection connection, StatementCache statementCache) {
+		this.pool = pool;
+		this.connection = connection;
+		this.statementCache = statementCache;
+	}
+
+	public Connection getConnection() {
+		return connection;
+	}
+
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		if (statementCache == null) {
+			return connection.prepareStatement(sql);
+		}
+		return statementCache.prepare(sql);
+	}
+
+	public void closeStatement(PreparedStatement statement) throws SQLException {
+		if (statementCache == null) {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Ends a transaction begun with setAutoCommit(false): rolls back whatever
+	 * was not committed and puts the connection back into auto-commit mode.
+	 * Call it before closing; a pool over a caller's own connection
+	 * ({@link ConnectionPool#ofSingle(Connection)}) does not reset it on
+	 * return.
+	 */
+	public void endTransaction() {
+		try {
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	void clearStatements() {
+		if (statementCache != null) {
+			statementCache.clear();
+		}
+	}
+
+	long getLastUsedMillis() {
+		return lastUsedMillis;
+	}
+
+	void touch() {
+		lastUsedMillis = System.currentTimeMillis();
+	}
+
+	void markBorrowed() {
+		borrowed = true;
+	}
+
+	@Override
+	public void close() {
+		if (borrowed) {
+			borrowed = false;
+			pool.release(this);
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package com.pluralsight;
+
+import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Formats prices as currency, like &lt;fmt:formatNumber type="currency"/&gt;
+ * does for the same locale.
+ *
+ * NumberFormat instances are costly to build and not thread-safe, so every
+ * thread keeps one per locale it has formatted for and reuses it.
+ */
+public class PriceFormatter {
+	// The locale comes from Accept-Language, which is client supplied; beyond
+	// this many per thread prices are formatted without caching
+	private static final int MAX_LOCALES = 8;
+
+	private static final ThreadLocal<Map<Locale, NumberFormat>> FORMATS = ThreadLocal.withInitial(HashMap::new);
+
+	private PriceFormatter() {
+	}
+
+	public static String format(float price, Locale locale) {
+		Map<Locale, NumberFormat> formats = FORMATS.get();
+		NumberFormat format = formats.get(locale);
+		if (format == null) {
+			format = NumberFormat.getCurrencyInstance(locale);
+			if (formats.size() < MAX_LOCALES) {
+				formats.put(locale, format);
+			}
+		}
+		return format.format(price);
+	}
+}
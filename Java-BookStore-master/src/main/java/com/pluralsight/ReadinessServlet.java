@@ -0,0 +1,37 @@
+package com.pluralsight;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Readiness probe, mapped to /ready. Answers 503 while BookStoreWarmup is
+ * still running and 200 after it, so a load balancer sends traffic to a new
+ * instance only once it is warm.
+ */
+public class ReadinessServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	private BookStoreWarmup warmup;
+
+	public void init() {
+		warmup = (BookStoreWarmup) getServletContext().getAttribute(BookStoreListener.WARMUP_ATTRIBUTE);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		response.setContentType("text/plain;charset=UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+		if (warmup != null && !warmup.isDone()) {
+			response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			response.setHeader("Retry-After", "1");
+			response.getWriter().write("warming up\n");
+			return;
+		}
+		response.getWriter().write("ready\n");
+	}
+}
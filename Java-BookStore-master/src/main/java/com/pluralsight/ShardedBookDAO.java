@@ -0,0 +1,332 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Spreads the book table over several databases, each with its own
+ * connection pools, so that writes to different shards no longer queue for
+ * the same SQLite write lock.
+ *
+ * A book lives in shard floorMod(id, shard count). Ids come from one counter
+ * shared by all shards, starting after the highest id any of them holds, so
+ * consecutive inserts land in consecutive shards. Point reads and writes go
+ * to the owning shard. Listings ask every shard for a page and merge them in
+ * id order; searches merge by full-text rank. Shards are queried one after
+ * the other on the calling thread.
+ *
+ * insertBooks and writeBatch commit one transaction per shard, so a failure
+ * in one shard does not undo what the others committed. The ids writeBatch
+ * assigns are written back onto the inserted Books before the batch is
+ * split, and shards skip inserts whose id is taken, so retrying the same
+ * batch completes it without adding the committed rows again.
+ */
+public class ShardedBookDAO extends BookDAO {
+	private static final int MERGE_PAGE_SIZE = 500;
+
+	private final BookDAO[] shards;
+	private final AtomicInteger lastId = new AtomicInteger();
+
+	public ShardedBookDAO(BookDAO... shards) {
+		this.shards = shards.clone();
+		for (BookDAO shard : shards) {
+			lastId.accumulateAndGet(shard.getMaxId(), Math::max);
+		}
+	}
+
+	/**
+	 * The settings for shard i of shardCount: db.url comes from
+	 * db.shard.&lt;i&gt;.url, or else from db.url with "-&lt;i&gt;" inserted
+	 * before the file extension. Only the shard that owns id 1 gets the seed
+	 * book of a new database.
+	 */
+	public static Properties shardSettings(Properties settings, int shard, int shardCount) {
+		Properties shardSettings = new Properties();
+		shardSettings.putAll(settings);
+		String url = settings.getProperty("db.url", "jdbc:sqlite:book_store.db");
+		int dot = url.lastIndexOf('.');
+		String defaultUrl = dot > url.lastIndexOf('/') && dot > url.indexOf(':')
+				? url.substring(0, dot) + "-" + shard + url.substring(dot)
+				: url + "-" + shard;
+		shardSettings.setProperty("db.url", settings.getProperty("db.shard." + shard + ".url", defaultUrl));
+		shardSettings.setProperty("db.seed", Boolean.toString(shard == shardOf(1, shardCount)));
+		return shardSettings;
+	}
+
+	static int shardOf(int id, int shardCount) {
+		return Math.floorMod(id, shardCount);
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	@Override
+	public Book readBook(int id) {
+		return shard(id).readBook(id);
+	}
+
+	@Override
+	public Map<Integer, Book> getBooks(Collection<Integer> ids) {
+		List<List<Integer>> idsByShard = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			idsByShard.add(new ArrayList<>());
+		}
+		for (Integer id : ids) {
+			idsByShard.get(shardOf(id, shards.length)).add(id);
+		}
+		Map<Integer, Book> books = new HashMap<>();
+		for (int i = 0; i < shards.length; i++) {
+			if (!idsByShard.get(i).isEmpty()) {
+				books.putAll(shards[i].getBooks(idsByShard.get(i)));
+			}
+		}
+		return books;
+	}
+
+	@Override
+	public ArrayList<Book> listAllBooks() {
+		ArrayList<Book> books = new ArrayList<>();
+		try {
+			forEachBook(books::add);
+		} catch (BookDAOException e) {
+			e.printStackTrace();
+			return new ArrayList<>();
+		}
+		return books;
+	}
+
+	@Override
+	public ArrayList<Book> readBooks(int afterId, int limit) {
+		ArrayList<Book> books = new ArrayList<>(Math.max(Math.min(limit, MERGE_PAGE_SIZE), 0));
+		// ids are spread evenly, so each shard holds about limit / shards of the
+		// page; a shard that runs short is asked for more
+		Merge merge = new Merge(afterId, Math.min(limit, limit / shards.length + 16));
+		while (books.size() < limit) {
+			Book next = merge.next();
+			if (next == null) {
+				break;
+			}
+			books.add(next);
+		}
+		return books;
+	}
+
+	/** Streams the shards' cursors merged in id order, a page per shard at a time. */
+	@Override
+	public void forEachBook(Consumer<Book> consumer) {
+		Merge merge = new Merge(Integer.MIN_VALUE, MERGE_PAGE_SIZE);
+		for (Book book = merge.next(); book != null; book = merge.next()) {
+			consumer.accept(book);
+		}
+	}
+
+	// Each shard returns its best offset + limit hits; ranks come from each
+	// shard's own statistics, so the merged order is close to, not exactly,
+	// what a single database would give
+	@Override
+	public ArrayList<Book> searchBooks(String query, int offset, int limit, List<Double> ranks) {
+		// a negative LIMIT means no limit to SQLite, so the sum must not wrap
+		int wanted = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+		List<List<Book>> hits = new ArrayList<>(shards.length);
+		List<List<Double>> shardRanks = new ArrayList<>(shards.length);
+		for (BookDAO shard : shards) {
+			List<Double> hitRanks = new ArrayList<>();
+			hits.add(shard.searchBooks(query, 0, wanted, hitRanks));
+			shardRanks.add(hitRanks);
+		}
+
+		ArrayList<Book> books = new ArrayList<>(Math.min(limit, MERGE_PAGE_SIZE));
+		int[] positions = new int[shards.length];
+		for (int taken = 0; taken < wanted; taken++) {
+			int best = -1;
+			for (int i = 0; i < shards.length; i++) {
+				if (positions[i] < hits.get(i).size() && (best < 0
+						|| shardRanks.get(i).get(positions[i]) < shardRanks.get(best).get(positions[best]))) {
+					best = i;
+				}
+			}
+			if (best < 0) {
+				break;
+			}
+			int position = positions[best]++;
+			if (taken >= offset) {
+				books.add(hits.get(best).get(position));
+				if (ranks != null) {
+					ranks.add(shardRanks.get(best).get(position));
+				}
+			}
+		}
+		return books;
+	}
+
+	@Override
+	public boolean insertBook(Book book) {
+		return shard(assignId(book)).insertBook(book);
+	}
+
+	// Books are handed to each shard in chunks of chunkSize
+	@Override
+	public int insertBooks(Iterable<Book> books, int chunkSize) {
+		List<List<Book>> chunks = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			chunks.add(new ArrayList<>());
+		}
+		int inserted = 0;
+		try {
+			for (Book book : books) {
+				int shard = shardOf(assignId(book), shards.length);
+				List<Book> chunk = chunks.get(shard);
+				chunk.add(book);
+				if (chunk.size() == chunkSize) {
+					inserted += shards[shard].insertBooks(chunk, chunkSize);
+					chunk.clear();
+				}
+			}
+			for (int i = 0; i < shards.length; i++) {
+				if (!chunks.get(i).isEmpty()) {
+					inserted += shards[i].insertBooks(chunks.get(i), chunkSize);
+				}
+			}
+		} catch (BookImportException e) {
+			// a shard refused a chunk after committing part of it
+			throw new BookImportException(inserted + e.getImportedCount(), (Exception) e.getCause());
+		} catch (RuntimeException e) {
+			// chunks still buffered here were never committed
+			throw new BookImportException(inserted, e);
+		}
+		return inserted;
+	}
+
+	@Override
+	public boolean updateBook(Book book) {
+		return shard(book.getId()).updateBook(book);
+	}
+
+	@Override
+	public boolean deleteBook(int id) {
+		return shard(id).deleteBook(id);
+	}
+
+	@Override
+	public boolean writeBatch(Collection<Book> inserts, Collection<Book> updates, Collection<Integer> deletes) {
+		List<List<Book>> insertsByShard = new ArrayList<>(shards.length);
+		List<List<Book>> updatesByShard = new ArrayList<>(shards.length);
+		List<List<Integer>> deletesByShard = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			insertsByShard.add(new ArrayList<>());
+			updatesByShard.add(new ArrayList<>());
+			deletesByShard.add(new ArrayList<>());
+		}
+		for (Book book : inserts) {
+			insertsByShard.get(shardOf(assignId(book), shards.length)).add(book);
+		}
+		for (Book book : updates) {
+			updatesByShard.get(shardOf(book.getId(), shards.length)).add(book);
+		}
+		for (Integer id : deletes) {
+			deletesByShard.get(shardOf(id, shards.length)).add(id);
+		}
+
+		boolean committed = true;
+		for (int i = 0; i < shards.length; i++) {
+			if (!insertsByShard.get(i).isEmpty() || !updatesByShard.get(i).isEmpty()
+					|| !deletesByShard.get(i).isEmpty()) {
+				committed &= shards[i].writeBatch(insertsByShard.get(i), updatesByShard.get(i),
+						deletesByShard.get(i));
+			}
+		}
+		return committed;
+	}
+
+	// Every shard's version only grows, so their sum changes whenever any does
+	@Override
+	public long getCatalogVersion() {
+		long version = 0;
+		for (BookDAO shard : shards) {
+			version += shard.getCatalogVersion();
+		}
+		return version;
+	}
+
+	@Override
+	public long getLastModified() {
+		long lastModified = 0;
+		for (BookDAO shard : shards) {
+			lastModified = Math.max(lastModified, shard.getLastModified());
+		}
+		return lastModified;
+	}
+
+	// Every id handed out so far, committed or not
+	@Override
+	int getMaxId() {
+		return lastId.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ShardedBookDAO(shards=" + shards.length + ", lastId=" + lastId.get() + ")";
+	}
+
+	// Gives a book without an id the next free one, on the Book itself so that
+	// a retry of the same batch reuses it, and returns the book's id
+	private int assignId(Book book) {
+		if (book.getId() > 0) {
+			lastId.accumulateAndGet(book.getId(), Math::max);
+		} else {
+			book.setId(lastId.incrementAndGet());
+		}
+		return book.getId();
+	}
+
+	private BookDAO shard(int id) {
+		return shards[shardOf(id, shards.length)];
+	}
+
+	// K-way merge over keyset pages fetched from every shard; a shard that
+	// fails throws BookDAOException instead of looking exhausted
+	private class Merge {
+		private final int pageSize;
+		private final List<List<Book>> pages = new ArrayList<>(shards.length);
+		private final int[] positions = new int[shards.length];
+		private final boolean[] exhausted = new boolean[shards.length];
+
+		Merge(int afterId, int pageSize) {
+			this.pageSize = Math.max(pageSize, 1);
+			for (BookDAO shard : shards) {
+				pages.add(shard.readBooks(afterId, this.pageSize));
+			}
+		}
+
+		Book next() {
+			int best = -1;
+			for (int i = 0; i < shards.length; i++) {
+				if (positions[i] == pages.get(i).size() && !exhausted[i]) {
+					refill(i);
+				}
+				if (positions[i] < pages.get(i).size() && (best < 0
+						|| pages.get(i).get(positions[i]).getId() < pages.get(best).get(positions[best]).getId())) {
+					best = i;
+				}
+			}
+			return best < 0 ? null : pages.get(best).get(positions[best]++);
+		}
+
+		private void refill(int shard) {
+			List<Book> page = pages.get(shard);
+			if (page.size() < pageSize) {
+				exhausted[shard] = true;
+				return;
+			}
+			pages.set(shard, shards[shard].readBooks(page.get(page.size() - 1).getId(), pageSize));
+			positions[shard] = 0;
+		}
+	}
+}
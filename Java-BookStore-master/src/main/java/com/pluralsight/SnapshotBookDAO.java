@@ -0,0 +1,228 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Serves reads from a CatalogSnapshot of the delegate's catalog instead of
+ * the database.
+ *
+ * Writes go to the delegate and then schedule a rebuild on a background
+ * thread; the new snapshot replaces the old one in a single volatile write.
+ * Until it does, the snapshot's version no longer matches the delegate's
+ * catalog version and reads fall through to the delegate, so a client always
+ * sees its own writes. Bursts of writes share one rebuild.
+ *
+ * A rebuild reads the whole catalog, so this pays off only when writes are
+ * rare; with writes arriving faster than rebuilds finish, nearly every read
+ * is stale and the rebuilds are pure overhead.
+ */
+public class SnapshotBookDAO extends BookDAO {
+	private final BookDAO delegate;
+	private final ExecutorService rebuilder;
+	private final AtomicBoolean rebuildPending = new AtomicBoolean();
+	private volatile CatalogSnapshot snapshot;
+
+	private final LongAdder snapshotReads = new LongAdder();
+	private final LongAdder staleReads = new LongAdder();
+	private final LongAdder rebuilds = new LongAdder();
+
+	public SnapshotBookDAO(BookDAO delegate) {
+		this.delegate = delegate;
+		this.rebuilder = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "bookstore-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.snapshot = CatalogSnapshot.load(delegate);
+		rebuilds.increment();
+	}
+
+	@Override
+	public Book readBook(int id) {
+		CatalogSnapshot current = current();
+		if (current == null) {
+			return delegate.readBook(id);
+		}
+		int index = current.indexOf(id);
+		return index < 0 ? null : current.getBook(index);
+	}
+
+	@Override
+	public Map<Integer, Book> getBooks(Collection<Integer> ids) {
+		CatalogSnapshot current = current();
+		if (current == null) {
+			return delegate.getBooks(ids);
+		}
+		Map<Integer, Book> books = new HashMap<>();
+		for (Integer id : ids) {
+			int index = current.indexOf(id);
+			if (index >= 0 && !books.containsKey(id)) {
+				books.put(id, current.getBook(index));
+			}
+		}
+		return books;
+	}
+
+	@Override
+	public ArrayList<Book> listAllBooks() {
+		CatalogSnapshot current = current();
+		if (current == null) {
+			return delegate.listAllBooks();
+		}
+		return current.listBooks(Integer.MIN_VALUE, current.size());
+	}
+
+	@Override
+	public ArrayList<Book> readBooks(int afterId, int limit) {
+		CatalogSnapshot current = current();
+		if (current == null) {
+			return delegate.readBooks(afterId, limit);
+		}
+		return current.listBooks(afterId, limit);
+	}
+
+	@Override
+	public void forEachBook(Consumer<Book> consumer) {
+		CatalogSnapshot current = current();
+		if (current == null) {
+			delegate.forEachBook(consumer);
+			return;
+		}
+		for (int i = 0; i < current.size(); i++) {
+			consumer.accept(current.getBook(i));
+		}
+	}
+
+	@Override
+	public ArrayList<Book> searchBooks(String query, int offset, int limit, List<Double> ranks) {
+		return delegate.searchBooks(query, offset, limit, ranks);
+	}
+
+	@Override
+	public boolean insertBook(Book book) {
+		boolean rowInserted = delegate.insertBook(book);
+		scheduleRebuild();
+		return rowInserted;
+	}
+
+	@Override
+	public int insertBooks(Iterable<Book> books, int chunkSize) {
+		try {
+			return delegate.insertBooks(books, chunkSize);
+		} finally {
+			scheduleRebuild();
+		}
+	}
+
+	@Override
+	public boolean updateBook(Book book) {
+		boolean rowUpdated = delegate.updateBook(book);
+		scheduleRebuild();
+		return rowUpdated;
+	}
+
+	@Override
+	public boolean deleteBook(int id) {
+		boolean rowDeleted = delegate.deleteBook(id);
+		scheduleRebuild();
+		return rowDeleted;
+	}
+
+	@Override
+	public boolean writeBatch(Collection<Book> inserts, Collection<Book> updates, Collection<Integer> deletes) {
+		boolean committed = delegate.writeBatch(inserts, updates, deletes);
+		scheduleRebuild();
+		return committed;
+	}
+
+	@Override
+	public long getCatalogVersion() {
+		return delegate.getCatalogVersion();
+	}
+
+	@Override
+	public long getLastModified() {
+		return delegate.getLastModified();
+	}
+
+	@Override
+	int getMaxId() {
+		return delegate.getMaxId();
+	}
+
+	/** The snapshot last built, which may be behind the catalog. */
+	public CatalogSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public long getSnapshotReadCount() {
+		return snapshotReads.sum();
+	}
+
+	public long getStaleReadCount() {
+		return staleReads.sum();
+	}
+
+	public long getRebuildCount() {
+		return rebuilds.sum();
+	}
+
+	/** Stops the rebuild thread; reads keep working from the last snapshot. */
+	public void close() {
+		rebuilder.shutdownNow();
+		try {
+			rebuilder.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SnapshotBookDAO(" + snapshot + ", snapshotReads=" + getSnapshotReadCount()
+				+ ", staleReads=" + getStaleReadCount() + ", rebuilds=" + getRebuildCount() + ")";
+	}
+
+	// The snapshot if it is up to date, otherwise null after asking for a new one
+	private CatalogSnapshot current() {
+		CatalogSnapshot current = snapshot;
+		if (current.getVersion() == delegate.getCatalogVersion()) {
+			snapshotReads.increment();
+			return current;
+		}
+		staleReads.increment();
+		scheduleRebuild();
+		return null;
+	}
+
+	private void scheduleRebuild() {
+		if (!rebuildPending.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			rebuilder.execute(() -> {
+				// cleared first so a write landing during the load schedules another pass
+				rebuildPending.set(false);
+				try {
+					snapshot = CatalogSnapshot.load(delegate);
+					rebuilds.increment();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// closed; reads fall through to the delegate from now on
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.pluralsight;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * PRAGMA settings applied to every SQLite connection when it is opened.
+ *
+ * The defaults favour concurrent readers: WAL lets list pages keep reading
+ * while an import is writing, and synchronous=NORMAL is durable across
+ * application crashes under WAL while avoiding an fsync per commit. Each
+ * value can be overridden with a db.sqlite.* setting; an empty value leaves
+ * SQLite's own default in place.
+ */
+public class SqliteTuning {
+  private final String journalMode;
+  private final String synchronous;
+  private final String cacheSize;
+  private final String mmapSize;
+  private final String tempStore;
+  private final String busyTimeout;
+
+  public SqliteTuning(Properties settings) {
+    journalMode = settings.getProperty("db.sqlite.journalMode", "WAL");
+    synchronous = settings.getProperty("db.sqlite.synchronous", "NORMAL");
+    // negative cache_size is in KiB rather than pages
+    cacheSize = settings.getProperty("db.sqlite.cacheSize", "-20000");
+    mmapSize = settings.getProperty("db.sqlite.mmapSize", "268435456");
+    tempStore = settings.getProperty("db.sqlite.tempStore", "MEMORY");
+    busyTimeout = settings.getProperty("db.sqlite.busyTimeout", "5000");
+  }
+
+  /** Tunes a connection that will write. */
+  public void apply(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      pragma(statement, "busy_timeout", busyTimeout);
+      // journal_mode is stored in the database file, so only writers set it
+      pragma(statement, "journal_mode", journalMode);
+      pragma(statement, "synchronous", synchronous);
+      applyCommon(statement);
+    }
+  }
+
+  /** Tunes a connection opened read-only. */
+  public void applyReadOnly(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      pragma(statement, "busy_timeout", busyTimeout);
+      pragma(statement, "query_only", "1");
+      applyCommon(statement);
+    }
+  }
+
+  private void applyCommon(Statement statement) throws SQLException {
+    pragma(statement, "cache_size", cacheSize);
+    pragma(statement, "mmap_size", mmapSize);
+    pragma(statement, "temp_store", tempStore);
+  }
+
+  private static void pragma(Statement statement, String name, String value) throws SQLException {
+    if (value == null || value.trim().isEmpty()) {
+      return;
+    }
+    if (!value.trim().matches("[A-Za-z0-9_-]+")) {
+      throw new SQLException("Invalid value for PRAGMA " + name + ": " + value);
+    }
+    // Some pragmas (journal_mode, mmap_size) report their new value as a row
+    statement.execute("PRAGMA " + name + " = " + value.trim());
+  }
+
+  @Override
+  public String toString() {
+    return "journal_mode=" + journalMode + ", synchronous=" + synchronous
+        + ", cache_size=" + cacheSize + ", mmap_size=" + mmapSize
+        + ", temp_store=" + tempStore + ", busy_timeout=" + busyTimeout;
+  }
+}
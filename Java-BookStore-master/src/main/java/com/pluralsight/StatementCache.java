@@ -0,0 +1,79 @@
+package com.pluralsight;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of prepared statements for one connection, keyed by SQL text.
+ *
+ * A connection is only used by the thread that borrowed it, so the cache is
+ * not synchronized. The hit/miss/eviction counters are shared with the owning
+ * pool so they can be reported across all connections.
+ */
+class StatementCache {
+	private final Connection connection;
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+
+	StatementCache(Connection connection, final int maxSize,
+			LongAdder hits, LongAdder misses, LongAdder evictions) {
+		this.connection = connection;
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() <= maxSize) {
+					return false;
+				}
+				StatementCache.this.evictions.increment();
+				closeQuietly(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement statement = statements.get(sql);
+		if (statement != null && !statement.isClosed()) {
+			hits.increment();
+			statement.clearParameters();
+			// a caller that failed between addBatch and executeBatch leaves
+			// its rows behind; they must not run with the next caller's
+			statement.clearBatch();
+			return statement;
+		}
+		misses.increment();
+		statement = connection.prepareStatement(sql);
+		statements.put(sql, statement);
+		return statement;
+	}
+
+	int size() {
+		return statements.size();
+	}
+
+	void clear() {
+		for (PreparedStatement statement : statements.values()) {
+			closeQuietly(statement);
+		}
+		statements.clear();
+	}
+
+	private static void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,621 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Queues insertBook, updateBook and deleteBook instead of running them, and
+ * has a single writer thread apply the queue to the delegate in grouped
+ * transactions.
+ *
+ * Pending mutations are coalesced per book id: a later update replaces an
+ * earlier one, and a delete drops the updates before it and swallows the
+ * ones after it, just as running them in order would. Every flushIntervalMillis
+ * the writer takes everything queued so far and hands it to writeBatch as one
+ * transaction. The queue holds at most capacity mutations; submitters wait up
+ * to maxWaitMillis for room and are refused (false) after that.
+ *
+ * An insert is given its id when it is queued, from a counter that starts
+ * after the delegate's highest id; bulk imports and writeBatch draw from the
+ * same counter. writeBatch skips an insert whose id is already taken, so a
+ * batch that is retried after part of it committed, or replayed after it
+ * committed, does not add its rows twice.
+ *
+ * With a journal, each mutation is appended to it, id included, before it is
+ * accepted, and segments whose flush never committed are replayed when the
+ * DAO is created. A crash after a flush commits but before its segment is
+ * deleted replays that segment again, which changes nothing.
+ *
+ * A book without a title or an author is refused up front, as the table
+ * would refuse it at flush time. A batch that still fails after
+ * MAX_FLUSH_ATTEMPTS is written one mutation at a time instead; a mutation
+ * that fails on its own is dead-lettered, to the journal's .dead file when
+ * there is a journal, so that it cannot hold up the ones queued behind it.
+ *
+ * Reads go straight to the delegate, so they see a write once it has been
+ * flushed. Callers that must see their own writes take getSubmittedSequence()
+ * after writing and pass it to awaitFlushed() before reading.
+ */
+public class WriteBehindBookDAO extends BookDAO {
+	static final int MAX_FLUSH_ATTEMPTS = 5;
+	static final int MAX_ROW_ATTEMPTS = 2;
+
+	private final BookDAO delegate;
+	private final int capacity;
+	private final long flushIntervalMillis;
+	private final long maxWaitMillis;
+	private final WriteBehindJournal journal;
+	private final Thread writer;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Condition flushed = lock.newCondition();
+	// guarded by lock
+	private Batch pending = new Batch();
+	private int lastId;
+	private boolean closed;
+	private volatile long submittedSequence;
+	private volatile long flushedSequence;
+
+	private final LongAdder submitted = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder flushes = new LongAdder();
+	private final LongAdder failedFlushes = new LongAdder();
+	private final LongAdder deadLettered = new LongAdder();
+
+	/**
+	 * @param journalPath base name of the journal segments, or null to keep
+	 *        the queue in memory only
+	 * @param fsync force every journal append to disk before accepting it
+	 */
+	public WriteBehindBookDAO(BookDAO delegate, int capacity, long flushIntervalMillis, long maxWaitMillis,
+			Path journalPath, boolean fsync) {
+		this.delegate = delegate;
+		this.capacity = capacity;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.maxWaitMillis = maxWaitMillis;
+		this.journal = journalPath != null ? new WriteBehindJournal(journalPath, fsync) : null;
+		if (journal != null) {
+			replayJournal();
+		}
+		lastId = delegate.getMaxId();
+		writer = new Thread(this::writeLoop, "bookstore-write-behind");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the book has no title or author
+	 */
+	@Override
+	public boolean insertBook(Book book) {
+		checkStorable(book);
+		lock.lock();
+		try {
+			if (!awaitRoom()) {
+				return false;
+			}
+			Book copy = new Book(++lastId, book.getTitle(), book.getAuthor(), book.getPrice());
+			if (journal != null) {
+				journal.appendInsert(copy);
+			}
+			accepted(pending.insert(copy));
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the book has no title or author
+	 */
+	@Override
+	public boolean updateBook(Book book) {
+		checkStorable(book);
+		Book copy = new Book(book.getId(), book.getTitle(), book.getAuthor(), book.getPrice());
+		lock.lock();
+		try {
+			if (!awaitRoom()) {
+				return false;
+			}
+			if (journal != null) {
+				journal.appendUpdate(copy);
+			}
+			accepted(pending.update(copy));
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean deleteBook(int id) {
+		lock.lock();
+		try {
+			if (!awaitRoom()) {
+				return false;
+			}
+			if (journal != null) {
+				journal.appendDelete(id);
+			}
+			accepted(pending.delete(id));
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// Bulk imports only add rows, so they cannot conflict with queued
+	// mutations, as long as they do not take an id a queued insert holds
+	@Override
+	public int insertBooks(Iterable<Book> books, int chunkSize) {
+		return delegate.insertBooks(() -> new Iterator<Book>() {
+			private final Iterator<Book> iterator = books.iterator();
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Book next() {
+				Book book = iterator.next();
+				return new Book(assignId(book), book.getTitle(), book.getAuthor(), book.getPrice());
+			}
+		}, chunkSize);
+	}
+
+	// Inserts without an id are given one, written back onto the Book, so a
+	// caller retrying the same collection retries the same ids
+	@Override
+	public boolean writeBatch(Collection<Book> inserts, Collection<Book> updates, Collection<Integer> deletes) {
+		for (Book book : inserts) {
+			book.setId(assignId(book));
+		}
+		return delegate.writeBatch(inserts, updates, deletes);
+	}
+
+	@Override
+	public Book readBook(int id) {
+		return delegate.readBook(id);
+	}
+
+	@Override
+	public Map<Integer, Book> getBooks(Collection<Integer> ids) {
+		return delegate.getBooks(ids);
+	}
+
+	@Override
+	public ArrayList<Book> listAllBooks() {
+		return delegate.listAllBooks();
+	}
+
+	@Override
+	public ArrayList<Book> readBooks(int afterId, int limit) {
+		return delegate.readBooks(afterId, limit);
+	}
+
+	@Override
+	public void forEachBook(Consumer<Book> consumer) {
+		delegate.forEachBook(consumer);
+	}
+
+	@Override
+	public ArrayList<Book> searchBooks(String query, int offset, int limit, List<Double> ranks) {
+		return delegate.searchBooks(query, offset, limit, ranks);
+	}
+
+	@Override
+	public long getCatalogVersion() {
+		return delegate.getCatalogVersion();
+	}
+
+	// Includes the ids of inserts still queued
+	@Override
+	int getMaxId() {
+		lock.lock();
+		try {
+			return lastId;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getLastModified() {
+		return delegate.getLastModified();
+	}
+
+	/** Sequence number of the last accepted mutation. */
+	public long getSubmittedSequence() {
+		return submittedSequence;
+	}
+
+	/** Sequence number of the last mutation committed to the delegate. */
+	public long getFlushedSequence() {
+		return flushedSequence;
+	}
+
+	/**
+	 * Waits until every mutation up to sequence has been committed. Returns
+	 * false if that did not happen within timeoutMillis.
+	 */
+	public boolean awaitFlushed(long sequence, long timeoutMillis) {
+		if (flushedSequence >= sequence) {
+			return true;
+		}
+		lock.lock();
+		try {
+			long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+			while (flushedSequence < sequence) {
+				if (remaining <= 0) {
+					return false;
+				}
+				remaining = flushed.awaitNanos(remaining);
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getPendingCount() {
+		lock.lock();
+		try {
+			return pending.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getSubmittedCount() {
+		return submitted.sum();
+	}
+
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	public long getFlushCount() {
+		return flushes.sum();
+	}
+
+	public long getFailedFlushCount() {
+		return failedFlushes.sum();
+	}
+
+	public long getDeadLetterCount() {
+		return deadLettered.sum();
+	}
+
+	/**
+	 * Stops accepting mutations, waits for the writer to flush what is queued
+	 * and closes the journal.
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "WriteBehindBookDAO(pending=" + getPendingCount() + ", submitted=" + getSubmittedCount()
+				+ ", coalesced=" + getCoalescedCount() + ", rejected=" + getRejectedCount()
+				+ ", flushes=" + getFlushCount() + ", failedFlushes=" + getFailedFlushCount()
+				+ ", deadLettered=" + getDeadLetterCount() + ")";
+	}
+
+	// title and author are NOT NULL; queueing a book without them would fail
+	// every flush it is part of
+	private static void checkStorable(Book book) {
+		if (book.getTitle() == null || book.getAuthor() == null) {
+			throw new IllegalArgumentException("A book needs a title and an author: " + book);
+		}
+	}
+
+	// The book's own id if it has one, otherwise the next free one
+	private int assignId(Book book) {
+		lock.lock();
+		try {
+			if (book.getId() > 0) {
+				lastId = Math.max(lastId, book.getId());
+				return book.getId();
+			}
+			return ++lastId;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// Called with the lock held
+	private boolean awaitRoom() {
+		long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+		try {
+			while (!closed && pending.size() >= capacity) {
+				if (remaining <= 0) {
+					break;
+				}
+				remaining = notFull.awaitNanos(remaining);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (closed || pending.size() >= capacity) {
+			rejected.increment();
+			return false;
+		}
+		return true;
+	}
+
+	// Called with the lock held
+	private void accepted(boolean merged) {
+		submittedSequence++;
+		submitted.increment();
+		if (merged) {
+			coalesced.increment();
+		}
+		notEmpty.signal();
+	}
+
+	private void writeLoop() {
+		while (true) {
+			lock.lock();
+			try {
+				while (pending.isEmpty() && !closed) {
+					notEmpty.awaitUninterruptibly();
+				}
+				if (pending.isEmpty()) {
+					return;
+				}
+				// let a burst of submissions gather into one transaction; close()
+				// cuts the wait short
+				long remaining = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+				while (!closed && remaining > 0) {
+					remaining = notEmpty.awaitNanos(remaining);
+				}
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+
+			Batch batch;
+			long sequence;
+			Path segment = null;
+			lock.lock();
+			try {
+				if (journal != null) {
+					segment = journal.rotate();
+				}
+				batch = pending;
+				pending = new Batch();
+				sequence = submittedSequence;
+				notFull.signalAll();
+			} catch (IOException e) {
+				e.printStackTrace();
+				continue;
+			} finally {
+				lock.unlock();
+			}
+
+			if (!flush(batch)) {
+				// the segment stays behind and is replayed on the next start
+				return;
+			}
+			if (segment != null) {
+				deleteSegment(segment);
+			}
+			lock.lock();
+			try {
+				flushedSequence = sequence;
+				flushed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	// Retries a failed transaction up to MAX_FLUSH_ATTEMPTS times, then splits
+	// it up. Returns false only if the DAO was closed or interrupted first.
+	private boolean flush(Batch batch) {
+		long backoffMillis = 100;
+		for (int attempt = 1; !tryWrite(batch); attempt++) {
+			failedFlushes.increment();
+			if (closed) {
+				return false;
+			}
+			if (attempt == MAX_FLUSH_ATTEMPTS) {
+				return flushEach(batch);
+			}
+			if (!sleep(backoffMillis)) {
+				return false;
+			}
+			backoffMillis = Math.min(backoffMillis * 2, 5000);
+		}
+		flushes.increment();
+		return true;
+	}
+
+	// Writes the mutations one transaction each, in the order writeBatch
+	// applies them, and dead-letters those that keep failing
+	private boolean flushEach(Batch batch) {
+		for (Book book : batch.inserts) {
+			Batch single = new Batch();
+			single.insert(book);
+			if (!flushSingle(single, WriteBehindJournal.insertLine(book))) {
+				return false;
+			}
+		}
+		for (Book book : batch.updates.values()) {
+			Batch single = new Batch();
+			single.update(book);
+			if (!flushSingle(single, WriteBehindJournal.updateLine(book))) {
+				return false;
+			}
+		}
+		for (int id : batch.deletes) {
+			Batch single = new Batch();
+			single.delete(id);
+			if (!flushSingle(single, WriteBehindJournal.deleteLine(id))) {
+				return false;
+			}
+		}
+		flushes.increment();
+		return true;
+	}
+
+	private boolean flushSingle(Batch single, String line) {
+		for (int attempt = 1; attempt <= MAX_ROW_ATTEMPTS; attempt++) {
+			if (tryWrite(single)) {
+				return true;
+			}
+			if (closed || !sleep(100)) {
+				return false;
+			}
+		}
+		deadLetter(line);
+		return true;
+	}
+
+	private void deadLetter(String line) {
+		deadLettered.increment();
+		System.err.println("Dead-lettered write-behind mutation " + line.replace('\t', ' '));
+		if (journal != null) {
+			try {
+				journal.appendDeadLetter(line);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static boolean sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+			return true;
+		} catch (InterruptedException e) {
+			return false;
+		}
+	}
+
+	// An unchecked exception from the delegate counts as a failed transaction;
+	// letting it through would end the writer thread with the batch unwritten
+	private boolean tryWrite(Batch batch) {
+		try {
+			return delegate.writeBatch(batch.inserts, batch.updates.values(), batch.deletes);
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private void replayJournal() {
+		try {
+			for (Path segment : journal.existingSegments()) {
+				Batch batch = new Batch();
+				WriteBehindJournal.replay(segment, batch);
+				if (!batch.isEmpty()) {
+					if (!flush(batch)) {
+						throw new IllegalStateException("Could not replay write-behind journal " + segment);
+					}
+					System.out.println("Replayed " + batch.size() + " queued writes from " + segment);
+				}
+				deleteSegment(segment);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read write-behind journal", e);
+		}
+	}
+
+	private static void deleteSegment(Path segment) {
+		try {
+			Files.deleteIfExists(segment);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** Mutations waiting for the same flush, coalesced per book id. */
+	static class Batch {
+		final List<Book> inserts = new ArrayList<>();
+		final Map<Integer, Book> updates = new LinkedHashMap<>();
+		final Set<Integer> deletes = new LinkedHashSet<>();
+
+		// Each returns true when the mutation was merged into one already queued
+
+		boolean insert(Book book) {
+			inserts.add(book);
+			return false;
+		}
+
+		boolean update(Book book) {
+			if (deletes.contains(book.getId())) {
+				return true;
+			}
+			return updates.put(book.getId(), book) != null;
+		}
+
+		boolean delete(int id) {
+			boolean merged = updates.remove(id) != null;
+			return !deletes.add(id) || merged;
+		}
+
+		int size() {
+			return inserts.size() + updates.size() + deletes.size();
+		}
+
+		boolean isEmpty() {
+			return size() == 0;
+		}
+	}
+}
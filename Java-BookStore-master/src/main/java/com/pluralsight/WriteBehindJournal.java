@@ -0,0 +1,247 @@
+package com.pluralsight;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Append-only log of the mutations queued by WriteBehindBookDAO.
+ *
+ * The journal is a series of segment files, &lt;path&gt;.1, &lt;path&gt;.2 and so
+ * on. Mutations are appended to the current segment before they are
+ * acknowledged; each flush rotates to a new segment and deletes the old one
+ * once its transaction has committed. Whatever segments are left at startup
+ * belong to flushes that never committed, and are replayed.
+ *
+ * One line per mutation, tab separated, with \\, \t, \n and \r escaped and
+ * a null field written as \N:
+ *   I id title author price
+ *   U id title author price
+ *   D id
+ * Inserts carry the id WriteBehindBookDAO gave them, so replaying one that
+ * already committed finds its id taken and adds nothing. An insert line
+ * without an id, as written before inserts had one, is replayed as a new
+ * row. A last line without its newline, torn by a crash mid-append, is
+ * skipped on replay.
+ *
+ * Mutations the database refused are appended to &lt;path&gt;.dead in the same
+ * format, which is never replayed.
+ */
+class WriteBehindJournal implements Closeable {
+	// a literal backslash is written as \\, so this cannot be an escaped string
+	private static final String NULL_FIELD = "\\N";
+
+	private final Path path;
+	private final boolean fsync;
+	private long generation;
+	private FileChannel segment;
+
+	/**
+	 * With fsync every append is forced to disk before it returns; without it
+	 * appends survive a crash of the JVM but not of the machine.
+	 */
+	WriteBehindJournal(Path path, boolean fsync) {
+		this.path = path.toAbsolutePath();
+		this.fsync = fsync;
+	}
+
+	/** Segments left over from a previous run, oldest first. */
+	List<Path> existingSegments() throws IOException {
+		List<Path> segments = new ArrayList<>();
+		Path directory = path.getParent();
+		if (!Files.isDirectory(directory)) {
+			return segments;
+		}
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+				path.getFileName() + ".*")) {
+			for (Path candidate : stream) {
+				if (generationOf(candidate) > 0) {
+					segments.add(candidate);
+				}
+			}
+		}
+		segments.sort(Comparator.comparingLong(this::generationOf));
+		if (!segments.isEmpty()) {
+			generation = generationOf(segments.get(segments.size() - 1));
+		}
+		return segments;
+	}
+
+	/** Feeds a segment's mutations into the batch, in the order they were written. */
+	static void replay(Path segment, WriteBehindBookDAO.Batch batch) throws IOException {
+		byte[] bytes = Files.readAllBytes(segment);
+		int end = bytes.length;
+		// drop a last line that never got its newline
+		while (end > 0 && bytes[end - 1] != '\n') {
+			end--;
+		}
+		String text = new String(bytes, 0, end, StandardCharsets.UTF_8);
+		for (String line : text.split("\n")) {
+			String[] fields = line.split("\t", -1);
+			try {
+				switch (fields[0]) {
+					case "I":
+						if (fields.length == 4) {
+							batch.insert(new Book(unescape(fields[1]), unescape(fields[2]),
+									Float.parseFloat(fields[3])));
+						} else {
+							batch.insert(new Book(Integer.parseInt(fields[1]), unescape(fields[2]),
+									unescape(fields[3]), Float.parseFloat(fields[4])));
+						}
+						break;
+					case "U":
+						batch.update(new Book(Integer.parseInt(fields[1]), unescape(fields[2]),
+								unescape(fields[3]), Float.parseFloat(fields[4])));
+						break;
+					case "D":
+						batch.delete(Integer.parseInt(fields[1]));
+						break;
+					default:
+						break;
+				}
+			} catch (RuntimeException e) {
+				// not a mutation we can read; skip it
+			}
+		}
+	}
+
+	void appendInsert(Book book) throws IOException {
+		append(insertLine(book));
+	}
+
+	void appendUpdate(Book book) throws IOException {
+		append(updateLine(book));
+	}
+
+	void appendDelete(int id) throws IOException {
+		append(deleteLine(id));
+	}
+
+	/** Sets a refused mutation, one of the *Line formats, aside in the dead-letter file. */
+	void appendDeadLetter(String line) throws IOException {
+		Path deadLetters = path.resolveSibling(path.getFileName() + ".dead");
+		try (FileChannel channel = FileChannel.open(deadLetters, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			write(channel, line);
+		}
+	}
+
+	static String insertLine(Book book) {
+		return "I\t" + book.getId() + "\t" + escape(book.getTitle()) + "\t" + escape(book.getAuthor())
+				+ "\t" + book.getPrice();
+	}
+
+	static String updateLine(Book book) {
+		return "U\t" + book.getId() + "\t" + escape(book.getTitle()) + "\t" + escape(book.getAuthor())
+				+ "\t" + book.getPrice();
+	}
+
+	static String deleteLine(int id) {
+		return "D\t" + id;
+	}
+
+	/**
+	 * Starts a new segment for the mutations that follow and returns the one
+	 * just finished, or null if nothing was written to it.
+	 */
+	Path rotate() throws IOException {
+		if (segment == null) {
+			return null;
+		}
+		segment.close();
+		segment = null;
+		return segmentPath(generation);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (segment != null) {
+			segment.close();
+			segment = null;
+		}
+	}
+
+	private void append(String line) throws IOException {
+		if (segment == null) {
+			generation++;
+			segment = FileChannel.open(segmentPath(generation), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		}
+		write(segment, line);
+	}
+
+	private void write(FileChannel channel, String line) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		if (fsync) {
+			channel.force(false);
+		}
+	}
+
+	private Path segmentPath(long generation) {
+		return path.resolveSibling(path.getFileName() + "." + generation);
+	}
+
+	private long generationOf(Path segment) {
+		String name = segment.getFileName().toString();
+		try {
+			return Long.parseLong(name.substring(path.getFileName().toString().length() + 1));
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			return -1;
+		}
+	}
+
+	static String escape(String value) {
+		if (value == null) {
+			return NULL_FIELD;
+		}
+		StringBuilder escaped = new StringBuilder(value.length() + 8);
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '\\': escaped.append("\\\\"); break;
+				case '\t': escaped.append("\\t"); break;
+				case '\n': escaped.append("\\n"); break;
+				case '\r': escaped.append("\\r"); break;
+				default: escaped.append(c); break;
+			}
+		}
+		return escaped.toString();
+	}
+
+	static String unescape(String value) {
+		if (NULL_FIELD.equals(value)) {
+			return null;
+		}
+		if (value.indexOf('\\') < 0) {
+			return value;
+		}
+		StringBuilder unescaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c != '\\' || i + 1 == value.length()) {
+				unescaped.append(c);
+				continue;
+			}
+			char next = value.charAt(++i);
+			switch (next) {
+				case 't': unescaped.append('\t'); break;
+				case 'n': unescaped.append('\n'); break;
+				case 'r': unescaped.append('\r'); break;
+				default: unescaped.append(next); break;
+			}
+		}
+		return unescaped.toString();
+	}
+}
@@ -32,11 +32,17 @@
 	                    <td> ${ item.getTitle() } </td>
 	                    <td> ${ item.getAuthor() } </td>
 	                    <td> <fmt:formatNumber value = "${ item.getPrice() }" type = "currency"/>  </td>
-                      <td> <a href="#edit">Edit</a>
-                           <a href="#delete">Delete</a> </td>
+                      <td> <a href="edit?id=${ item.getId() }">Edit</a>
+                           <form class="inline" name="delete_form" action="delete" method="post">
+                             <input type="hidden" name="id" value="${ item.getId() }" />
+                             <input type="submit" value="Delete" />
+                           </form> </td>
 	                </tr>
 	            </c:forEach>
 	        </table>
+	        <c:if test="${not empty nextCursor}">
+	            <p><a href="admin?after=${nextCursor}&amp;size=${pageSize}">Next page</a></p>
+	        </c:if>
 	    </div>
     </div>
 </body>
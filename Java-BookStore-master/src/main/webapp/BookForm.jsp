@@ -14,16 +14,19 @@
 	</ul>
 
 <div class="container">
-    <form name="book_form" method="post" action="insert">
+    <form name="book_form" method="post" action="${ book == null ? 'insert' : 'update' }">
     <h2>
-        New Book Form
+        ${ book == null ? 'New Book Form' : 'Edit Book Form' }
     </h2>
+    <c:if test="${ book != null }">
+      <input type="hidden" name="id" value="${ book.getId() }" />
+    </c:if>
 	  <p><label>Title:</label>
-    <input type="text" name="booktitle" /></p>
+    <input type="text" name="booktitle" value="<c:out value='${ book.getTitle() }'/>" /></p>
 	  <p><label>Author:</label>
-    <input type="text" name="bookauthor" /></p>
+    <input type="text" name="bookauthor" value="<c:out value='${ book.getAuthor() }'/>" /></p>
     <p><label>Price:</label>
-    <input type="text" name="bookprice" /></p>
+    <input type="text" name="bookprice" value="<c:out value='${ book.getPrice() }'/>" /></p>
 	  <p><input type="submit" value="Submit"></p>
 	</form>
 	</div>
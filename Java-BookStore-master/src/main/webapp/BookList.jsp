@@ -14,6 +14,10 @@
 	<ul>
 	  <li><a class="active" href="list">Book Listing</a></li>
     <li><a href="admin">Admin</a></li>
+    <li><form name="search_form" action="search" method="get">
+      <input type="text" name="q" value="<c:out value='${query}' />" />
+      <input type="submit" value="Search" />
+    </form></li>
 	</ul>
 
     <div class="container">
@@ -24,17 +28,38 @@
 	                <th>Title</th>
 	                <th>Author</th>
 	                <th>Price</th>
+	                <th><a href="/cart/show">Cart</a></th>
 	            </tr>
 
+	            <c:choose>
+	            <c:when test="${not empty bookRows}">
+	                ${ bookRows }
+	            </c:when>
+	            <c:otherwise>
 	 			<c:forEach items="${books}" var="item">
-	                <tr><form name="cart_form" action="/cart/addcart">
+	                <tr><form name="cart_form" action="/cart/addcart" method="post">
                       <input type="hidden" name="id" value="<c:out value='${item.getId()}' />" />
-	                    <td> ${ item.getTitle() } </td>
-	                    <td> ${ item.getAuthor() } </td>
+	                    <td> <c:out value="${ item.getTitle() }" /> </td>
+	                    <td> <c:out value="${ item.getAuthor() }" /> </td>
 	                    <td> <fmt:formatNumber value = "${ item.getPrice() }" type = "currency"/>  </td>
+	                    <td> <input type="number" name="quantity" value="1" min="1" max="99" />
+	                         <input type="submit" value="Add to Cart" /> </td>
 	                </form></tr>
 	            </c:forEach>
+	            </c:otherwise>
+	            </c:choose>
 	        </table>
+	        <c:if test="${not empty nextPage}">
+	            <c:url var="nextUrl" value="search">
+	                <c:param name="q" value="${query}" />
+	                <c:param name="page" value="${nextPage}" />
+	                <c:param name="size" value="${pageSize}" />
+	            </c:url>
+	            <p><a href="${nextUrl}">Next page</a></p>
+	        </c:if>
+	        <c:if test="${not empty nextCursor}">
+	            <p><a href="list?after=${nextCursor}&amp;size=${pageSize}">Next page</a></p>
+	        </c:if>
 	    </div>
     </div>
 </body>
@@ -0,0 +1,64 @@
+<%@ page language="java" contentType="text/html; charset=UTF-8"
+    pageEncoding="UTF-8"%>
+<%@ taglib uri = "http://java.sun.com/jsp/jstl/core" prefix = "c" %>
+<%@ taglib prefix = "fmt" uri = "http://java.sun.com/jsp/jstl/fmt" %>
+<!DOCTYPE html PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN" "http://www.w3.org/TR/html4/loose.dtd">
+<html>
+<head>
+    <title>Book Store</title>
+    <link rel="stylesheet" type="text/css" href="${pageContext.request.contextPath}/css/style.css">
+</head>
+
+
+<body>
+	<ul>
+	  <li><a href="/books/list">Book Listing</a></li>
+    <li><a class="active" href="show">Cart</a></li>
+	</ul>
+
+    <div class="container">
+	    <div class="booktable">
+	        <c:if test="${not empty order}">
+	            <p>Thank you, your order number is <c:out value="${order}" />.</p>
+	        </c:if>
+	        <table border="1" cellpadding="5">
+	            <caption>Shopping Cart</caption>
+	            <tr>
+	                <th>Title</th>
+	                <th>Author</th>
+	                <th>Price</th>
+	                <th>Quantity</th>
+	                <th>Total</th>
+	            </tr>
+
+	 			      <c:forEach items="${lines}" var="line">
+	                <tr><form name="cart_update_form" action="update" method="post">
+                      <input type="hidden" name="id" value="<c:out value='${line.book.id}' />" />
+	                    <td> <c:out value="${ line.book.title }" /> </td>
+	                    <td> <c:out value="${ line.book.author }" /> </td>
+	                    <td> <fmt:formatNumber value = "${ line.book.price }" type = "currency"/>  </td>
+	                    <td> <input type="number" name="quantity" value="${ line.quantity }" min="0" max="99" />
+	                         <input type="submit" value="Update" />
+	                         <input type="submit" formaction="delete" value="Remove" /> </td>
+	                    <td> <fmt:formatNumber value = "${ line.lineTotal }" type = "currency"/>  </td>
+	                </form></tr>
+	            </c:forEach>
+	            <tr>
+	                <th colspan="4">Total</th>
+	                <td> <fmt:formatNumber value = "${ total }" type = "currency"/>  </td>
+	            </tr>
+	        </table>
+	        <c:choose>
+	        <c:when test="${empty lines}">
+	            <p>Your cart is empty.</p>
+	        </c:when>
+	        <c:otherwise>
+	            <form name="checkout_form" action="checkout" method="post">
+	                <input type="submit" value="Checkout" />
+	            </form>
+	        </c:otherwise>
+	        </c:choose>
+	    </div>
+    </div>
+</body>
+</html>
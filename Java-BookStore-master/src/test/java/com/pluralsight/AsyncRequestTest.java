@@ -0,0 +1,138 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncRequestTest {
+	private final AtomicInteger completions = new AtomicInteger();
+	private final StringWriter written = new StringWriter();
+	private final CountDownLatch inWrite = new CountDownLatch(1);
+	private final CountDownLatch releaseWrite = new CountDownLatch(1);
+	private volatile boolean blockWrites;
+	private AsyncRequest async;
+
+	@Before
+	public void setUp() {
+		HttpServletRequest request = fake(HttpServletRequest.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getParameter": return "value";
+				case "getReader": return new BufferedReader(new StringReader("line one\nline two\n"));
+				default: return null;
+			}
+		});
+		HttpServletResponse response = fake(HttpServletResponse.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getWriter": return new PrintWriter(new FilterWriter(written) {
+					@Override
+					public void write(char[] text, int offset, int length) throws IOException {
+						if (blockWrites) {
+							inWrite.countDown();
+							try {
+								releaseWrite.await();
+							} catch (InterruptedException e) {
+								throw new IOException(e);
+							}
+						}
+						super.write(text, offset, length);
+					}
+				});
+				case "isCommitted": return false;
+				default: return null;
+			}
+		});
+		AsyncContext context = fake(AsyncContext.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getRequest": return request;
+				case "getResponse": return response;
+				case "complete": completions.incrementAndGet(); return null;
+				default: return null;
+			}
+		});
+		async = new AsyncRequest(context, 1000, System.nanoTime(), new LatencyHistogram(),
+				new Metrics().histograms("render", "", "page"));
+	}
+
+	@Test
+	public void workerCanUseRequestAndResponseUntilFinished() throws Exception {
+		assertEquals("value", async.request().getParameter("q"));
+		assertEquals("line one", async.request().getReader().readLine());
+		PrintWriter out = async.response().getWriter();
+		out.print("done");
+		out.flush();
+		assertEquals("done", written.toString());
+	}
+
+	@Test
+	public void refusesEveryCallAfterTimeout() throws Exception {
+		HttpServletRequest request = async.request();
+		BufferedReader reader = request.getReader();
+		PrintWriter out = async.response().getWriter();
+
+		async.onTimeout(null);
+		assertTrue(async.isFinished());
+		assertEquals(1, completions.get());
+
+		try {
+			request.getParameter("q");
+			fail("expected the finished request to be refused");
+		} catch (AsyncRequest.FinishedException expected) {
+		}
+		try {
+			reader.readLine();
+			fail("expected the reader to fail");
+		} catch (IOException expected) {
+		}
+		out.print("late");
+		out.flush();
+		assertTrue(out.checkError());
+		assertEquals("", written.toString());
+
+		async.complete();
+		assertEquals(1, completions.get());
+	}
+
+	@Test
+	public void timeoutWaitsForAWriteUnderWay() throws Exception {
+		PrintWriter out = async.response().getWriter();
+		blockWrites = true;
+		Thread worker = new Thread(() -> out.write("page"));
+		worker.start();
+		assertTrue(inWrite.await(5, TimeUnit.SECONDS));
+
+		Thread timeout = new Thread(() -> async.onTimeout(null));
+		timeout.start();
+		timeout.join(200);
+		assertTrue(timeout.isAlive());
+		assertEquals(0, completions.get());
+
+		releaseWrite.countDown();
+		worker.join(5000);
+		timeout.join(5000);
+		assertEquals("page", written.toString());
+		assertEquals(1, completions.get());
+		out.write("late");
+		assertTrue(out.checkError());
+		assertEquals("page", written.toString());
+	}
+
+	private static <T> T fake(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+	}
+}
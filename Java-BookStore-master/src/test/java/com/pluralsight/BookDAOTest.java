@@ -0,0 +1,232 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BookDAOTest {
+	private TempDatabase database;
+	private DBConnection dbConnection;
+	private BookDAO bookDAO;
+
+	@Before
+	public void setUp() throws Exception {
+		database = new TempDatabase();
+		dbConnection = database.connect();
+		bookDAO = new BookDAO(dbConnection.getConnectionPool(), dbConnection.getReadConnectionPool());
+		for (int i = 2; i <= 5; i++) {
+			bookDAO.insertBook(new Book("Title " + i, "Author " + i, i));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		database.delete();
+	}
+
+	@Test
+	public void listsPagesInIdOrder() {
+		ArrayList<Book> first = bookDAO.listBooks(0, 2);
+		assertEquals(2, first.size());
+		assertEquals(1, first.get(0).getId());
+		assertEquals(2, first.get(1).getId());
+
+		ArrayList<Book> second = bookDAO.listBooks(2, 2);
+		assertEquals(3, second.get(0).getId());
+		assertEquals(4, second.get(1).getId());
+
+		assertEquals(1, bookDAO.listBooks(4, 2).size());
+		assertTrue(bookDAO.listBooks(5, 2).isEmpty());
+	}
+
+	@Test
+	public void streamsEveryBook() {
+		List<Integer> ids = new ArrayList<>();
+		bookDAO.forEachBook(book -> ids.add(book.getId()));
+		assertEquals(5, ids.size());
+		assertEquals(Integer.valueOf(5), ids.get(4));
+	}
+
+	@Test
+	public void streamsInPagesWithoutHoldingAConnection() {
+		List<Book> feed = new ArrayList<>();
+		for (int i = 0; i < 1200; i++) {
+			feed.add(new Book("Bulk " + i, "Author", i));
+		}
+		bookDAO.insertBooks(feed, 500);
+		List<Integer> active = new ArrayList<>();
+		List<Integer> ids = new ArrayList<>();
+		bookDAO.forEachBook(book -> {
+			active.add(dbConnection.getReadConnectionPool().getActiveCount());
+			ids.add(book.getId());
+		});
+		assertEquals(1205, ids.size());
+		for (int i = 1; i < ids.size(); i++) {
+			assertTrue(ids.get(i - 1) < ids.get(i));
+		}
+		assertEquals(Collections.singleton(0), new HashSet<>(active));
+	}
+
+	@Test
+	public void releasesTheCursorWhenTheConsumerFails() {
+		try {
+			bookDAO.forEachBook(book -> {
+				throw new IllegalStateException("stop");
+			});
+			fail("expected the consumer's exception");
+		} catch (IllegalStateException e) {
+			assertEquals("stop", e.getMessage());
+		}
+		assertEquals(0, dbConnection.getReadConnectionPool().getActiveCount());
+		assertEquals(5, bookDAO.listAllBooks().size());
+	}
+
+	@Test
+	public void reportsDatabaseFailuresInsteadOfShortAnswers() throws Exception {
+		try (PooledConnection connection = dbConnection.getConnectionPool().borrow();
+				Statement statement = connection.getConnection().createStatement()) {
+			statement.executeUpdate("ALTER TABLE book RENAME TO book_gone");
+		}
+		List<Book> seen = new ArrayList<>();
+		try {
+			bookDAO.forEachBook(seen::add);
+			fail("expected the failure to be passed on");
+		} catch (BookDAOException e) {
+			assertTrue(e.getCause() instanceof SQLException);
+		}
+		assertTrue(seen.isEmpty());
+		try {
+			bookDAO.getBooks(Collections.singletonList(1));
+			fail("expected the failed lookup to be passed on");
+		} catch (BookDAOException expected) {
+		}
+		assertEquals(0, dbConnection.getReadConnectionPool().getActiveCount());
+		// listings keep their lenient contract
+		assertTrue(bookDAO.listBooks(0, 10).isEmpty());
+	}
+
+	@Test
+	public void insertsInChunks() {
+		List<Book> feed = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			feed.add(new Book("Bulk " + i, "Author", i));
+		}
+		assertEquals(25, bookDAO.insertBooks(feed, 10));
+		assertEquals(30, bookDAO.listAllBooks().size());
+	}
+
+	@Test
+	public void rejectedImportKeepsCommittedChunksAndLeavesConnectionUsable() {
+		long version = bookDAO.getCatalogVersion();
+		BookImportReader feed = BookImportReader.csv(new StringReader("A,One,1\nB,Two,2\nC,Three,x\nD,Four,4\n"));
+		try {
+			bookDAO.insertBooks(feed, 1);
+			fail("expected the malformed row to be rejected");
+		} catch (BookImportException e) {
+			assertEquals(2, e.getImportedCount());
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertEquals(7, bookDAO.listAllBooks().size());
+		assertTrue(bookDAO.getCatalogVersion() > version);
+
+		assertTrue(bookDAO.insertBook(new Book("After", "Author", 1)));
+		assertEquals(1, bookDAO.insertBooks(Collections.singletonList(new Book("Bulk", "Author", 1)), 10));
+		assertEquals(9, bookDAO.listAllBooks().size());
+	}
+
+	@Test
+	public void failedImportChunkReportsCommittedRows() {
+		List<Book> feed = new ArrayList<>();
+		feed.add(new Book("A", "One", 1));
+		feed.add(new Book("B", "Two", 2));
+		feed.add(new Book(null, "Three", 3));
+		try {
+			bookDAO.insertBooks(feed, 2);
+			fail("expected the NOT NULL constraint to fail the import");
+		} catch (BookImportException e) {
+			assertEquals(2, e.getImportedCount());
+			assertTrue(e.isDatabaseFailure());
+		}
+		assertEquals(7, bookDAO.listAllBooks().size());
+		assertTrue(bookDAO.insertBook(new Book("After", "Author", 1)));
+	}
+
+	@Test
+	public void failedTransactionsRollBackOnASingleConnection() throws Exception {
+		try (PooledConnection pooled = dbConnection.getConnectionPool().borrow()) {
+			Connection connection = pooled.getConnection();
+			BookDAO single = new BookDAO(connection);
+
+			try {
+				single.insertBooks(Arrays.asList(new Book("A", "One", 1), new Book(null, "Two", 2)), 10);
+				fail("expected the NOT NULL constraint to fail the import");
+			} catch (BookImportException expected) {
+			}
+			assertTrue(connection.getAutoCommit());
+
+			assertFalse(single.writeBatch(Arrays.asList(new Book("B", "Three", 3), new Book(null, "Four", 4)),
+					Collections.<Book>emptyList(), Collections.singletonList(1)));
+			assertTrue(connection.getAutoCommit());
+			assertEquals(5, single.listAllBooks().size());
+			assertEquals("1984", single.getBook(1).getTitle());
+		}
+	}
+
+	@Test
+	public void appliesTuningAndKeepsReadPoolReadOnly() throws Exception {
+		try (PooledConnection connection = dbConnection.getConnectionPool().borrow();
+				Statement statement = connection.getConnection().createStatement();
+				ResultSet journalMode = statement.executeQuery("PRAGMA journal_mode")) {
+			assertEquals("wal", journalMode.getString(1).toLowerCase());
+		}
+
+		try (PooledConnection connection = dbConnection.getReadConnectionPool().borrow();
+				Statement statement = connection.getConnection().createStatement()) {
+			statement.executeUpdate("DELETE FROM book");
+			fail("Read-only connection accepted a write");
+		} catch (SQLException expected) {
+		}
+		assertEquals(5, bookDAO.listAllBooks().size());
+	}
+
+	@Test
+	public void searchesByWordPrefix() {
+		bookDAO.insertBook(new Book("Animal Farm", "George Orwell", 2));
+		bookDAO.insertBook(new Book("Farmer Giles of Ham", "J. R. R. Tolkien", 3));
+
+		assertEquals(2, bookDAO.searchBooks("orwell", 0, 10, null).size());
+		assertEquals(2, bookDAO.searchBooks("farm", 0, 10, null).size());
+		assertEquals(1, bookDAO.searchBooks("ORW farm", 0, 10, null).size());
+		assertEquals(1, bookDAO.searchBooks("farm", 1, 1, null).size());
+		assertTrue(bookDAO.searchBooks("\"* ) (", 0, 10, null).isEmpty());
+
+		bookDAO.updateBook(new Book(1, "Nineteen Eighty-Four", "George Orwell", 1));
+		assertEquals(1, bookDAO.searchBooks("nineteen", 0, 10, null).size());
+		bookDAO.deleteBook(1);
+		assertEquals(1, bookDAO.searchBooks("orwell", 0, 10, null).size());
+	}
+
+	@Test
+	public void bumpsCatalogVersionOnlyWhenRowsChange() {
+		long version = bookDAO.getCatalogVersion();
+		bookDAO.getBook(1);
+		bookDAO.deleteBook(999);
+		assertEquals(version, bookDAO.getCatalogVersion());
+
+		bookDAO.updateBook(new Book(1, "1984", "George Orwell", 2));
+		assertEquals(version + 1, bookDAO.getCatalogVersion());
+	}
+}
@@ -0,0 +1,55 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BookExportWriterTest {
+	private static final List<Book> BOOKS = Arrays.asList(
+			new Book(1, "1984", "George Orwell", 4.5f),
+			new Book(2, "Quotes, \"commas\"\nand newlines", "Anon", 10f));
+
+	private static String export(BookExportWriter writer, StringWriter out) throws Exception {
+		writer.begin();
+		BOOKS.forEach(writer);
+		return out.toString();
+	}
+
+	@Test
+	public void writesQuotedCsvWithHeader() throws Exception {
+		StringWriter out = new StringWriter();
+		assertEquals("id,title,author,price\r\n"
+				+ "1,1984,George Orwell,4.5\r\n"
+				+ "2,\"Quotes, \"\"commas\"\"\nand newlines\",Anon,10.0\r\n",
+				export(BookExportWriter.csv(out), out));
+	}
+
+	@Test
+	public void writesOneJsonObjectPerLine() throws Exception {
+		StringWriter out = new StringWriter();
+		assertEquals("{\"id\":1,\"title\":\"1984\",\"author\":\"George Orwell\",\"price\":4.5}\n"
+				+ "{\"id\":2,\"title\":\"Quotes, \\\"commas\\\"\\nand newlines\",\"author\":\"Anon\",\"price\":10.0}\n",
+				export(BookExportWriter.ndjson(out), out));
+	}
+
+	@Test
+	public void exportsCanBeImportedAgain() throws Exception {
+		StringWriter csv = new StringWriter();
+		StringWriter ndjson = new StringWriter();
+		for (BookImportReader reader : Arrays.asList(
+				BookImportReader.csv(new StringReader(export(BookExportWriter.csv(csv), csv))),
+				BookImportReader.json(new StringReader(export(BookExportWriter.ndjson(ndjson), ndjson))))) {
+			List<Book> books = new ArrayList<>();
+			reader.forEach(books::add);
+			assertEquals(2, books.size());
+			assertEquals(BOOKS.get(1).getTitle(), books.get(1).getTitle());
+			assertEquals(4.5f, books.get(0).getPrice(), 0);
+		}
+	}
+}
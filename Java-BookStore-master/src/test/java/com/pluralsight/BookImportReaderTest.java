@@ -0,0 +1,60 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BookImportReaderTest {
+
+	private static List<Book> readAll(BookImportReader reader) {
+		List<Book> books = new ArrayList<>();
+		for (Book book : reader) {
+			books.add(book);
+		}
+		return books;
+	}
+
+	@Test
+	public void readsCsvWithHeaderAndQuotes() {
+		String csv = "price,title,author\r\n"
+				+ "9.99,\"Dune, Part One\",Frank Herbert\r\n"
+				+ "\n"
+				+ "4.5,\"The \"\"Hobbit\"\"\",J. R. R. Tolkien";
+		List<Book> books = readAll(BookImportReader.csv(new StringReader(csv)));
+		assertEquals(2, books.size());
+		assertEquals("Dune, Part One", books.get(0).getTitle());
+		assertEquals(9.99f, books.get(0).getPrice(), 0.001);
+		assertEquals("The \"Hobbit\"", books.get(1).getTitle());
+		assertEquals("J. R. R. Tolkien", books.get(1).getAuthor());
+	}
+
+	@Test
+	public void readsCsvWithoutHeader() {
+		List<Book> books = readAll(BookImportReader.csv(new StringReader("Emma,Jane Austen,3\n")));
+		assertEquals(1, books.size());
+		assertEquals("Jane Austen", books.get(0).getAuthor());
+	}
+
+	@Test
+	public void readsJsonArrayAndNdjson() {
+		String array = "[{\"title\": \"Emma\", \"author\": \"Jane Austen\", \"price\": 3.5},"
+				+ " {\"price\": 1, \"title\": \"Caf\\u00e9\", \"author\": \"A \\\"B\\\"\"}]";
+		List<Book> books = readAll(BookImportReader.json(new StringReader(array)));
+		assertEquals(2, books.size());
+		assertEquals("Café", books.get(1).getTitle());
+		assertEquals("A \"B\"", books.get(1).getAuthor());
+
+		String ndjson = "{\"title\":\"Emma\",\"author\":\"Jane Austen\",\"price\":3}\n"
+				+ "{\"title\":\"Persuasion\",\"author\":\"Jane Austen\",\"price\":4}\n";
+		assertEquals(2, readAll(BookImportReader.json(new StringReader(ndjson))).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsBadPrice() {
+		readAll(BookImportReader.csv(new StringReader("Emma,Jane Austen,cheap\n")));
+	}
+}
@@ -0,0 +1,64 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class BookRowCacheTest {
+
+	@Test
+	public void rendersEscapedRows() {
+		BookRowCache cache = new BookRowCache(100);
+		String html = cache.render(Arrays.asList(new Book(3, "<b>Bold</b> & \"quoted\"", "O'Brien", 4.5f)),
+				Locale.US);
+
+		assertEquals("<tr><form name=\"cart_form\" action=\"/cart/addcart\" method=\"post\">\n"
+				+ "<input type=\"hidden\" name=\"id\" value=\"3\" />\n"
+				+ "<td> &lt;b&gt;Bold&lt;/b&gt; &amp; &#034;quoted&#034; </td>\n"
+				+ "<td> O&#039;Brien </td>\n"
+				+ "<td> $4.50 </td>\n"
+				+ "<td> <input type=\"number\" name=\"quantity\" value=\"1\" min=\"1\" max=\"99\" />"
+				+ " <input type=\"submit\" value=\"Add to Cart\" /> </td>\n"
+				+ "</form></tr>\n", html);
+	}
+
+	@Test
+	public void reusesRowsUntilTheBookChanges() {
+		BookRowCache cache = new BookRowCache(100);
+		List<Book> page = Arrays.asList(new Book(1, "Emma", "Jane Austen", 3.0f),
+				new Book(2, "Ulysses", "James Joyce", 9.0f));
+		String first = cache.render(page, Locale.US);
+		assertEquals(first, cache.render(page, Locale.US));
+		assertEquals(2, cache.getHitCount());
+
+		String updated = cache.render(Arrays.asList(new Book(1, "Emma", "Jane Austen", 3.0f),
+				new Book(2, "Ulysses", "James Joyce", 7.0f)), Locale.US);
+		assertTrue(updated.contains("$7.00"));
+		assertFalse(updated.contains("$9.00"));
+		assertEquals(3, cache.getHitCount());
+	}
+
+	@Test
+	public void keepsRowsPerLocale() {
+		BookRowCache cache = new BookRowCache(100);
+		List<Book> page = Arrays.asList(new Book(1, "Emma", "Jane Austen", 1234.5f));
+
+		assertTrue(cache.render(page, Locale.US).contains("$1,234.50"));
+		assertTrue(cache.render(page, Locale.GERMANY).contains(
+				NumberFormat.getCurrencyInstance(Locale.GERMANY).format(1234.5f)));
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void formatsPricesLikeNumberFormat() {
+		for (Locale locale : new Locale[] {Locale.US, Locale.UK, Locale.FRANCE, Locale.JAPAN}) {
+			assertEquals(NumberFormat.getCurrencyInstance(locale).format(19.99f),
+					PriceFormatter.format(19.99f, locale));
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BookStoreWarmupTest {
+	private TempDatabase tempDatabase;
+	private DBConnection dbConnection;
+	private BookDAO database;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDatabase = new TempDatabase();
+		dbConnection = tempDatabase.connect();
+		database = new BookDAO(dbConnection.getConnectionPool(), dbConnection.getReadConnectionPool());
+		for (int i = 2; i <= 30; i++) {
+			database.insertBook(new Book("Title " + i, "Author " + i, i));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		tempDatabase.delete();
+	}
+
+	@Test
+	public void preparesEveryConnection() {
+		ConnectionPool readPool = dbConnection.getReadConnectionPool();
+		int prepared = database.prepareStatements();
+
+		assertEquals(readPool.getMaxSize(), readPool.getTotalCount());
+		assertEquals(dbConnection.getConnectionPool().getMaxSize(), dbConnection.getConnectionPool().getTotalCount());
+		assertTrue(prepared > readPool.getMaxSize());
+
+		long misses = readPool.getStatementCacheMisses();
+		database.getBook(2);
+		database.listBooks(0, 10);
+		database.getBooks(Arrays.asList(2, 3, 4));
+		assertEquals(misses, readPool.getStatementCacheMisses());
+	}
+
+	@Test
+	public void loadsTheFirstPagesIntoTheCache() {
+		CachingBookDAO cache = new CachingBookDAO(database, 100, 16);
+		BookStoreWarmup warmup = new BookStoreWarmup(Collections.singletonList(database), cache, 2, 10, 50);
+		assertFalse(warmup.isDone());
+
+		warmup.run();
+
+		assertTrue(warmup.isDone());
+		assertEquals(20, cache.getBookCache().size());
+		long listMisses = cache.getListMissCount();
+		cache.listBooks(0, 11);
+		assertEquals(listMisses, cache.getListMissCount());
+	}
+}
@@ -0,0 +1,135 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingBookDAOTest {
+	private TempDatabase database;
+	private DBConnection dbConnection;
+	private CachingBookDAO bookDAO;
+
+	@Before
+	public void setUp() throws Exception {
+		database = new TempDatabase();
+		dbConnection = database.connect();
+		bookDAO = new CachingBookDAO(new BookDAO(dbConnection.getConnectionPool()), 100, 10);
+	}
+
+	@After
+	public void tearDown() {
+		database.delete();
+	}
+
+	@Test
+	public void servesRepeatedGetFromCache() {
+		Book first = bookDAO.getBook(1);
+		Book second = bookDAO.getBook(1);
+		assertEquals(first.getTitle(), second.getTitle());
+		assertEquals(1, bookDAO.getBookCache().getHitCount());
+	}
+
+	@Test
+	public void callersCannotChangeWhatIsCached() {
+		bookDAO.getBook(1).setTitle("Changed by a caller");
+		bookDAO.getBook(1).setTitle("Changed by another caller");
+		bookDAO.listAllBooks().get(0).setPrice(99);
+		bookDAO.listBooks(0, 10).get(0).setPrice(99);
+		bookDAO.listBooks(0, 10).get(0).setAuthor("Someone else");
+
+		assertEquals("1984", bookDAO.getBook(1).getTitle());
+		assertEquals(1.0f, bookDAO.listAllBooks().get(0).getPrice(), 0);
+		assertEquals("George Orwell", bookDAO.listBooks(0, 10).get(0).getAuthor());
+	}
+
+	@Test
+	public void failedReadsAreThrownAndNeverCached() throws Exception {
+		renameTable("book", "book_gone");
+		try {
+			bookDAO.readBooks(0, 10);
+			fail("expected the failed listing to be passed on");
+		} catch (BookDAOException expected) {
+		}
+		try {
+			bookDAO.readBook(1);
+			fail("expected the failed lookup to be passed on");
+		} catch (BookDAOException expected) {
+		}
+		assertTrue(bookDAO.listBooks(0, 10).isEmpty());
+		assertNull(bookDAO.getBook(1));
+
+		renameTable("book_gone", "book");
+		assertEquals(1, bookDAO.listBooks(0, 10).size());
+		assertEquals("1984", bookDAO.getBook(1).getTitle());
+	}
+
+	@Test
+	public void failedWritesKeepTheCache() {
+		bookDAO.listAllBooks();
+		assertFalse(bookDAO.updateBook(new Book(42, "Missing", "Nobody", 1)));
+		assertFalse(bookDAO.deleteBook(42));
+		assertFalse(bookDAO.insertBook(new Book(null, "Nobody", 1)));
+		bookDAO.listAllBooks();
+		assertEquals(1, bookDAO.getListHitCount());
+	}
+
+	@Test
+	public void updateInvalidatesBook() {
+		Book book = bookDAO.getBook(1);
+		bookDAO.updateBook(new Book(1, "Animal Farm", book.getAuthor(), 2.0f));
+		assertEquals("Animal Farm", bookDAO.getBook(1).getTitle());
+	}
+
+	@Test
+	public void insertAndDeleteInvalidateListings() {
+		assertEquals(1, bookDAO.listAllBooks().size());
+		assertEquals(1, bookDAO.listBooks(0, 10).size());
+
+		bookDAO.insertBook(new Book("Brave New World", "Aldous Huxley", 3.0f));
+		assertEquals(2, bookDAO.listAllBooks().size());
+		assertEquals(2, bookDAO.listBooks(0, 10).size());
+
+		bookDAO.deleteBook(1);
+		assertNull(bookDAO.getBook(1));
+		assertEquals(1, bookDAO.listAllBooks().size());
+	}
+
+	@Test
+	public void failedImportStillInvalidatesListings() {
+		assertEquals(1, bookDAO.listAllBooks().size());
+		try {
+			bookDAO.insertBooks(BookImportReader.csv(new StringReader("A,One,1\nB,Two,x\n")), 1);
+			fail("expected the malformed row to be rejected");
+		} catch (BookImportException e) {
+			assertEquals(1, e.getImportedCount());
+		}
+		assertEquals(2, bookDAO.listAllBooks().size());
+	}
+
+	@Test
+	public void bulkGetUsesCacheAndLoadsMissing() {
+		bookDAO.insertBook(new Book("Brave New World", "Aldous Huxley", 3.0f));
+		bookDAO.getBook(1);
+
+		Map<Integer, Book> books = bookDAO.getBooks(Arrays.asList(1, 2, 3));
+		assertEquals(2, books.size());
+		assertEquals("Brave New World", books.get(2).getTitle());
+		long hits = bookDAO.getBookCache().getHitCount();
+		assertEquals("Brave New World", bookDAO.getBook(2).getTitle());
+		assertEquals(hits + 1, bookDAO.getBookCache().getHitCount());
+	}
+
+	private void renameTable(String from, String to) throws Exception {
+		try (PooledConnection connection = dbConnection.getConnectionPool().borrow();
+				Statement statement = connection.getConnection().createStatement()) {
+			statement.executeUpdate("ALTER TABLE " + from + " RENAME TO " + to);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CartServiceTest {
+	private TempDatabase database;
+	private DBConnection dbConnection;
+	private final AtomicInteger getBooksCalls = new AtomicInteger();
+	private final AtomicBoolean databaseDown = new AtomicBoolean();
+	private CartService cartService;
+
+	@Before
+	public void setUp() throws Exception {
+		database = new TempDatabase();
+		dbConnection = database.connect();
+		// carts must be priced in one batch, never book by book
+		BookDAO bookDAO = new BookDAO(dbConnection.getConnectionPool(), dbConnection.getReadConnectionPool()) {
+			@Override
+			public Book readBook(int id) {
+				throw new AssertionError("readBook(" + id + ") called while pricing a cart");
+			}
+
+			@Override
+			public Map<Integer, Book> getBooks(Collection<Integer> ids) {
+				getBooksCalls.incrementAndGet();
+				if (databaseDown.get()) {
+					throw new BookDAOException("down", new SQLException("simulated"));
+				}
+				return super.getBooks(ids);
+			}
+		};
+		for (int i = 2; i <= 5; i++) {
+			bookDAO.insertBook(new Book("Title " + i, "Author " + i, i));
+		}
+		cartService = new CartService(bookDAO, new OrderDAO(dbConnection.getConnectionPool()));
+	}
+
+	@After
+	public void tearDown() {
+		database.delete();
+	}
+
+	@Test
+	public void pricesTheCartWithOneLookup() {
+		cartService.add("s1", 3, 2);
+		cartService.add("s1", 2, 1);
+		cartService.add("s1", 3, 1);
+		cartService.add("s1", 42, 1);
+		cartService.add("s2", 4, 1);
+
+		List<CartLine> lines = cartService.getLines("s1");
+		assertEquals(1, getBooksCalls.get());
+		assertEquals(2, lines.size());
+		assertEquals(2, lines.get(0).getBook().getId());
+		assertEquals(1, lines.get(0).getQuantity());
+		assertEquals(3, lines.get(1).getBook().getId());
+		assertEquals(3, lines.get(1).getQuantity());
+		assertEquals(2.0 + 9.0, CartLine.total(lines), 0.001);
+		// the unknown book was dropped from the cart
+		assertEquals(4, cartService.getItemCount("s1"));
+	}
+
+	@Test
+	public void failedLookupLeavesTheCartAlone() {
+		cartService.add("s1", 2, 2);
+		cartService.add("s1", 5, 1);
+		databaseDown.set(true);
+
+		try {
+			cartService.getLines("s1");
+			fail("expected the failed lookup to be passed on");
+		} catch (BookDAOException expected) {
+		}
+		assertEquals(-1, cartService.checkout("s1"));
+		assertEquals(1, cartService.getFailedCheckoutCount());
+		assertEquals(3, cartService.getItemCount("s1"));
+
+		databaseDown.set(false);
+		assertEquals(2, cartService.getLines("s1").size());
+		assertTrue(cartService.checkout("s1") > 0);
+	}
+
+	@Test
+	public void enforcesLimits() {
+		assertFalse(cartService.add("s1", 2, 0));
+		assertTrue(cartService.add("s1", 2, 500));
+		assertTrue(cartService.add("s1", 2, 1));
+		assertEquals(CartService.MAX_QUANTITY, cartService.getItemCount("s1"));
+
+		for (int id = 100; id < 100 + CartService.MAX_BOOKS - 1; id++) {
+			assertTrue(cartService.add("s1", id, 1));
+		}
+		assertFalse(cartService.add("s1", 1000, 1));
+		assertTrue(cartService.add("s1", 2, 1));
+
+		assertTrue(cartService.setQuantity("s1", 100, 0));
+		assertFalse(cartService.setQuantity("s1", 100, 5));
+		assertTrue(cartService.add("s1", 1000, 1));
+	}
+
+	@Test
+	public void checkoutStoresTheOrderAndEmptiesTheCart() throws Exception {
+		cartService.add("s1", 2, 2);
+		cartService.add("s1", 5, 1);
+
+		long orderId = cartService.checkout("s1");
+		assertTrue(orderId > 0);
+		assertEquals(0, cartService.getItemCount("s1"));
+		assertEquals(0, cartService.checkout("s1"));
+		assertEquals(1, cartService.getCheckoutCount());
+
+		try (PooledConnection pooled = dbConnection.getConnectionPool().borrow();
+				Statement statement = pooled.getConnection().createStatement()) {
+			try (ResultSet resultSet = statement.executeQuery("SELECT total FROM book_order WHERE id = " + orderId)) {
+				assertTrue(resultSet.next());
+				assertEquals(9.0, resultSet.getDouble(1), 0.001);
+			}
+			try (ResultSet resultSet = statement.executeQuery("SELECT book_id, title, price, quantity"
+					+ " FROM book_order_item WHERE order_id = " + orderId + " ORDER BY book_id")) {
+				assertTrue(resultSet.next());
+				assertEquals(2, resultSet.getInt(1));
+				assertEquals("Title 2", resultSet.getString(2));
+				assertEquals(2.0, resultSet.getDouble(3), 0.001);
+				assertEquals(2, resultSet.getInt(4));
+				assertTrue(resultSet.next());
+				assertEquals(5, resultSet.getInt(1));
+				assertFalse(resultSet.next());
+			}
+		}
+	}
+
+	@Test
+	public void concurrentAddsAreNotLost() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			int thread = t;
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < 40; i++) {
+					// everyone shares cart "shared" and has one of its own
+					cartService.add("shared", 2 + i % 4, 1);
+					cartService.add("own-" + thread, 2 + i % 4, 1);
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+
+		assertEquals(9, cartService.getCartCount());
+		for (CartLine line : cartService.getLines("shared")) {
+			assertEquals(80, line.getQuantity());
+		}
+		assertEquals(320, cartService.getItemCount("shared"));
+		assertEquals(40, cartService.getItemCount("own-3"));
+	}
+
+	@Test
+	public void concurrentAddsStayWithinMaxBooks() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int round = 0; round < 20; round++) {
+			String sessionId = "round-" + round;
+			AtomicInteger accepted = new AtomicInteger();
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				int first = 1000 * (t + 1);
+				futures.add(executor.submit(() -> {
+					for (int id = first; id < first + CartService.MAX_BOOKS / 4; id++) {
+						if (cartService.add(sessionId, id, 1)) {
+							accepted.incrementAndGet();
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			assertEquals(CartService.MAX_BOOKS, accepted.get());
+			assertEquals(CartService.MAX_BOOKS, cartService.getItemCount(sessionId));
+		}
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+}
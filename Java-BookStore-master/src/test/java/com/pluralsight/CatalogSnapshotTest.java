@@ -0,0 +1,83 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class CatalogSnapshotTest {
+
+	private static CatalogSnapshot snapshot(Book... books) {
+		CatalogSnapshot.Builder builder = new CatalogSnapshot.Builder();
+		for (Book book : books) {
+			builder.add(book);
+		}
+		return builder.build(7);
+	}
+
+	@Test
+	public void looksUpBooksById() {
+		CatalogSnapshot snapshot = snapshot(
+				new Book(2, "1984", "George Orwell", 1.0f),
+				new Book(5, "Der Zauberberg", "Thomas Mann", 12.5f),
+				new Book(9, "Война и мир", "Лев Толстой", 20.0f));
+
+		assertEquals(7, snapshot.getVersion());
+		assertEquals(3, snapshot.size());
+		assertEquals(-1, snapshot.indexOf(3));
+		int index = snapshot.indexOf(9);
+		assertEquals(9, snapshot.getId(index));
+		assertEquals("Война и мир", snapshot.getTitle(index));
+		assertEquals("Лев Толстой", snapshot.getAuthor(index));
+		assertEquals(20.0f, snapshot.getPrice(index), 0);
+		assertEquals("Thomas Mann", snapshot.getBook(snapshot.indexOf(5)).getAuthor());
+	}
+
+	@Test
+	public void listsKeysetPages() {
+		CatalogSnapshot.Builder builder = new CatalogSnapshot.Builder();
+		for (int id = 1; id <= 5000; id += 2) {
+			builder.add(new Book(id, "Title " + id, "Author " + id, id));
+		}
+		CatalogSnapshot snapshot = builder.build(0);
+
+		List<Book> page = snapshot.listBooks(10, 3);
+		assertEquals(3, page.size());
+		assertEquals(11, page.get(0).getId());
+		assertEquals(15, page.get(2).getId());
+		assertEquals("Title 15", page.get(2).getTitle());
+
+		assertEquals(13, snapshot.listBooks(11, 3).get(0).getId());
+		assertTrue(snapshot.listBooks(4999, 10).isEmpty());
+		assertEquals(2500, snapshot.listBooks(0, Integer.MAX_VALUE).size());
+	}
+
+	@Test
+	public void keepsNullTextApartFromEmptyText() {
+		CatalogSnapshot.Builder builder = new CatalogSnapshot.Builder();
+		builder.add(new Book(1, "", null, 1.0f));
+		for (int id = 2; id <= 100; id++) {
+			builder.add(new Book(id, "Title " + id, "Author " + id, id));
+		}
+		builder.add(new Book(101, null, "", 2.0f));
+		CatalogSnapshot snapshot = builder.build(0);
+
+		assertEquals("", snapshot.getTitle(0));
+		assertNull(snapshot.getAuthor(0));
+		assertEquals("Title 50", snapshot.getTitle(snapshot.indexOf(50)));
+		assertEquals("Author 50", snapshot.getAuthor(snapshot.indexOf(50)));
+		Book last = snapshot.getBook(snapshot.indexOf(101));
+		assertNull(last.getTitle());
+		assertEquals("", last.getAuthor());
+
+		CatalogSnapshot withoutNulls = snapshot(new Book(1, "", "", 1.0f));
+		assertEquals("", withoutNulls.getTitle(0));
+		assertEquals("", withoutNulls.getAuthor(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsBooksOutOfOrder() {
+		snapshot(new Book(2, "b", "b", 1), new Book(1, "a", "a", 1));
+	}
+}
@@ -0,0 +1,85 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.sql.DriverManager;
+import java.sql.SQLTimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionPoolTest {
+	private File dbFile;
+	private ConnectionPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		dbFile = File.createTempFile("pool", ".db");
+		String url = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+		pool = new ConnectionPool(() -> DriverManager.getConnection(url), 1, 2, 100, 0, 1, 4);
+	}
+
+	@After
+	public void tearDown() {
+		pool.close();
+		dbFile.delete();
+	}
+
+	@Test
+	public void prefillsMinIdle() {
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(1, pool.getTotalCount());
+	}
+
+	@Test
+	public void reusesReturnedConnection() throws Exception {
+		PooledConnection first = pool.borrow();
+		first.close();
+		PooledConnection second = pool.borrow();
+		assertSame(first.getConnection(), second.getConnection());
+		assertEquals(1, pool.getActiveCount());
+		second.close();
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(1, pool.getCreatedCount());
+	}
+
+	@Test
+	public void timesOutWhenExhausted() throws Exception {
+		PooledConnection a = pool.borrow();
+		PooledConnection b = pool.borrow();
+		try {
+			pool.borrow();
+			fail("Expected the third borrow to time out");
+		} catch (SQLTimeoutException expected) {
+			assertEquals(1, pool.getTimeoutCount());
+		}
+		a.close();
+		b.close();
+		assertEquals(2, pool.getIdleCount());
+	}
+
+	@Test
+	public void replacesClosedConnectionOnBorrow() throws Exception {
+		PooledConnection first = pool.borrow();
+		first.close();
+		first.getConnection().close();
+
+		PooledConnection second = pool.borrow();
+		assertNotSame(first.getConnection(), second.getConnection());
+		assertEquals(1, pool.getInvalidCount());
+		second.close();
+	}
+
+	@Test
+	public void rollsBackOpenTransactionOnReturn() throws Exception {
+		PooledConnection connection = pool.borrow();
+		connection.getConnection().setAutoCommit(false);
+		connection.close();
+
+		PooledConnection again = pool.borrow();
+		assertTrue(again.getConnection().getAutoCommit());
+		again.close();
+	}
+}
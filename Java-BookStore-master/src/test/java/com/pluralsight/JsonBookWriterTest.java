@@ -0,0 +1,34 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class JsonBookWriterTest {
+
+	@Test
+	public void writesBookFields() throws Exception {
+		StringWriter out = new StringWriter();
+		new JsonBookWriter(out).writeBook(new Book(7, "1984", "George Orwell", 1.5f));
+		assertEquals("{\"id\":7,\"title\":\"1984\",\"author\":\"George Orwell\",\"price\":1.5}", out.toString());
+	}
+
+	@Test
+	public void escapesStrings() throws Exception {
+		StringWriter out = new StringWriter();
+		new JsonBookWriter(out).writeString("a\"b\\c\nd\u0001e\u2028");
+		assertEquals("\"a\\\"b\\\\c\\nd\\u0001e\\u2028\"", out.toString());
+	}
+
+	@Test
+	public void separatesBooksWithCommas() throws Exception {
+		StringWriter out = new StringWriter();
+		new JsonBookWriter(out).writeBooks(Arrays.asList(
+				new Book(1, "A", "B", 1), new Book(2, "C", "D", Float.NaN)));
+		assertEquals("{\"id\":1,\"title\":\"A\",\"author\":\"B\",\"price\":1.0},"
+				+ "{\"id\":2,\"title\":\"C\",\"author\":\"D\",\"price\":null}", out.toString());
+	}
+}
@@ -0,0 +1,43 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketsCoverEveryValueWithinPrecision() {
+		long[] values = {0, 1, 7, 8, 15, 16, 1000, 123456789, Long.MAX_VALUE};
+		for (long value : values) {
+			int bucket = LatencyHistogram.bucketOf(value);
+			long upper = LatencyHistogram.upperBound(bucket);
+			assertTrue(value + " above its bucket", value <= upper);
+			assertTrue(value + " reported too high", upper - value <= value / 8);
+			if (bucket > 0) {
+				assertTrue(value + " below its bucket", value > LatencyHistogram.upperBound(bucket - 1));
+			}
+		}
+	}
+
+	@Test
+	public void quantilesOfUniformValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 10000; i++) {
+			histogram.record(i * 1000L);
+		}
+
+		assertEquals(10000, histogram.getCount());
+		assertEquals(10000000L, histogram.getMaxNanos());
+		assertEquals(5000000, histogram.getValueAtQuantile(0.5), 5000000 / 8);
+		assertEquals(9900000, histogram.getValueAtQuantile(0.99), 9900000 / 8);
+		assertEquals(10000000L, histogram.getValueAtQuantile(1.0));
+	}
+
+	@Test
+	public void emptyHistogramReportsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtQuantile(0.99));
+		assertEquals(0, histogram.getCount());
+	}
+}
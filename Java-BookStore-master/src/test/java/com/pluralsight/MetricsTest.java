@@ -0,0 +1,63 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class MetricsTest {
+
+	@Test
+	public void writesSummariesInSeconds() throws Exception {
+		Metrics metrics = new Metrics();
+		Metrics.Histograms timers = metrics.histograms("test_seconds", "Test latency", "action");
+		timers.get("list").record(2000000);
+		timers.get("list").record(2000000);
+
+		String text = write(metrics);
+		assertTrue(text, text.contains("# TYPE test_seconds summary\n"));
+		assertTrue(text, text.contains("test_seconds{action=\"list\",quantile=\"0.5\"} 0.002"));
+		assertTrue(text, text.contains("test_seconds_sum{action=\"list\"} 0.004\n"));
+		assertTrue(text, text.contains("test_seconds_count{action=\"list\"} 2.0\n"));
+	}
+
+	@Test
+	public void readsCountersAtScrapeTime() throws Exception {
+		Metrics metrics = new Metrics();
+		long[] count = {1};
+		metrics.counter("test_total", "Test count", null, null, () -> count[0]);
+		count[0] = 5;
+
+		assertTrue(write(metrics).contains("test_total 5.0\n"));
+	}
+
+	@Test
+	public void sameNameSharesOneFamily() {
+		Metrics metrics = new Metrics();
+		Metrics.Histograms first = metrics.histograms("test_seconds", "Test latency", "query");
+		assertSame(first, metrics.histograms("test_seconds", "Test latency", "query"));
+		assertSame(first.get("getBook"), first.get("getBook"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsConflictingRegistration() {
+		Metrics metrics = new Metrics();
+		metrics.histograms("test_seconds", "Test latency", "query");
+		metrics.gauge("test_seconds", "Test gauge", "query", "x", () -> 1);
+	}
+
+	@Test
+	public void escapesLabelValues() throws Exception {
+		Metrics metrics = new Metrics();
+		metrics.gauge("test_value", "Test gauge", "name", "a\"b\\c", () -> 1);
+
+		assertTrue(write(metrics).contains("test_value{name=\"a\\\"b\\\\c\"} 1.0\n"));
+	}
+
+	private static String write(Metrics metrics) throws Exception {
+		StringWriter out = new StringWriter();
+		metrics.write(out);
+		return out.toString();
+	}
+}
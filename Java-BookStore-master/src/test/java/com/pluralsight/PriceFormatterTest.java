@@ -0,0 +1,20 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class PriceFormatterTest {
+
+	@Test
+	public void formatsLikeNumberFormatPastTheCachedLocales() {
+		for (Locale locale : Locale.getAvailableLocales()) {
+			assertEquals(locale.toString(), NumberFormat.getCurrencyInstance(locale).format(12.5f),
+					PriceFormatter.format(12.5f, locale));
+		}
+		assertEquals(NumberFormat.getCurrencyInstance(Locale.US).format(3f), PriceFormatter.format(3f, Locale.US));
+	}
+}
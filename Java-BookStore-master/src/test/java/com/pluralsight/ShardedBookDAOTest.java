@@ -0,0 +1,213 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedBookDAOTest {
+	private static final int SHARDS = 3;
+
+	private TempDatabase database;
+	private final List<DBConnection> dbConnections = new ArrayList<>();
+	private BookDAO[] shards;
+	private ShardedBookDAO bookDAO;
+
+	@Before
+	public void setUp() throws Exception {
+		database = new TempDatabase();
+		shards = new BookDAO[SHARDS];
+		for (int i = 0; i < SHARDS; i++) {
+			DBConnection dbConnection = database.connect(ShardedBookDAO.shardSettings(database.settings(), i, SHARDS));
+			dbConnections.add(dbConnection);
+			shards[i] = new BookDAO(dbConnection.getConnectionPool(), dbConnection.getReadConnectionPool());
+		}
+		bookDAO = new ShardedBookDAO(shards);
+		for (int i = 2; i <= 10; i++) {
+			bookDAO.insertBook(new Book("Title " + i, "Author " + i, i));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		database.delete();
+	}
+
+	@Test
+	public void derivesShardUrls() {
+		Properties settings = new Properties();
+		settings.setProperty("db.url", "jdbc:sqlite:data/book_store.db");
+		settings.setProperty("db.shard.2.url", "jdbc:sqlite:/fast/books.db");
+		assertEquals("jdbc:sqlite:data/book_store-0.db",
+				ShardedBookDAO.shardSettings(settings, 0, 3).getProperty("db.url"));
+		assertEquals("jdbc:sqlite:/fast/books.db", ShardedBookDAO.shardSettings(settings, 2, 3).getProperty("db.url"));
+		assertEquals("true", ShardedBookDAO.shardSettings(settings, 1, 3).getProperty("db.seed"));
+		assertEquals("false", ShardedBookDAO.shardSettings(settings, 0, 3).getProperty("db.seed"));
+	}
+
+	@Test
+	public void storesEachBookInItsShard() {
+		for (int i = 0; i < SHARDS; i++) {
+			for (Book book : shards[i].listAllBooks()) {
+				assertEquals(i, Math.floorMod(book.getId(), SHARDS));
+			}
+			assertTrue(shards[i].listAllBooks().size() >= 3);
+		}
+		assertEquals("1984", bookDAO.getBook(1).getTitle());
+		assertEquals("Title 7", bookDAO.getBook(7).getTitle());
+
+		Map<Integer, Book> books = bookDAO.getBooks(Arrays.asList(3, 4, 5, 99));
+		assertEquals(3, books.size());
+		assertEquals("Title 5", books.get(5).getTitle());
+	}
+
+	@Test
+	public void mergesListingsInIdOrder() {
+		assertEquals(Arrays.asList(1, 2, 3, 4), ids(bookDAO.listBooks(0, 4)));
+		assertEquals(Arrays.asList(5, 6, 7, 8), ids(bookDAO.listBooks(4, 4)));
+		assertEquals(Arrays.asList(9, 10), ids(bookDAO.listBooks(8, 4)));
+
+		List<Book> all = new ArrayList<>();
+		bookDAO.forEachBook(all::add);
+		assertEquals(10, all.size());
+		List<Integer> ids = ids(all);
+		List<Integer> sorted = new ArrayList<>(ids);
+		Collections.sort(sorted);
+		assertEquals(sorted, ids);
+		assertEquals(ids, ids(bookDAO.listAllBooks()));
+	}
+
+	@Test
+	public void mergesSearchHitsAcrossShards() {
+		bookDAO.insertBook(new Book("Animal Farm", "George Orwell", 2));
+		bookDAO.insertBook(new Book("Homage to Catalonia", "George Orwell", 3));
+
+		List<Book> hits = bookDAO.searchBooks("orwell", 0, 10, null);
+		assertEquals(3, hits.size());
+		assertEquals(2, bookDAO.searchBooks("orwell", 0, 2, null).size());
+		assertEquals(1, bookDAO.searchBooks("orwell", 2, 2, null).size());
+		assertTrue(ids(hits).containsAll(ids(bookDAO.searchBooks("orwell", 0, 2, null))));
+	}
+
+	@Test
+	public void offsetPagesWithLookAheadSkipNoHits() {
+		BookDAO cached = new CachingBookDAO(bookDAO, 100, 10);
+		List<Book> all = cached.searchBooks("title", 0, 100, null);
+		assertEquals(9, all.size());
+
+		// the servlet's paging: pageSize hits from page * pageSize, plus one to look ahead
+		int pageSize = 2;
+		List<Integer> paged = new ArrayList<>();
+		for (int page = 0; paged.size() < all.size(); page++) {
+			List<Book> hits = cached.searchBooks("title", page * pageSize, pageSize + 1, null);
+			assertEquals(hits.size() > pageSize, page * pageSize + pageSize < all.size());
+			paged.addAll(ids(hits.subList(0, Math.min(pageSize, hits.size()))));
+		}
+		assertEquals(ids(all), paged);
+	}
+
+	@Test
+	public void neverAsksAShardForANegativeLimit() {
+		List<Integer> limits = new ArrayList<>();
+		BookDAO[] recording = new BookDAO[SHARDS];
+		for (int i = 0; i < SHARDS; i++) {
+			BookDAO shard = shards[i];
+			recording[i] = new BookDAO(dbConnections.get(i).getConnectionPool()) {
+				@Override
+				public ArrayList<Book> searchBooks(String query, int offset, int limit, List<Double> ranks) {
+					limits.add(limit);
+					return shard.searchBooks(query, offset, limit, ranks);
+				}
+			};
+		}
+		assertTrue(new ShardedBookDAO(recording).searchBooks("title", Integer.MAX_VALUE - 1, 10, null).isEmpty());
+		assertEquals(Collections.nCopies(SHARDS, Integer.MAX_VALUE), limits);
+	}
+
+	@Test
+	public void routesWritesAndTracksTheCatalogVersion() {
+		long version = bookDAO.getCatalogVersion();
+		assertTrue(bookDAO.updateBook(new Book(5, "Changed", "Someone", 1)));
+		assertEquals("Changed", shards[5 % SHARDS].getBook(5).getTitle());
+		assertTrue(bookDAO.deleteBook(6));
+		assertNull(bookDAO.getBook(6));
+		assertTrue(bookDAO.getCatalogVersion() > version);
+
+		assertTrue(bookDAO.writeBatch(Arrays.asList(new Book("New", "Author", 1), new Book("Newer", "Author", 2)),
+				Arrays.asList(new Book(2, "Two", "Author", 2)), Arrays.asList(3, 4)));
+		assertEquals(Arrays.asList(1, 2, 5, 7, 8, 9, 10, 11, 12), ids(bookDAO.listAllBooks()));
+		assertEquals("Newer", bookDAO.getBook(12).getTitle());
+
+		List<Book> feed = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			feed.add(new Book("Bulk " + i, "Author", i));
+		}
+		assertEquals(7, bookDAO.insertBooks(feed, 2));
+		assertEquals("Bulk 6", bookDAO.getBook(19).getTitle());
+	}
+
+	@Test
+	public void retriesFinishAFailedShardWithoutDuplicates() {
+		AtomicInteger failures = new AtomicInteger(1);
+		BookDAO[] flaky = shards.clone();
+		flaky[0] = new BookDAO(dbConnections.get(0).getConnectionPool()) {
+			@Override
+			public boolean writeBatch(Collection<Book> inserts, Collection<Book> updates, Collection<Integer> deletes) {
+				if (failures.getAndDecrement() > 0) {
+					return false;
+				}
+				return super.writeBatch(inserts, updates, deletes);
+			}
+		};
+		CachingBookDAO cached = new CachingBookDAO(new ShardedBookDAO(flaky), 100, 10);
+		assertEquals(10, cached.listAllBooks().size());
+
+		// ids 11 and 13 commit, 12 belongs to the failing shard
+		List<Book> inserts = Arrays.asList(new Book("A", "Author", 1), new Book("B", "Author", 2),
+				new Book("C", "Author", 3));
+		assertFalse(cached.writeBatch(inserts, Collections.<Book>emptyList(), Collections.<Integer>emptyList()));
+		assertEquals(12, cached.listAllBooks().size());
+		assertEquals(Arrays.asList(11, 12, 13), ids(inserts));
+		assertTrue(cached.writeBatch(inserts, Collections.<Book>emptyList(), Collections.<Integer>emptyList()));
+		assertEquals(13, cached.listAllBooks().size());
+
+		failures.set(1);
+		WriteBehindBookDAO writeBehind = new WriteBehindBookDAO(cached, 100, 0, 1000, null, false);
+		try {
+			for (int i = 0; i < SHARDS; i++) {
+				writeBehind.insertBook(new Book("Queued " + i, "Author", i));
+			}
+			assertTrue(writeBehind.awaitFlushed(writeBehind.getSubmittedSequence(), 5000));
+			assertEquals(1, writeBehind.getFailedFlushCount());
+		} finally {
+			writeBehind.close();
+		}
+		List<Book> all = cached.listAllBooks();
+		assertEquals(16, all.size());
+		Set<String> titles = new HashSet<>();
+		for (Book book : all) {
+			assertTrue(titles.add(book.getTitle()));
+		}
+		assertEquals("Queued 2", cached.getBook(16).getTitle());
+	}
+
+	private static List<Integer> ids(List<Book> books) {
+		List<Integer> ids = new ArrayList<>();
+		for (Book book : books) {
+			ids.add(book.getId());
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,58 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotBookDAOTest {
+	private TempDatabase database;
+	private DBConnection dbConnection;
+	private SnapshotBookDAO bookDAO;
+
+	@Before
+	public void setUp() throws Exception {
+		database = new TempDatabase();
+		dbConnection = database.connect();
+		bookDAO = new SnapshotBookDAO(new BookDAO(dbConnection.getConnectionPool()));
+	}
+
+	@After
+	public void tearDown() {
+		bookDAO.close();
+		database.delete();
+	}
+
+	@Test
+	public void servesReadsFromSnapshot() {
+		assertEquals("1984", bookDAO.getBook(1).getTitle());
+		assertEquals(1, bookDAO.listBooks(0, 10).size());
+		assertEquals(2, bookDAO.getSnapshotReadCount());
+		assertEquals(0, bookDAO.getStaleReadCount());
+	}
+
+	@Test
+	public void readsOwnWritesBeforeRebuild() {
+		bookDAO.insertBook(new Book("Brave New World", "Aldous Huxley", 3.0f));
+		bookDAO.updateBook(new Book(1, "Animal Farm", "George Orwell", 2.0f));
+
+		// whether or not the rebuild has finished, the writes are visible
+		assertEquals("Animal Farm", bookDAO.getBook(1).getTitle());
+		assertEquals(2, bookDAO.listAllBooks().size());
+	}
+
+	@Test
+	public void swapsInRebuiltSnapshot() throws Exception {
+		bookDAO.deleteBook(1);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (bookDAO.getSnapshot().getVersion() != bookDAO.getCatalogVersion()
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertEquals(0, bookDAO.getSnapshot().size());
+		assertNull(bookDAO.getBook(1));
+		assertTrue(bookDAO.getRebuildCount() >= 2);
+	}
+}
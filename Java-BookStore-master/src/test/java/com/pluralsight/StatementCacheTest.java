@@ -0,0 +1,67 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatementCacheTest {
+	private Connection connection;
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+	private LongAdder evictions = new LongAdder();
+	private StatementCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+		cache = new StatementCache(connection, 2, hits, misses, evictions);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		cache.clear();
+		connection.close();
+	}
+
+	@Test
+	public void reusesStatementForSameSql() throws Exception {
+		PreparedStatement first = cache.prepare("SELECT 1");
+		PreparedStatement second = cache.prepare("SELECT 1");
+		assertSame(first, second);
+		assertEquals(1, hits.sum());
+		assertEquals(1, misses.sum());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() throws Exception {
+		PreparedStatement one = cache.prepare("SELECT 1");
+		PreparedStatement two = cache.prepare("SELECT 2");
+		cache.prepare("SELECT 1");
+		cache.prepare("SELECT 3");
+
+		assertEquals(2, cache.size());
+		assertEquals(1, evictions.sum());
+		assertTrue(two.isClosed());
+		assertFalse(one.isClosed());
+	}
+
+	@Test
+	public void dropsBatchLeftByPreviousUser() throws Exception {
+		connection.createStatement().execute("CREATE TABLE t (x INTEGER)");
+		PreparedStatement abandoned = cache.prepare("INSERT INTO t VALUES (?)");
+		abandoned.setInt(1, 1);
+		abandoned.addBatch();
+
+		PreparedStatement statement = cache.prepare("INSERT INTO t VALUES (?)");
+		statement.setInt(1, 2);
+		statement.addBatch();
+		assertEquals(1, statement.executeBatch().length);
+	}
+}
@@ -0,0 +1,58 @@
+package com.pluralsight;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A throwaway SQLite database for a test. connect opens a DBConnection on it,
+ * or on one of its shards given ShardedBookDAO.shardSettings(settings(), ...);
+ * delete closes them all and removes every file they used, including the
+ * -wal and -shm files SQLite keeps next to a database in WAL mode.
+ */
+class TempDatabase {
+	private static final String URL_PREFIX = "jdbc:sqlite:";
+
+	private final File file;
+	private final List<DBConnection> dbConnections = new ArrayList<>();
+	private final List<File> files = new ArrayList<>();
+
+	TempDatabase() throws IOException {
+		file = File.createTempFile("bookstore", ".db");
+		file.delete();
+	}
+
+	/** Settings whose db.url names this database. */
+	Properties settings() {
+		Properties settings = new Properties();
+		settings.setProperty("db.url", URL_PREFIX + file.getAbsolutePath());
+		return settings;
+	}
+
+	DBConnection connect() {
+		return connect(settings());
+	}
+
+	DBConnection connect(Properties settings) {
+		files.add(new File(settings.getProperty("db.url").substring(URL_PREFIX.length())));
+		DBConnection dbConnection = new DBConnection(settings);
+		dbConnections.add(dbConnection);
+		return dbConnection;
+	}
+
+	void delete() {
+		for (DBConnection dbConnection : dbConnections) {
+			dbConnection.disconnect();
+		}
+		dbConnections.clear();
+		for (File database : files) {
+			database.delete();
+			new File(database.getPath() + "-wal").delete();
+			new File(database.getPath() + "-shm").delete();
+			new File(database.getPath() + "-journal").delete();
+		}
+		files.clear();
+	}
+}
@@ -0,0 +1,218 @@
+package com.pluralsight;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteBehindBookDAOTest {
+	private TempDatabase tempDatabase;
+	private Path journalPath;
+	private DBConnection dbConnection;
+	private BookDAO database;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDatabase = new TempDatabase();
+		journalPath = Files.createTempDirectory("bookstore-journal").resolve("book_store.journal");
+		dbConnection = tempDatabase.connect();
+		database = new BookDAO(dbConnection.getConnectionPool());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		tempDatabase.delete();
+		try (Stream<Path> files = Files.list(journalPath.getParent())) {
+			files.forEach(file -> file.toFile().delete());
+		}
+		Files.deleteIfExists(journalPath.getParent());
+	}
+
+	@Test
+	public void coalescesMutationsPerId() {
+		WriteBehindBookDAO.Batch batch = new WriteBehindBookDAO.Batch();
+		assertFalse(batch.update(new Book(1, "A", "a", 1)));
+		assertTrue(batch.update(new Book(1, "B", "b", 2)));
+		assertFalse(batch.update(new Book(2, "C", "c", 3)));
+		assertTrue(batch.delete(2));
+		assertTrue(batch.update(new Book(2, "D", "d", 4)));
+
+		assertEquals("B", batch.updates.get(1).getTitle());
+		assertFalse(batch.updates.containsKey(2));
+		assertTrue(batch.deletes.contains(2));
+		assertEquals(2, batch.size());
+	}
+
+	@Test
+	public void flushesQueuedWritesInOneTransaction() {
+		WriteBehindBookDAO bookDAO = new WriteBehindBookDAO(database, 100, 50, 1000, journalPath, false);
+		try {
+			bookDAO.insertBook(new Book("Brave New World", "Aldous Huxley", 3.0f));
+			bookDAO.updateBook(new Book(1, "Animal Farm", "George Orwell", 2.0f));
+			bookDAO.updateBook(new Book(1, "Homage to Catalonia", "George Orwell", 2.5f));
+
+			assertTrue(bookDAO.awaitFlushed(bookDAO.getSubmittedSequence(), 5000));
+			assertEquals("Homage to Catalonia", database.getBook(1).getTitle());
+			assertEquals(2, database.listAllBooks().size());
+			assertEquals(3, bookDAO.getSubmittedCount());
+			assertEquals(1, bookDAO.getCoalescedCount());
+			assertEquals(1, bookDAO.getFlushCount());
+		} finally {
+			bookDAO.close();
+		}
+	}
+
+	@Test
+	public void closeFlushesWhatIsQueued() throws Exception {
+		WriteBehindBookDAO bookDAO = new WriteBehindBookDAO(database, 100, 60000, 1000, journalPath, false);
+		bookDAO.deleteBook(1);
+		bookDAO.close();
+
+		assertNull(database.getBook(1));
+		try (Stream<Path> files = Files.list(journalPath.getParent())) {
+			assertEquals(0, files.count());
+		}
+	}
+
+	@Test
+	public void retriesFlushesThatThrow() {
+		AtomicInteger failures = new AtomicInteger(2);
+		BookDAO flaky = new BookDAO(dbConnection.getConnectionPool()) {
+			@Override
+			public boolean writeBatch(Collection<Book> inserts, Collection<Book> updates, Collection<Integer> deletes) {
+				if (failures.getAndDecrement() > 0) {
+					throw new IllegalStateException("simulated driver failure");
+				}
+				return super.writeBatch(inserts, updates, deletes);
+			}
+		};
+		WriteBehindBookDAO bookDAO = new WriteBehindBookDAO(flaky, 100, 0, 1000, null, false);
+		try {
+			bookDAO.deleteBook(1);
+			assertTrue(bookDAO.awaitFlushed(bookDAO.getSubmittedSequence(), 5000));
+			assertEquals(2, bookDAO.getFailedFlushCount());
+			assertNull(database.getBook(1));
+
+			// the writer is still alive for later submissions
+			bookDAO.insertBook(new Book("Burmese Days", "George Orwell", 3.0f));
+			assertTrue(bookDAO.awaitFlushed(bookDAO.getSubmittedSequence(), 5000));
+			assertEquals("Burmese Days", database.listAllBooks().get(0).getTitle());
+		} finally {
+			bookDAO.close();
+		}
+	}
+
+	@Test
+	public void rejectsWritesWhenQueueIsFull() {
+		WriteBehindBookDAO bookDAO = new WriteBehindBookDAO(database, 1, 60000, 10, null, false);
+		try {
+			assertTrue(bookDAO.insertBook(new Book("One", "A", 1)));
+			assertFalse(bookDAO.insertBook(new Book("Two", "B", 2)));
+			assertEquals(1, bookDAO.getRejectedCount());
+		} finally {
+			bookDAO.close();
+		}
+	}
+
+	@Test
+	public void replaysJournalLeftByACrash() throws Exception {
+		WriteBehindJournal journal = new WriteBehindJournal(journalPath, false);
+		journal.appendInsert(new Book("Tab\tand\nnewline", "Author \\ slash", 4.0f));
+		journal.appendUpdate(new Book(1, "Animal Farm", "George Orwell", 2.0f));
+		journal.close();
+		// a torn last line
+		Files.write(journalPath.resolveSibling("book_store.journal.1"), "D\t1".getBytes(),
+				StandardOpenOption.APPEND);
+
+		WriteBehindBookDAO bookDAO = new WriteBehindBookDAO(database, 100, 50, 1000, journalPath, false);
+		bookDAO.close();
+
+		assertEquals("Animal Farm", database.getBook(1).getTitle());
+		Book replayed = database.getBook(2);
+		assertEquals("Tab\tand\nnewline", replayed.getTitle());
+		assertEquals("Author \\ slash", replayed.getAuthor());
+	}
+
+	@Test
+	public void replayingACommittedSegmentAddsNothing() throws Exception {
+		WriteBehindBookDAO bookDAO = new WriteBehindBookDAO(database, 100, 60000, 1000, journalPath, false);
+		bookDAO.insertBook(new Book("Burmese Days", "George Orwell", 3.0f));
+		bookDAO.insertBook(new Book("Coming Up for Air", "George Orwell", 4.0f));
+		Path segment = journalPath.resolveSibling("book_store.journal.1");
+		byte[] journaled = Files.readAllBytes(segment);
+		bookDAO.close();
+		// as if the process died between the commit and the segment delete
+		Files.write(segment, journaled);
+
+		bookDAO = new WriteBehindBookDAO(database, 100, 50, 1000, journalPath, false);
+		try {
+			assertEquals(3, database.listAllBooks().size());
+			assertEquals("Coming Up for Air", database.getBook(3).getTitle());
+
+			bookDAO.insertBook(new Book("Keep the Aspidistra Flying", "George Orwell", 5.0f));
+			assertTrue(bookDAO.awaitFlushed(bookDAO.getSubmittedSequence(), 5000));
+			assertEquals("Keep the Aspidistra Flying", database.getBook(4).getTitle());
+		} finally {
+			bookDAO.close();
+		}
+	}
+
+	@Test
+	public void importsDoNotTakeTheIdsOfQueuedInserts() {
+		WriteBehindBookDAO bookDAO = new WriteBehindBookDAO(database, 100, 60000, 1000, null, false);
+		try {
+			bookDAO.insertBook(new Book("Burmese Days", "George Orwell", 3.0f));
+			assertEquals(1, bookDAO.insertBooks(Collections.singletonList(new Book("Imported", "Someone", 1.0f)), 10));
+			assertEquals("Imported", database.getBook(3).getTitle());
+		} finally {
+			bookDAO.close();
+		}
+		assertEquals("Burmese Days", database.getBook(2).getTitle());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesBooksTheTableCannotHold() {
+		WriteBehindBookDAO bookDAO = new WriteBehindBookDAO(database, 100, 50, 1000, null, false);
+		try {
+			bookDAO.insertBook(new Book(null, "George Orwell", 1.0f));
+		} finally {
+			bookDAO.close();
+		}
+	}
+
+	@Test
+	public void journalKeepsNullsNull() {
+		assertNull(WriteBehindJournal.unescape(WriteBehindJournal.escape(null)));
+		assertEquals("", WriteBehindJournal.unescape(WriteBehindJournal.escape("")));
+		assertEquals("\\N", WriteBehindJournal.unescape(WriteBehindJournal.escape("\\N")));
+	}
+
+	@Test
+	public void deadLettersOnlyTheMutationThatKeepsFailing() throws Exception {
+		WriteBehindJournal journal = new WriteBehindJournal(journalPath, false);
+		journal.appendInsert(new Book(2, "Burmese Days", "George Orwell", 3.0f));
+		journal.appendInsert(new Book(3, null, "Nobody", 1.0f));
+		journal.appendUpdate(new Book(1, "Animal Farm", "George Orwell", 2.0f));
+		journal.close();
+
+		WriteBehindBookDAO bookDAO = new WriteBehindBookDAO(database, 100, 50, 1000, journalPath, false);
+		bookDAO.close();
+
+		assertEquals(WriteBehindBookDAO.MAX_FLUSH_ATTEMPTS, bookDAO.getFailedFlushCount());
+		assertEquals(1, bookDAO.getDeadLetterCount());
+		assertEquals("Animal Farm", database.getBook(1).getTitle());
+		assertEquals(2, database.listAllBooks().size());
+		List<String> deadLetters = Files.readAllLines(journalPath.resolveSibling("book_store.journal.dead"));
+		assertEquals(Collections.singletonList("I\t3\t\\N\tNobody\t1.0"), deadLetters);
+	}
+}
@@ -0,0 +1,230 @@
+package data;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An endless stream of training batches of augmented corpus samples, made by
+ * background threads just ahead of the trainer.
+ *
+ * An epoch is copies passes over the corpus in a shuffled order, every pass
+ * with fresh Augmenter distortions, cut into batches of batchSize (the last
+ * may be smaller). Nothing is written to disk and nothing is generated much
+ * before it is needed: each worker keeps at most its share of prefetch batches
+ * ready, and blocks until the trainer hands one back.
+ *
+ * Worker w makes batches w, w + threads, w + 2 * threads and so on, each from
+ * a Random seeded by the batch number, and next() takes them in order from
+ * the workers in turn. The stream is therefore the same for a given seed
+ * whatever the thread count or scheduling.
+ */
+public final class AugmentedBatches implements AutoCloseable {
+
+    private final Corpus corpus;
+    private final Augmenter augmenter;
+    private final int batchSize;
+    private final int epochSize;
+    private final int batchesPerEpoch;
+    private final long seed;
+    private final Worker[] workers;
+    private long taken;
+    private Batch current;
+
+    public AugmentedBatches(Corpus corpus, Augmenter augmenter, int batchSize, int copies, int threads,
+                            int prefetch, long seed) {
+        if (corpus.size() == 0)
+            throw new IllegalArgumentException("Cannot augment an empty corpus");
+        if (batchSize < 1 || copies < 1 || threads < 1)
+            throw new IllegalArgumentException("batchSize, copies and threads must be positive");
+        this.corpus = corpus;
+        this.augmenter = augmenter;
+        this.batchSize = batchSize;
+        this.epochSize = corpus.size() * copies;
+        this.batchesPerEpoch = (epochSize + batchSize - 1) / batchSize;
+        this.seed = seed;
+
+        int ready = Math.max(1, prefetch / threads);
+        workers = new Worker[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Worker(w, threads, ready);
+        }
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getBatchesPerEpoch() {
+        return batchesPerEpoch;
+    }
+
+    /** Samples per epoch. */
+    public int getEpochSize() {
+        return epochSize;
+    }
+
+    /**
+     * Waits for the next batch. It stays valid until the following call, when
+     * its buffers go back to the worker that filled it.
+     */
+    public Batch next() throws InterruptedException {
+        if (current != null) {
+            workers[current.worker].free.put(current);
+            current = null;
+        }
+        Worker worker = workers[(int) (taken % workers.length)];
+        Batch batch = worker.ready.take();
+        if (batch.failure != null)
+            throw new IllegalStateException("Augmentation worker failed", batch.failure);
+        taken++;
+        current = batch;
+        return batch;
+    }
+
+    /** Stops the workers; batches not taken yet are dropped. */
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            worker.thread.interrupt();
+        }
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AugmentedBatches(" + augmenter + ", " + epochSize + " samples in " + batchesPerEpoch
+                + " batches per epoch, " + workers.length + " threads)";
+    }
+
+    /** Samples laid out as Trainer.trainBatch takes them: 0/1 pixels and one-hot labels. */
+    public static final class Batch {
+
+        final int worker;
+        final float[] inputs;
+        final float[] targets;
+        int count;
+        int epoch;
+        RuntimeException failure;
+
+        Batch(int worker, int batchSize) {
+            this.worker = worker;
+            this.inputs = new float[batchSize * Glyphs.PIXELS];
+            this.targets = new float[batchSize * Corpus.CLASSES];
+        }
+
+        public float[] getInputs() {
+            return inputs;
+        }
+
+        public float[] getTargets() {
+            return targets;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getEpoch() {
+            return epoch;
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        final Thread thread;
+        final BlockingQueue<Batch> free;
+        final BlockingQueue<Batch> ready;
+        private final int index;
+        private final int stride;
+        private final Random random = new Random();
+        private final long[] original = new long[Glyphs.WORDS];
+        private final long[] augmented = new long[Glyphs.WORDS];
+        private final long[] scratch = new long[Glyphs.WORDS];
+        private int[] order;
+        private int orderEpoch = -1;
+
+        Worker(int index, int stride, int capacity) {
+            this.index = index;
+            this.stride = stride;
+            // one more buffer than fits in ready, for the batch the trainer holds
+            free = new ArrayBlockingQueue<>(capacity + 1);
+            ready = new ArrayBlockingQueue<>(capacity + 1);
+            for (int i = 0; i <= capacity; i++) {
+                free.add(new Batch(index, batchSize));
+            }
+            thread = new Thread(this, "augment-" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (long number = index; ; number += stride) {
+                    Batch batch = free.take();
+                    try {
+                        fill(batch, number);
+                    } catch (RuntimeException e) {
+                        batch.failure = e;
+                        ready.put(batch);
+                        return;
+                    }
+                    ready.put(batch);
+                }
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }
+
+        private void fill(Batch batch, long number) {
+            int epoch = (int) (number / batchesPerEpoch);
+            int from = (int) (number % batchesPerEpoch) * batchSize;
+            int count = Math.min(batchSize, epochSize - from);
+            int[] order = order(epoch);
+
+            random.setSeed(seed * 0x9E3779B97F4A7C15L + number);
+            Arrays.fill(batch.targets, 0, count * Corpus.CLASSES, 0f);
+            for (int s = 0; s < count; s++) {
+                int sample = order[from + s] % corpus.size();
+                corpus.copyBits(sample, original, 0);
+                augmenter.augment(original, 0, augmented, 0, random, scratch);
+                Glyphs.toFloats(augmented, 0, batch.inputs, s * Glyphs.PIXELS);
+                batch.targets[s * Corpus.CLASSES + corpus.getLabel(sample)] = 1f;
+            }
+            batch.count = count;
+            batch.epoch = epoch;
+        }
+
+        // The epoch's shuffled visiting order; every worker derives the same one
+        private int[] order(int epoch) {
+            if (epoch != orderEpoch) {
+                if (order == null) {
+                    order = new int[epochSize];
+                }
+                for (int i = 0; i < epochSize; i++) {
+                    order[i] = i;
+                }
+                Random shuffle = new Random(seed + 31L * epoch);
+                for (int i = epochSize - 1; i > 0; i--) {
+                    int j = shuffle.nextInt(i + 1);
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                }
+                orderEpoch = epoch;
+            }
+            return order;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package data;
+
+import java.util.Random;
+
+/**
+ * Random distortions of packed glyphs (see Glyphs), for training on more
+ * variations of a letter than were drawn.
+ *
+ * A sample is thickened or thinned, rotated, moved and given stroke noise,
+ * each step with its own random amount. Translation, dilation and erosion
+ * work a word at a time on the bits: moving a glyph one column is a 20-bit
+ * shift of the whole bitmap and one row a 1-bit shift with the row that
+ * wrapped between columns masked off. Rotation maps pixel by pixel.
+ *
+ * All operations read one glyph and write another; src and dst must not be
+ * the same words. The settings are immutable, so one Augmenter can serve any
+ * number of threads as long as each brings its own Random and scratch.
+ */
+public final class Augmenter {
+
+    private static final long[] VALID = new long[Glyphs.WORDS];
+    // ROWS_ABOVE[k] has the bits of rows 0 .. k-1 in every column
+    private static final long[][] ROWS_ABOVE = new long[Glyphs.SIZE + 1][Glyphs.WORDS];
+
+    static {
+        for (int pixel = 0; pixel < Glyphs.PIXELS; pixel++) {
+            Glyphs.set(VALID, 0, pixel);
+            for (int k = pixel % Glyphs.SIZE + 1; k <= Glyphs.SIZE; k++) {
+                Glyphs.set(ROWS_ABOVE[k], 0, pixel);
+            }
+        }
+    }
+
+    private final int maxShift;
+    private final double maxRadians;
+    private final double strokeRate;
+    private final double noiseRate;
+
+    /** Up to 2 pixels of shift, 12 degrees of rotation, mild stroke changes. */
+    public Augmenter() {
+        this(2, 12, 0.3, 0.02);
+    }
+
+    /**
+     * @param maxShift pixels the glyph may move in each direction
+     * @param maxDegrees rotation either way
+     * @param strokeRate chance of dilating, and again of eroding, a sample
+     * @param noiseRate chance of each pixel next to the stroke being set, and
+     *        half that of each stroke pixel being cleared
+     */
+    public Augmenter(int maxShift, double maxDegrees, double strokeRate, double noiseRate) {
+        this.maxShift = maxShift;
+        this.maxRadians = Math.toRadians(maxDegrees);
+        this.strokeRate = strokeRate;
+        this.noiseRate = noiseRate;
+    }
+
+    /**
+     * Writes a random variation of the glyph at src[srcOffset] to dst[dstOffset].
+     * scratch needs Glyphs.WORDS longs.
+     */
+    public void augment(long[] src, int srcOffset, long[] dst, int dstOffset, Random random, long[] scratch) {
+        double stroke = random.nextDouble();
+        if (stroke < strokeRate) {
+            dilate(src, srcOffset, scratch, 0);
+        } else if (stroke < 2 * strokeRate) {
+            erode(src, srcOffset, scratch, 0);
+            // strokes one pixel wide do not survive erosion
+            if (Glyphs.count(scratch, 0) * 2 < Glyphs.count(src, srcOffset))
+                System.arraycopy(src, srcOffset, scratch, 0, Glyphs.WORDS);
+        } else {
+            System.arraycopy(src, srcOffset, scratch, 0, Glyphs.WORDS);
+        }
+
+        rotate(scratch, 0, dst, dstOffset, (random.nextDouble() * 2 - 1) * maxRadians);
+
+        // keep the whole glyph inside the frame
+        int minColumn = Glyphs.SIZE, maxColumn = -1, minRow = Glyphs.SIZE, maxRow = -1;
+        for (int w = 0; w < Glyphs.WORDS; w++) {
+            for (long word = dst[dstOffset + w]; word != 0; word &= word - 1) {
+                int pixel = (w << 6) + Long.numberOfTrailingZeros(word);
+                int column = pixel / Glyphs.SIZE;
+                int row = pixel % Glyphs.SIZE;
+                minColumn = Math.min(minColumn, column);
+                maxColumn = Math.max(maxColumn, column);
+                minRow = Math.min(minRow, row);
+                maxRow = Math.max(maxRow, row);
+            }
+        }
+        int dx = 0, dy = 0;
+        if (maxColumn >= 0) {
+            dx = randomShift(random, -minColumn, Glyphs.SIZE - 1 - maxColumn);
+            dy = randomShift(random, -minRow, Glyphs.SIZE - 1 - maxRow);
+        }
+        translate(dst, dstOffset, scratch, 0, dx, dy);
+
+        addStrokeNoise(scratch, 0, dst, dstOffset, random, noiseRate, noiseRate / 2);
+    }
+
+    /** Moves the glyph dx columns right and dy rows down; pixels pushed out are lost. */
+    public static void translate(long[] src, int srcOffset, long[] dst, int dstOffset, int dx, int dy) {
+        int shift = dx * Glyphs.SIZE + dy;
+        for (int w = 0; w < Glyphs.WORDS; w++) {
+            long word = shifted(src, srcOffset, w, shift);
+            if (dy > 0)
+                word &= ~ROWS_ABOVE[Math.min(dy, Glyphs.SIZE)][w];
+            else if (dy < 0)
+                word &= ROWS_ABOVE[Math.max(Glyphs.SIZE + dy, 0)][w];
+            dst[dstOffset + w] = word;
+        }
+    }
+
+    /** Thickens strokes by a pixel down and to the right (a 2x2 structuring element). */
+    public static void dilate(long[] src, int srcOffset, long[] dst, int dstOffset) {
+        for (int w = 0; w < Glyphs.WORDS; w++) {
+            long notTop = ~ROWS_ABOVE[1][w];
+            dst[dstOffset + w] = src[srcOffset + w]
+                    | shifted(src, srcOffset, w, 1) & notTop
+                    | shifted(src, srcOffset, w, Glyphs.SIZE)
+                    | shifted(src, srcOffset, w, Glyphs.SIZE + 1) & notTop;
+        }
+    }
+
+    /** Keeps only the pixels whose 2x2 block down and to the right is all set; the dual of dilate. */
+    public static void erode(long[] src, int srcOffset, long[] dst, int dstOffset) {
+        for (int w = 0; w < Glyphs.WORDS; w++) {
+            long notBottom = ROWS_ABOVE[Glyphs.SIZE - 1][w];
+            dst[dstOffset + w] = src[srcOffset + w]
+                    & shifted(src, srcOffset, w, -1) & notBottom
+                    & shifted(src, srcOffset, w, -Glyphs.SIZE)
+                    & shifted(src, srcOffset, w, -Glyphs.SIZE - 1) & notBottom;
+        }
+    }
+
+    /** Rotates clockwise by radians about the centre, nearest neighbour. */
+    public static void rotate(long[] src, int srcOffset, long[] dst, int dstOffset, double radians) {
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        double center = (Glyphs.SIZE - 1) / 2.0;
+        for (int w = 0; w < Glyphs.WORDS; w++) {
+            dst[dstOffset + w] = 0;
+        }
+        for (int column = 0; column < Glyphs.SIZE; column++) {
+            double x = column - center;
+            for (int row = 0; row < Glyphs.SIZE; row++) {
+                double y = row - center;
+                int sourceColumn = (int) Math.round(cos * x + sin * y + center);
+                int sourceRow = (int) Math.round(-sin * x + cos * y + center);
+                if (sourceColumn >= 0 && sourceColumn < Glyphs.SIZE && sourceRow >= 0 && sourceRow < Glyphs.SIZE
+                        && Glyphs.get(src, srcOffset, Glyphs.pixel(sourceColumn, sourceRow)))
+                    Glyphs.set(dst, dstOffset, Glyphs.pixel(column, row));
+            }
+        }
+    }
+
+    /**
+     * Roughens the stroke: sets each empty pixel touching it (8-neighbourhood)
+     * with probability addRate and clears each stroke pixel with probability
+     * dropRate.
+     */
+    public static void addStrokeNoise(long[] src, int srcOffset, long[] dst, int dstOffset, Random random,
+                                      double addRate, double dropRate) {
+        for (int w = 0; w < Glyphs.WORDS; w++) {
+            long word = src[srcOffset + w];
+            long notTop = ~ROWS_ABOVE[1][w];
+            long notBottom = ROWS_ABOVE[Glyphs.SIZE - 1][w];
+            long near = shifted(src, srcOffset, w, 1) & notTop
+                    | shifted(src, srcOffset, w, -1) & notBottom;
+            for (int side = -Glyphs.SIZE; side <= Glyphs.SIZE; side += 2 * Glyphs.SIZE) {
+                near |= shifted(src, srcOffset, w, side)
+                        | shifted(src, srcOffset, w, side + 1) & notTop
+                        | shifted(src, srcOffset, w, side - 1) & notBottom;
+            }
+            long out = word;
+            if (addRate > 0) {
+                for (long ring = near & ~word; ring != 0; ring &= ring - 1) {
+                    if (random.nextDouble() < addRate)
+                        out |= Long.lowestOneBit(ring);
+                }
+            }
+            if (dropRate > 0) {
+                for (long on = word; on != 0; on &= on - 1) {
+                    if (random.nextDouble() < dropRate)
+                        out &= ~Long.lowestOneBit(on);
+                }
+            }
+            dst[dstOffset + w] = out;
+        }
+    }
+
+    // min <= 0 <= max, since the glyph starts inside the frame
+    private int randomShift(Random random, int min, int max) {
+        int low = Math.max(-maxShift, min);
+        int high = Math.min(maxShift, max);
+        return low + random.nextInt(high - low + 1);
+    }
+
+    // Word w of the glyph with every pixel moved shift places up the bit order
+    private static long shifted(long[] src, int offset, int w, int shift) {
+        int start = (w << 6) - shift;
+        if (start <= -64 || start >= Glyphs.PIXELS)
+            return 0;
+        int word = Math.floorDiv(start, 64);
+        int bit = Math.floorMod(start, 64);
+        long low = word >= 0 ? src[offset + word] : 0;
+        long value;
+        if (bit == 0) {
+            value = low;
+        } else {
+            long high = word + 1 < Glyphs.WORDS ? src[offset + word + 1] : 0;
+            value = (low >>> bit) | (high << (64 - bit));
+        }
+        return value & VALID[w];
+    }
+
+    @Override
+    public String toString() {
+        return "Augmenter(shift=" + maxShift + ", degrees=" + Math.round(Math.toDegrees(maxRadians))
+                + ", stroke=" + strokeRate + ", noise=" + noiseRate + ")";
+    }
+}
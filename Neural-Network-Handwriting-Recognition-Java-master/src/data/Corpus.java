@@ -0,0 +1,64 @@
+package data;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * The training samples, all of them in two buffers: Glyphs.WORDS longs of
+ * pixels per sample and one label byte per sample (0 for A ... 25 for Z).
+ * Loaded by CorpusLoader, either parsed from the letter files or mapped
+ * straight from its cache file. Reading a sample allocates nothing.
+ */
+public final class Corpus {
+
+    public static final int CLASSES = 26;
+
+    private final LongBuffer bits;
+    private final ByteBuffer labels;
+    private final int size;
+
+    Corpus(LongBuffer bits, ByteBuffer labels, int size) {
+        this.bits = bits;
+        this.labels = labels;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getLabel(int sample) {
+        return labels.get(sample);
+    }
+
+    public char getLetter(int sample) {
+        return (char) ('A' + getLabel(sample));
+    }
+
+    public boolean getPixel(int sample, int pixel) {
+        return (bits.get(sample * Glyphs.WORDS + (pixel >>> 6)) & (1L << pixel)) != 0;
+    }
+
+    public void copyBits(int sample, long[] out, int offset) {
+        int base = sample * Glyphs.WORDS;
+        for (int w = 0; w < Glyphs.WORDS; w++) {
+            out[offset + w] = bits.get(base + w);
+        }
+    }
+
+    /** See Glyphs.toFloats. */
+    public void toFloats(int sample, float[] out, int outOffset) {
+        int base = sample * Glyphs.WORDS;
+        for (int w = 0; w < Glyphs.WORDS; w++) {
+            Glyphs.wordToFloats(bits.get(base + w), w, out, outOffset);
+        }
+    }
+
+    LongBuffer bits() {
+        return bits.duplicate();
+    }
+
+    ByteBuffer labels() {
+        return labels.duplicate();
+    }
+}
@@ -0,0 +1,189 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the training corpus from resources/A.txt ... Z.txt, one sample per
+ * line as 400 '0'/'1' characters.
+ *
+ * The first load parses the text and writes the packed result to a cache
+ * file; later loads memory-map that file instead, as long as the letter files
+ * have not changed since. The cache holds a 32-byte header (magic, version,
+ * sample count, words per sample, fingerprint of the letter files), the label
+ * bytes padded to a multiple of 8, then the pixel words, all little-endian.
+ */
+public final class CorpusLoader {
+
+    private static final int MAGIC = 0x46594c47; // "GLYF"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    private CorpusLoader() {
+    }
+
+    public static Corpus load() throws IOException {
+        return load(Paths.get("resources"));
+    }
+
+    public static Corpus load(Path directory) throws IOException {
+        String name = "handwriting-corpus-"
+                + Integer.toHexString(directory.toAbsolutePath().normalize().hashCode()) + ".bin";
+        return load(directory, Paths.get(System.getProperty("java.io.tmpdir"), name));
+    }
+
+    /** With a null cacheFile the letter files are parsed every time. */
+    public static Corpus load(Path directory, Path cacheFile) throws IOException {
+        long fingerprint = fingerprint(directory);
+        if (cacheFile != null && Files.isRegularFile(cacheFile)) {
+            Corpus cached = map(cacheFile, fingerprint);
+            if (cached != null)
+                return cached;
+        }
+
+        Corpus corpus = parse(directory);
+        if (cacheFile != null) {
+            try {
+                write(corpus, cacheFile, fingerprint);
+            } catch (IOException e) {
+                System.err.println("Could not write corpus cache " + cacheFile + ": " + e.getMessage());
+            }
+        }
+        return corpus;
+    }
+
+    static Corpus parse(Path directory) throws IOException {
+        long[] bits = new long[64 * Glyphs.WORDS];
+        byte[] labels = new byte[64];
+        int size = 0;
+
+        for (int label = 0; label < Corpus.CLASSES; label++) {
+            Path file = letterFile(directory, label);
+            if (!Files.isRegularFile(file))
+                continue;
+
+            byte[] text = Files.readAllBytes(file);
+            int line = 0;
+            int start = 0;
+            while (start < text.length) {
+                int end = start;
+                while (end < text.length && text[end] != '\n') {
+                    end++;
+                }
+                int next = end + 1;
+                if (end > start && text[end - 1] == '\r')
+                    end--;
+                line++;
+
+                if (end > start) {
+                    if (end - start != Glyphs.PIXELS)
+                        throw new IOException(file + ":" + line + ": expected " + Glyphs.PIXELS
+                                + " pixels, found " + (end - start));
+                    if (size == labels.length) {
+                        labels = Arrays.copyOf(labels, size * 2);
+                        bits = Arrays.copyOf(bits, size * 2 * Glyphs.WORDS);
+                    }
+                    int offset = size * Glyphs.WORDS;
+                    for (int i = 0; i < Glyphs.PIXELS; i++) {
+                        byte c = text[start + i];
+                        if (c == '1')
+                            Glyphs.set(bits, offset, i);
+                        else if (c != '0')
+                            throw new IOException(file + ":" + line + ": unexpected character '" + (char) c + "'");
+                    }
+                    labels[size++] = (byte) label;
+                }
+                start = next;
+            }
+        }
+
+        return new Corpus(LongBuffer.wrap(Arrays.copyOf(bits, size * Glyphs.WORDS)),
+                ByteBuffer.wrap(Arrays.copyOf(labels, size)), size);
+    }
+
+    // null if the file is not a cache of these letter files
+    private static Corpus map(Path cacheFile, long fingerprint) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES)
+                return null;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        int size = buffer.getInt(8);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(12) != Glyphs.WORDS
+                || buffer.getLong(16) != fingerprint || size < 0
+                || buffer.capacity() != fileLength(size))
+            return null;
+
+        ByteBuffer labels = slice(buffer, HEADER_BYTES, size);
+        LongBuffer bits = slice(buffer, bitsOffset(size), size * Glyphs.WORDS * 8).asLongBuffer();
+        return new Corpus(bits, labels, size);
+    }
+
+    private static void write(Corpus corpus, Path cacheFile, long fingerprint) throws IOException {
+        int size = corpus.size();
+        ByteBuffer buffer = ByteBuffer.allocate(fileLength(size)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(Glyphs.WORDS).putLong(fingerprint);
+        buffer.position(HEADER_BYTES);
+        buffer.put(corpus.labels());
+        buffer.position(bitsOffset(size));
+        buffer.asLongBuffer().put(corpus.bits());
+        buffer.rewind();
+
+        // written aside and moved into place, so a reader never maps half a file
+        Path temp = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), "corpus", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Changes whenever a letter file is added, removed, resized or touched
+    private static long fingerprint(Path directory) throws IOException {
+        long fingerprint = directory.toAbsolutePath().normalize().hashCode();
+        for (int label = 0; label < Corpus.CLASSES; label++) {
+            Path file = letterFile(directory, label);
+            fingerprint *= 31;
+            if (Files.isRegularFile(file))
+                fingerprint += Files.size(file) * 1000003 + Files.getLastModifiedTime(file).toMillis();
+        }
+        return fingerprint;
+    }
+
+    private static Path letterFile(Path directory, int label) {
+        return directory.resolve((char) ('A' + label) + ".txt");
+    }
+
+    private static int bitsOffset(int size) {
+        return HEADER_BYTES + ((size + 7) & ~7);
+    }
+
+    private static int fileLength(int size) {
+        return bitsOffset(size) + size * Glyphs.WORDS * 8;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,74 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 20x20 glyphs packed one bit per pixel into 7 longs. Pixel i is bit i % 64 of
+ * word i / 64, numbered the way CustomPanel.getPixels() lists them: column by
+ * column, each column top to bottom.
+ */
+public final class Glyphs {
+
+    public static final int SIZE = 20;
+    public static final int PIXELS = SIZE * SIZE;
+    public static final int WORDS = (PIXELS + 63) / 64;
+
+    private Glyphs() {
+    }
+
+    public static int pixel(int column, int row) {
+        return column * SIZE + row;
+    }
+
+    public static boolean get(long[] bits, int offset, int pixel) {
+        return (bits[offset + (pixel >>> 6)] & (1L << pixel)) != 0;
+    }
+
+    public static void set(long[] bits, int offset, int pixel) {
+        bits[offset + (pixel >>> 6)] |= 1L << pixel;
+    }
+
+    public static long[] pack(List<Integer> pixels) {
+        long[] bits = new long[WORDS];
+        for (int i = 0; i < PIXELS && i < pixels.size(); i++) {
+            if (pixels.get(i) == 1)
+                set(bits, 0, i);
+        }
+        return bits;
+    }
+
+    public static ArrayList<Integer> unpack(long[] bits, int offset) {
+        ArrayList<Integer> pixels = new ArrayList<>(PIXELS);
+        for (int i = 0; i < PIXELS; i++) {
+            pixels.add(get(bits, offset, i) ? 1 : 0);
+        }
+        return pixels;
+    }
+
+    /**
+     * Writes the glyph's pixels as 0 and 1 into out, the form the network takes
+     * its input in.
+     */
+    public static void toFloats(long[] bits, int offset, float[] out, int outOffset) {
+        for (int w = 0; w < WORDS; w++) {
+            wordToFloats(bits[offset + w], w, out, outOffset);
+        }
+    }
+
+    static void wordToFloats(long word, int w, float[] out, int outOffset) {
+        int base = w << 6;
+        int end = Math.min(64, PIXELS - base);
+        for (int b = 0; b < end; b++) {
+            out[outOffset + base + b] = (int) (word >>> b) & 1;
+        }
+    }
+
+    public static int count(long[] bits, int offset) {
+        int count = 0;
+        for (int w = 0; w < WORDS; w++) {
+            count += Long.bitCount(bits[offset + w]);
+        }
+        return count;
+    }
+}
@@ -1,5 +1,6 @@
 package gui.components;
 
+import data.Glyphs;
 import gui.components.data.Section;
 
 import javax.swing.*;
@@ -76,6 +77,16 @@ public class CustomPanel extends JPanel {
         return pixels;
     }
 
+    public long[] getPackedPixels() {
+        long[] bits = new long[Glyphs.WORDS];
+        for (int i = 0; i < sections.size() && i < Glyphs.PIXELS; i++) {
+            if (sections.get(i).isActive())
+                Glyphs.set(bits, 0, i);
+        }
+
+        return bits;
+    }
+
     public void clear() {
         for (Section s : sections) {
             s.setActive(false);
@@ -95,6 +106,14 @@ public class CustomPanel extends JPanel {
         repaint();
     }
 
+    public void drawLetter(long[] bits) {
+        for (int i = 0; i < sections.size() && i < Glyphs.PIXELS; i++) {
+            sections.get(i).setActive(Glyphs.get(bits, 0, i));
+        }
+
+        repaint();
+    }
+
     public ArrayList<Section> getSections() {
         return sections;
     }
@@ -0,0 +1,47 @@
+package neural;
+
+/**
+ * Adam (Kingma and Ba): per-parameter step sizes from running averages of the
+ * gradient and its square, with bias correction for the first steps.
+ */
+public class AdamUpdater implements Updater {
+
+    private final float learningRate;
+    private final float beta1;
+    private final float beta2;
+    private final float epsilon;
+    private float[] m;
+    private float[] v;
+    private int step;
+
+    public AdamUpdater(float learningRate) {
+        this(learningRate, 0.9f, 0.999f, 1e-8f);
+    }
+
+    public AdamUpdater(float learningRate, float beta1, float beta2, float epsilon) {
+        this.learningRate = learningRate;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public void apply(float[] parameters, float[] gradients, int batch) {
+        if (m == null || m.length != parameters.length) {
+            m = new float[parameters.length];
+            v = new float[parameters.length];
+            step = 0;
+        }
+        step++;
+
+        float scale = 1f / batch;
+        float rate = (float) (learningRate * Math.sqrt(1 - Math.pow(beta2, step)) / (1 - Math.pow(beta1, step)));
+        for (int i = 0; i < parameters.length; i++) {
+            float g = gradients[i] * scale;
+            m[i] = beta1 * m[i] + (1 - beta1) * g;
+            v[i] = beta2 * v[i] + (1 - beta2) * g * g;
+            parameters[i] -= rate * m[i] / ((float) Math.sqrt(v[i]) + epsilon);
+            gradients[i] = 0;
+        }
+    }
+}
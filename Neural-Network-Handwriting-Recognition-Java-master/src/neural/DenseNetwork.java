@@ -0,0 +1,209 @@
+package neural;
+
+import neural.activations.Activation;
+import neural.activations.Sigmoid;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A fully connected feed-forward network: sizes[0] inputs, one hidden layer
+ * per inner entry of sizes, and sizes[last] sigmoid outputs trained with
+ * cross-entropy loss.
+ *
+ * All weights and biases live in one flat float[] (getParameters()): for each
+ * layer an out x in row-major weight matrix followed by its out biases.
+ * Gradients use the same layout, so updaters and gradient reductions are
+ * plain loops over arrays. The network itself holds no per-batch state;
+ * that lives in a Workspace, one per thread.
+ */
+public class DenseNetwork {
+
+    private final int[] sizes;
+    private final Activation hidden;
+    private final Activation output = new Sigmoid();
+    private final float[] parameters;
+    private final int[] weightOffsets;
+    private final int[] biasOffsets;
+
+    /**
+     * Weights start uniform in +-sqrt(6 / (in + out)), biases at 0.
+     */
+    public DenseNetwork(int[] sizes, Activation hidden, long seed) {
+        if (sizes.length < 2)
+            throw new IllegalArgumentException("A network needs at least an input and an output size");
+        this.sizes = sizes.clone();
+        this.hidden = hidden;
+
+        int layers = sizes.length - 1;
+        weightOffsets = new int[layers];
+        biasOffsets = new int[layers];
+        int count = 0;
+        for (int l = 0; l < layers; l++) {
+            weightOffsets[l] = count;
+            count += sizes[l + 1] * sizes[l];
+            biasOffsets[l] = count;
+            count += sizes[l + 1];
+        }
+        parameters = new float[count];
+
+        Random random = new Random(seed);
+        for (int l = 0; l < layers; l++) {
+            double limit = Math.sqrt(6.0 / (sizes[l] + sizes[l + 1]));
+            for (int i = weightOffsets[l]; i < biasOffsets[l]; i++) {
+                parameters[i] = (float) ((random.nextDouble() * 2 - 1) * limit);
+            }
+        }
+    }
+
+    public int getLayerCount() {
+        return sizes.length - 1;
+    }
+
+    public int getInputSize() {
+        return sizes[0];
+    }
+
+    public int getOutputSize() {
+        return sizes[sizes.length - 1];
+    }
+
+    public float[] getParameters() {
+        return parameters;
+    }
+
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    public Workspace newWorkspace(int maxBatch) {
+        return new Workspace(sizes, maxBatch);
+    }
+
+    /**
+     * Runs batch inputs (batch x inputSize, row-major) through the network.
+     * Returns the workspace's output buffer; its first batch x outputSize
+     * values are the outputs.
+     */
+    public float[] forward(Workspace workspace, float[] input, int batch) {
+        checkBatch(workspace, batch);
+        float[] previous = input;
+        for (int l = 0; l < getLayerCount(); l++) {
+            int in = sizes[l];
+            int out = sizes[l + 1];
+            float[] z = workspace.activations[l];
+            Matrix.multiplyTransposed(previous, 0, parameters, weightOffsets[l], z, 0, batch, out, in, false);
+            int bias = biasOffsets[l];
+            for (int b = 0; b < batch; b++) {
+                int row = b * out;
+                for (int o = 0; o < out; o++) {
+                    z[row + o] += parameters[bias + o];
+                }
+            }
+            activation(l).apply(z, 0, batch * out);
+            previous = z;
+        }
+        return previous;
+    }
+
+    /**
+     * Forward and backward pass over a batch. Adds the gradients of the
+     * summed cross-entropy loss to gradients (laid out like getParameters())
+     * and returns that loss. targets is batch x outputSize, 0 or 1.
+     */
+    public double accumulateGradients(Workspace workspace, float[] input, float[] targets, int batch,
+                                      float[] gradients) {
+        float[] y = forward(workspace, input, batch);
+        int layers = getLayerCount();
+        int outputs = getOutputSize();
+
+        // with sigmoid outputs and cross-entropy, dLoss/dz is simply y - t
+        float[] delta = workspace.deltas[layers - 1];
+        double loss = 0;
+        for (int i = 0; i < batch * outputs; i++) {
+            float p = Math.min(Math.max(y[i], 1e-7f), 1 - 1e-7f);
+            loss -= targets[i] * Math.log(p) + (1 - targets[i]) * Math.log(1 - p);
+            delta[i] = y[i] - targets[i];
+        }
+
+        for (int l = layers - 1; l >= 0; l--) {
+            int in = sizes[l];
+            int out = sizes[l + 1];
+            float[] previous = l == 0 ? input : workspace.activations[l - 1];
+            delta = workspace.deltas[l];
+
+            Matrix.multiplyTransposedLeft(delta, 0, previous, 0, gradients, weightOffsets[l], out, in, batch, true);
+            int bias = biasOffsets[l];
+            for (int b = 0; b < batch; b++) {
+                int row = b * out;
+                for (int o = 0; o < out; o++) {
+                    gradients[bias + o] += delta[row + o];
+                }
+            }
+
+            if (l > 0) {
+                float[] back = workspace.deltas[l - 1];
+                Matrix.multiply(delta, 0, parameters, weightOffsets[l], back, 0, batch, in, out, false);
+                float[] slope = workspace.scratch;
+                hidden.derivative(previous, slope, 0, batch * in);
+                for (int i = 0; i < batch * in; i++) {
+                    back[i] *= slope[i];
+                }
+            }
+        }
+        return loss;
+    }
+
+    /** Index of the largest of a sample's outputs, in outputs laid out as forward() returns them. */
+    public static int argMax(float[] outputs, int sample, int size) {
+        int best = 0;
+        int row = sample * size;
+        for (int o = 1; o < size; o++) {
+            if (outputs[row + o] > outputs[row + best])
+                best = o;
+        }
+        return best;
+    }
+
+    private Activation activation(int layer) {
+        return layer == getLayerCount() - 1 ? output : hidden;
+    }
+
+    private static void checkBatch(Workspace workspace, int batch) {
+        if (batch > workspace.maxBatch)
+            throw new IllegalArgumentException("Batch of " + batch + " exceeds the workspace's " + workspace.maxBatch);
+    }
+
+    @Override
+    public String toString() {
+        return "DenseNetwork" + Arrays.toString(sizes) + " " + hidden + "/sigmoid, "
+                + parameters.length + " parameters";
+    }
+
+    /** Per-thread buffers for a batch: each layer's outputs and loss gradients. */
+    public static final class Workspace {
+
+        final int maxBatch;
+        final float[][] activations;
+        final float[][] deltas;
+        final float[] scratch;
+
+        Workspace(int[] sizes, int maxBatch) {
+            this.maxBatch = maxBatch;
+            int layers = sizes.length - 1;
+            activations = new float[layers][];
+            deltas = new float[layers][];
+            int widest = 0;
+            for (int l = 0; l < layers; l++) {
+                activations[l] = new float[maxBatch * sizes[l + 1]];
+                deltas[l] = new float[maxBatch * sizes[l + 1]];
+                widest = Math.max(widest, sizes[l + 1]);
+            }
+            scratch = new float[maxBatch * widest];
+        }
+
+        public int getMaxBatch() {
+            return maxBatch;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package neural;
+
+import java.util.Arrays;
+
+/**
+ * Cache-blocked multiplication of row-major float matrices, in the three
+ * shapes a dense layer needs. Each matrix is an array plus the offset of its
+ * first element, so layers can live side by side in one parameter array.
+ *
+ * The loops are tiled in BLOCK x BLOCK pieces, so the part of the right-hand
+ * matrix being reused stays in the L1/L2 cache while the rows of the other
+ * one stream past it.
+ */
+public final class Matrix {
+
+    static final int BLOCK = 64;
+
+    private Matrix() {
+    }
+
+    /** c[m x n] (+)= a[m x k] * b[n x k]^T, the forward pass against a weight matrix. */
+    public static void multiplyTransposed(float[] a, int aOffset, float[] b, int bOffset,
+                                          float[] c, int cOffset, int m, int n, int k, boolean accumulate) {
+        if (!accumulate)
+            Arrays.fill(c, cOffset, cOffset + m * n, 0f);
+
+        for (int kk = 0; kk < k; kk += BLOCK) {
+            int kEnd = Math.min(kk + BLOCK, k);
+            for (int jj = 0; jj < n; jj += BLOCK) {
+                int jEnd = Math.min(jj + BLOCK, n);
+                for (int i = 0; i < m; i++) {
+                    int aRow = aOffset + i * k;
+                    int cRow = cOffset + i * n;
+                    for (int j = jj; j < jEnd; j++) {
+                        c[cRow + j] += dot(a, aRow, b, bOffset + j * k, kk, kEnd);
+                    }
+                }
+            }
+        }
+    }
+
+    /** c[m x n] (+)= a[m x k] * b[k x n], the backward pass through a weight matrix. */
+    public static void multiply(float[] a, int aOffset, float[] b, int bOffset,
+                                float[] c, int cOffset, int m, int n, int k, boolean accumulate) {
+        if (!accumulate)
+            Arrays.fill(c, cOffset, cOffset + m * n, 0f);
+
+        for (int kk = 0; kk < k; kk += BLOCK) {
+            int kEnd = Math.min(kk + BLOCK, k);
+            for (int jj = 0; jj < n; jj += BLOCK) {
+                int jEnd = Math.min(jj + BLOCK, n);
+                for (int i = 0; i < m; i++) {
+                    int cRow = cOffset + i * n;
+                    for (int p = kk; p < kEnd; p++) {
+                        float aip = a[aOffset + i * k + p];
+                        if (aip != 0)
+                            axpy(aip, b, bOffset + p * n, c, cRow, jj, jEnd);
+                    }
+                }
+            }
+        }
+    }
+
+    /** c[m x n] (+)= a[k x m]^T * b[k x n], the weight gradient of a batch. */
+    public static void multiplyTransposedLeft(float[] a, int aOffset, float[] b, int bOffset,
+                                              float[] c, int cOffset, int m, int n, int k, boolean accumulate) {
+        if (!accumulate)
+            Arrays.fill(c, cOffset, cOffset + m * n, 0f);
+
+        for (int ii = 0; ii < m; ii += BLOCK) {
+            int iEnd = Math.min(ii + BLOCK, m);
+            for (int jj = 0; jj < n; jj += BLOCK) {
+                int jEnd = Math.min(jj + BLOCK, n);
+                for (int p = 0; p < k; p++) {
+                    int aRow = aOffset + p * m;
+                    int bRow = bOffset + p * n;
+                    for (int i = ii; i < iEnd; i++) {
+                        float api = a[aRow + i];
+                        if (api != 0)
+                            axpy(api, b, bRow, c, cOffset + i * n, jj, jEnd);
+                    }
+                }
+            }
+        }
+    }
+
+    // Four independent sums, so the additions are not one long dependency chain
+    private static float dot(float[] a, int aRow, float[] b, int bRow, int from, int to) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int p = from;
+        for (; p + 3 < to; p += 4) {
+            s0 += a[aRow + p] * b[bRow + p];
+            s1 += a[aRow + p + 1] * b[bRow + p + 1];
+            s2 += a[aRow + p + 2] * b[bRow + p + 2];
+            s3 += a[aRow + p + 3] * b[bRow + p + 3];
+        }
+        for (; p < to; p++) {
+            s0 += a[aRow + p] * b[bRow + p];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    // c[cRow + j] += alpha * b[bRow + j] for j in [from, to); vectorized by the JIT
+    private static void axpy(float alpha, float[] b, int bRow, float[] c, int cRow, int from, int to) {
+        for (int j = from; j < to; j++) {
+            c[cRow + j] += alpha * b[bRow + j];
+        }
+    }
+}
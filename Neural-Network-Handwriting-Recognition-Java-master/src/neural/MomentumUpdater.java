@@ -0,0 +1,30 @@
+package neural;
+
+/**
+ * Stochastic gradient descent with classical momentum:
+ * v = momentum * v - learningRate * g; p += v.
+ */
+public class MomentumUpdater implements Updater {
+
+    private final float learningRate;
+    private final float momentum;
+    private float[] velocity;
+
+    public MomentumUpdater(float learningRate, float momentum) {
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+    }
+
+    @Override
+    public void apply(float[] parameters, float[] gradients, int batch) {
+        if (velocity == null || velocity.length != parameters.length)
+            velocity = new float[parameters.length];
+
+        float rate = learningRate / batch;
+        for (int i = 0; i < parameters.length; i++) {
+            velocity[i] = momentum * velocity[i] - rate * gradients[i];
+            parameters[i] += velocity[i];
+            gradients[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package neural;
+
+import data.AugmentedBatches;
+import data.Corpus;
+import data.CorpusLoader;
+import data.Glyphs;
+import neural.activations.Relu;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Data-parallel version of Trainer: each mini-batch is cut into one slice per
+ * worker, the workers run forward and backward passes on their slices in a
+ * ForkJoinPool, and the per-worker gradients are summed before a single
+ * updater step.
+ *
+ * Every worker owns its workspace, input buffers and gradient buffer, so the
+ * backward pass shares nothing but the (read-only) weights. The reduction is
+ * split by parameter range instead of by worker: each task adds all workers'
+ * gradients for its own range into worker 0's buffer, so no two tasks write
+ * the same element and no locks are taken.
+ *
+ * Slices are fixed by the thread count and the sums always run in worker
+ * order, so for a given seed and thread count training is bit-for-bit
+ * repeatable. With one thread it matches Trainer exactly.
+ *
+ * Run with: java neural.ParallelTrainer [epochs] [hidden] [batch] [maxThreads]
+ */
+public class ParallelTrainer implements AutoCloseable {
+
+    private final DenseNetwork network;
+    private final Updater updater;
+    private final int batchSize;
+    private final int threads;
+    private final Random random;
+    private final ForkJoinPool pool;
+    private final Worker[] workers;
+    private int[] order = new int[0];
+
+    public ParallelTrainer(DenseNetwork network, Updater updater, int batchSize, long seed, int threads) {
+        if (network.getInputSize() != Glyphs.PIXELS || network.getOutputSize() != Corpus.CLASSES)
+            throw new IllegalArgumentException("Expected a " + Glyphs.PIXELS + " input, " + Corpus.CLASSES
+                    + " output network, got " + network);
+        if (threads < 1)
+            throw new IllegalArgumentException("Need at least one thread, got " + threads);
+        this.network = network;
+        this.updater = updater;
+        this.batchSize = batchSize;
+        this.threads = threads;
+        this.random = new Random(seed);
+        this.pool = new ForkJoinPool(threads);
+        int slice = (batchSize + threads - 1) / threads;
+        this.workers = new Worker[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Worker(network, slice);
+        }
+    }
+
+    public DenseNetwork getNetwork() {
+        return network;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** One pass over the corpus; returns the mean loss per sample. */
+    public double trainEpoch(Corpus corpus) {
+        shuffle(corpus.size());
+        double loss = 0;
+        for (int from = 0; from < order.length; from += batchSize) {
+            int count = Math.min(batchSize, order.length - from);
+            int batchStart = from;
+            loss += step(count, (worker, start, length) ->
+                    Trainer.fillBatch(corpus, order, batchStart + start, length, worker.inputs, worker.targets));
+        }
+        return loss / order.length;
+    }
+
+    /**
+     * One epoch of batches from the augmentation pipeline; returns the mean
+     * loss per sample.
+     */
+    public double trainEpoch(AugmentedBatches batches) throws InterruptedException {
+        double loss = 0;
+        for (int i = 0; i < batches.getBatchesPerEpoch(); i++) {
+            AugmentedBatches.Batch batch = batches.next();
+            loss += trainBatch(batch.getInputs(), batch.getTargets(), batch.getCount());
+        }
+        return loss / batches.getEpochSize();
+    }
+
+    /**
+     * One updater step on count samples already laid out in inputs and
+     * targets, as Trainer.trainBatch. Returns their summed loss.
+     */
+    public double trainBatch(float[] inputs, float[] targets, int count) {
+        if (count > batchSize)
+            throw new IllegalArgumentException("Batch of " + count + " exceeds the trainer's " + batchSize);
+        return step(count, (worker, start, length) -> {
+            System.arraycopy(inputs, start * Glyphs.PIXELS, worker.inputs, 0, length * Glyphs.PIXELS);
+            System.arraycopy(targets, start * Corpus.CLASSES, worker.targets, 0, length * Corpus.CLASSES);
+        });
+    }
+
+    /** Fraction of the corpus the network currently labels correctly. */
+    public double accuracy(Corpus corpus) {
+        int[] correct = new int[threads];
+        pool.invoke(new Split(0, threads, w -> {
+            Worker worker = workers[w];
+            int[] sample = new int[1];
+            for (int s = w; s < corpus.size(); s += threads) {
+                sample[0] = s;
+                Trainer.fillBatch(corpus, sample, 0, 1, worker.inputs, worker.targets);
+                float[] outputs = network.forward(worker.workspace, worker.inputs, 1);
+                if (DenseNetwork.argMax(outputs, 0, Corpus.CLASSES) == corpus.getLabel(s))
+                    correct[w]++;
+            }
+        }));
+        int total = 0;
+        for (int c : correct) {
+            total += c;
+        }
+        return corpus.size() == 0 ? 0 : (double) total / corpus.size();
+    }
+
+    /** Stops the worker threads. */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private double step(int count, Filler filler) {
+        int slice = (count + threads - 1) / threads;
+        pool.invoke(new Split(0, threads, w -> {
+            Worker worker = workers[w];
+            int start = Math.min(w * slice, count);
+            int length = Math.min(slice, count - start);
+            worker.loss = 0;
+            if (length > 0) {
+                filler.fill(worker, start, length);
+                worker.loss = network.accumulateGradients(worker.workspace, worker.inputs, worker.targets,
+                        length, worker.gradients);
+            }
+        }));
+
+        float[] total = workers[0].gradients;
+        if (threads > 1) {
+            int chunk = (total.length + threads - 1) / threads;
+            pool.invoke(new Split(0, threads, c -> {
+                int from = Math.min(c * chunk, total.length);
+                int to = Math.min(from + chunk, total.length);
+                for (int w = 1; w < threads; w++) {
+                    float[] gradients = workers[w].gradients;
+                    for (int i = from; i < to; i++) {
+                        total[i] += gradients[i];
+                        gradients[i] = 0;
+                    }
+                }
+            }));
+        }
+        updater.apply(network.getParameters(), total, count);
+
+        double loss = 0;
+        for (Worker worker : workers) {
+            loss += worker.loss;
+        }
+        return loss;
+    }
+
+    private void shuffle(int size) {
+        if (order.length != size) {
+            order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    private static final class Worker {
+
+        final DenseNetwork.Workspace workspace;
+        final float[] gradients;
+        final float[] inputs;
+        final float[] targets;
+        double loss;
+
+        Worker(DenseNetwork network, int slice) {
+            workspace = network.newWorkspace(slice);
+            gradients = new float[network.getParameterCount()];
+            inputs = new float[slice * Glyphs.PIXELS];
+            targets = new float[slice * Corpus.CLASSES];
+        }
+    }
+
+    private interface Filler {
+        void fill(Worker worker, int start, int length);
+    }
+
+    private interface Task {
+        void run(int index);
+    }
+
+    // Runs task for every index in [from, to), halving the range until one index is left
+    private static final class Split extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final Task task;
+
+        Split(int from, int to, Task task) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                task.run(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Split(from, middle, task), new Split(middle, to, task));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int epochs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int hidden = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int batch = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        Corpus corpus = CorpusLoader.load();
+        System.out.printf("%d samples, 400-%d-26, batch %d, %d cores%n", corpus.size(), hidden, batch,
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s %12s %10s %10s%n", "threads", "samples/s", "speedup", "accuracy");
+
+        double baseline = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            DenseNetwork network = new DenseNetwork(new int[]{Glyphs.PIXELS, hidden, Corpus.CLASSES}, new Relu(), 1);
+            try (ParallelTrainer trainer = new ParallelTrainer(network, new AdamUpdater(0.002f), batch, 1, threads)) {
+                // first epochs warm up the JIT and are not timed
+                for (int epoch = 0; epoch < 5; epoch++) {
+                    trainer.trainEpoch(corpus);
+                }
+                long start = System.nanoTime();
+                for (int epoch = 0; epoch < epochs; epoch++) {
+                    trainer.trainEpoch(corpus);
+                }
+                double rate = (double) epochs * corpus.size() / ((System.nanoTime() - start) / 1e9);
+                if (threads == 1)
+                    baseline = rate;
+                System.out.printf("%-8d %12.0f %9.2fx %9.1f%%%n", threads, rate, rate / baseline,
+                        trainer.accuracy(corpus) * 100);
+            }
+            if (threads >= maxThreads)
+                break;
+        }
+    }
+}
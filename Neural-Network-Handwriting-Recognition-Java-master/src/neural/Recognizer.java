@@ -0,0 +1,34 @@
+package neural;
+
+import data.Corpus;
+import data.Glyphs;
+
+/**
+ * Classifies single drawn letters with a trained network, for the GUI.
+ * Reuses one workspace and input buffer, so recognition allocates nothing;
+ * not thread-safe.
+ */
+public class Recognizer {
+
+    private final DenseNetwork network;
+    private final DenseNetwork.Workspace workspace;
+    private final float[] input = new float[Glyphs.PIXELS];
+
+    public Recognizer(DenseNetwork network) {
+        if (network.getInputSize() != Glyphs.PIXELS || network.getOutputSize() != Corpus.CLASSES)
+            throw new IllegalArgumentException("Expected a " + Glyphs.PIXELS + " input, " + Corpus.CLASSES
+                    + " output network, got " + network);
+        this.network = network;
+        this.workspace = network.newWorkspace(1);
+    }
+
+    /** Label (0 for A .. 25 for Z) of a glyph packed as Glyphs.pack does. */
+    public int recognize(long[] bits) {
+        Glyphs.toFloats(bits, 0, input, 0);
+        return DenseNetwork.argMax(network.forward(workspace, input, 1), 0, Corpus.CLASSES);
+    }
+
+    public char recognizeLetter(long[] bits) {
+        return (char) ('A' + recognize(bits));
+    }
+}
@@ -0,0 +1,178 @@
+package neural;
+
+import data.Augmenter;
+import data.AugmentedBatches;
+import data.Corpus;
+import data.CorpusLoader;
+import data.Glyphs;
+import neural.activations.Relu;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Mini-batch gradient descent over a Corpus. Each epoch visits the samples in
+ * a fresh shuffled order; every batch is one forward and backward pass over
+ * batchSize samples followed by one updater step.
+ *
+ * All buffers are allocated up front, so an epoch allocates nothing.
+ *
+ * Run with: java neural.Trainer [epochs] [hidden] [batch] [copies]
+ * where copies > 0 trains on that many augmented passes per epoch.
+ */
+public class Trainer {
+
+    private final DenseNetwork network;
+    private final Updater updater;
+    private final int batchSize;
+    private final Random random;
+    private final DenseNetwork.Workspace workspace;
+    private final float[] gradients;
+    private final float[] inputs;
+    private final float[] targets;
+    private int[] order = new int[0];
+
+    public Trainer(DenseNetwork network, Updater updater, int batchSize, long seed) {
+        if (network.getInputSize() != Glyphs.PIXELS || network.getOutputSize() != Corpus.CLASSES)
+            throw new IllegalArgumentException("Expected a " + Glyphs.PIXELS + " input, " + Corpus.CLASSES
+                    + " output network, got " + network);
+        this.network = network;
+        this.updater = updater;
+        this.batchSize = batchSize;
+        this.random = new Random(seed);
+        this.workspace = network.newWorkspace(batchSize);
+        this.gradients = new float[network.getParameterCount()];
+        this.inputs = new float[batchSize * Glyphs.PIXELS];
+        this.targets = new float[batchSize * Corpus.CLASSES];
+    }
+
+    public DenseNetwork getNetwork() {
+        return network;
+    }
+
+    /** One pass over the corpus; returns the mean loss per sample. */
+    public double trainEpoch(Corpus corpus) {
+        shuffle(corpus.size());
+        double loss = 0;
+        for (int from = 0; from < order.length; from += batchSize) {
+            int count = Math.min(batchSize, order.length - from);
+            fillBatch(corpus, order, from, count, inputs, targets);
+            loss += trainBatch(inputs, targets, count);
+        }
+        return loss / order.length;
+    }
+
+    /**
+     * One epoch of batches from the augmentation pipeline; returns the mean
+     * loss per sample.
+     */
+    public double trainEpoch(AugmentedBatches batches) throws InterruptedException {
+        double loss = 0;
+        for (int i = 0; i < batches.getBatchesPerEpoch(); i++) {
+            AugmentedBatches.Batch batch = batches.next();
+            loss += trainBatch(batch.getInputs(), batch.getTargets(), batch.getCount());
+        }
+        return loss / batches.getEpochSize();
+    }
+
+    /**
+     * One updater step on count samples already laid out in inputs and
+     * targets. Returns their summed loss.
+     */
+    public double trainBatch(float[] inputs, float[] targets, int count) {
+        double loss = network.accumulateGradients(workspace, inputs, targets, count, gradients);
+        updater.apply(network.getParameters(), gradients, count);
+        return loss;
+    }
+
+    /** Fraction of the corpus the network currently labels correctly. */
+    public double accuracy(Corpus corpus) {
+        int correct = 0;
+        for (int from = 0; from < corpus.size(); from += batchSize) {
+            int count = Math.min(batchSize, corpus.size() - from);
+            for (int s = 0; s < count; s++) {
+                corpus.toFloats(from + s, inputs, s * Glyphs.PIXELS);
+            }
+            float[] outputs = network.forward(workspace, inputs, count);
+            for (int s = 0; s < count; s++) {
+                if (DenseNetwork.argMax(outputs, s, Corpus.CLASSES) == corpus.getLabel(from + s))
+                    correct++;
+            }
+        }
+        return corpus.size() == 0 ? 0 : (double) correct / corpus.size();
+    }
+
+    /** Fraction of one epoch of batches the network currently labels correctly. */
+    public double accuracy(AugmentedBatches batches) throws InterruptedException {
+        int correct = 0;
+        for (int i = 0; i < batches.getBatchesPerEpoch(); i++) {
+            AugmentedBatches.Batch batch = batches.next();
+            float[] outputs = network.forward(workspace, batch.getInputs(), batch.getCount());
+            for (int s = 0; s < batch.getCount(); s++) {
+                int label = DenseNetwork.argMax(batch.getTargets(), s, Corpus.CLASSES);
+                if (DenseNetwork.argMax(outputs, s, Corpus.CLASSES) == label)
+                    correct++;
+            }
+        }
+        return (double) correct / batches.getEpochSize();
+    }
+
+    /**
+     * Unpacks samples[from..from+count) into rows of inputs and one-hot rows
+     * of targets.
+     */
+    public static void fillBatch(Corpus corpus, int[] samples, int from, int count, float[] inputs, float[] targets) {
+        Arrays.fill(targets, 0, count * Corpus.CLASSES, 0f);
+        for (int s = 0; s < count; s++) {
+            int sample = samples[from + s];
+            corpus.toFloats(sample, inputs, s * Glyphs.PIXELS);
+            targets[s * Corpus.CLASSES + corpus.getLabel(sample)] = 1f;
+        }
+    }
+
+    private void shuffle(int size) {
+        if (order.length != size) {
+            order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int epochs = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int hidden = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int batch = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int copies = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        Corpus corpus = CorpusLoader.load();
+        DenseNetwork network = new DenseNetwork(new int[]{Glyphs.PIXELS, hidden, Corpus.CLASSES}, new Relu(), 1);
+        Trainer trainer = new Trainer(network, new AdamUpdater(0.005f), batch, 1);
+        System.out.println(network + ", " + corpus.size() + " samples");
+
+        // a fixed set of distorted samples the network never trains on
+        try (AugmentedBatches training = copies > 0
+                ? new AugmentedBatches(corpus, new Augmenter(), batch, copies, threads, 4 * threads, 1) : null;
+             AugmentedBatches distorted = new AugmentedBatches(corpus, new Augmenter(), batch, 1, 1, 4, 2)) {
+            if (training != null)
+                System.out.println(training);
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                long start = System.nanoTime();
+                double loss = training != null ? trainer.trainEpoch(training) : trainer.trainEpoch(corpus);
+                long nanos = System.nanoTime() - start;
+                if (epoch == 1 || epoch % 10 == 0 || epoch == epochs)
+                    System.out.printf("epoch %3d  loss %.4f  %.2f ms%n", epoch, loss, nanos / 1e6);
+            }
+            System.out.printf("accuracy %.1f%%, on distorted samples %.1f%%%n", trainer.accuracy(corpus) * 100,
+                    trainer.accuracy(distorted) * 100);
+        }
+    }
+}
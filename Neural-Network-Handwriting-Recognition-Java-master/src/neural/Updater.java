@@ -0,0 +1,13 @@
+package neural;
+
+/**
+ * Turns a batch's summed gradients into a step on the parameters.
+ */
+public interface Updater {
+
+    /**
+     * Updates parameters from gradients summed over batch samples, then
+     * zeroes gradients for the next batch.
+     */
+    void apply(float[] parameters, float[] gradients, int batch);
+}
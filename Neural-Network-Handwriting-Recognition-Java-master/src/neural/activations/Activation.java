@@ -0,0 +1,23 @@
+package neural.activations;
+
+/**
+ * An activation function applied to whole layers at once. The batch methods
+ * work in place on x[offset .. offset + length).
+ *
+ * Derivatives are taken from the activation's output y = f(x) rather than
+ * from x, since that is what backpropagation has at hand, and for sigmoid
+ * and tanh it costs a multiply instead of another exp.
+ */
+public interface Activation {
+
+    double value(double x);
+
+    void apply(float[] x, int offset, int length);
+
+    void apply(double[] x, int offset, int length);
+
+    /** Writes f'(x) for each y = f(x) into out. */
+    void derivative(float[] y, float[] out, int offset, int length);
+
+    void derivative(double[] y, double[] out, int offset, int length);
+}
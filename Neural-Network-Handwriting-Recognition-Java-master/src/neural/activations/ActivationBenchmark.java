@@ -0,0 +1,89 @@
+package neural.activations;
+
+import java.util.Random;
+
+/**
+ * Times the activation kernels against the original MathUtils.sigmoidValue,
+ * called once per neuron, and checks the lookup tables against their error bounds.
+ *
+ * Run with: java neural.activations.ActivationBenchmark [elements] [rounds]
+ */
+public class ActivationBenchmark {
+
+    private static volatile double sink;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 16;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        float[] input = new float[n];
+        Random random = new Random(42);
+        for (int i = 0; i < n; i++) {
+            input[i] = (float) (random.nextGaussian() * 4);
+        }
+        float[] work = new float[n];
+        double[] workDouble = new double[n];
+
+        LookupTable sigmoidTable = LookupTable.sigmoid();
+        LookupTable tanhTable = LookupTable.tanh();
+        checkError(sigmoidTable, new Sigmoid(), -20, 20);
+        checkError(tanhTable, new Tanh(), -10, 10);
+
+        Activation[] kernels = {new Sigmoid(), sigmoidTable, new Tanh(), tanhTable, new Relu()};
+        System.out.printf("%-22s %10s%n", "kernel", "ns/value");
+        report("MathUtils.sigmoidValue", time(rounds, () -> {
+            for (int i = 0; i < n; i++) {
+                work[i] = (float) sigmoidValue((double) input[i]);
+            }
+        }), n);
+        for (Activation kernel : kernels) {
+            report(kernel + " float[]", time(rounds, () -> {
+                System.arraycopy(input, 0, work, 0, n);
+                kernel.apply(work, 0, n);
+            }), n);
+            report(kernel + " double[]", time(rounds, () -> {
+                for (int i = 0; i < n; i++) {
+                    workDouble[i] = input[i];
+                }
+                kernel.apply(workDouble, 0, n);
+            }), n);
+        }
+        report("sigmoid derivative", time(rounds, () -> new Sigmoid().derivative(input, work, 0, n)), n);
+        sink = work[n / 2] + workDouble[n / 2];
+    }
+
+    // MathUtils.sigmoidValue as it was before it delegated to Sigmoid, boxed
+    // argument and all, so the baseline stays what the kernels replaced
+    private static double sigmoidValue(Double arg) {
+        return (1 / (1 + Math.exp(-arg)));
+    }
+
+    // best of rounds, after as many rounds of warm-up
+    private static long time(int rounds, Runnable body) {
+        for (int i = 0; i < rounds; i++) {
+            body.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static void report(String name, long nanos, int n) {
+        System.out.printf("%-22s %10.2f%n", name, (double) nanos / n);
+    }
+
+    private static void checkError(LookupTable table, Activation exact, double from, double to) {
+        double worst = 0;
+        int steps = 10000000;
+        for (int i = 0; i <= steps; i++) {
+            float x = (float) (from + (to - from) * i / steps);
+            worst = Math.max(worst, Math.abs(table.value(x) - exact.value(x)));
+        }
+        System.out.printf("%s: max error %.3g, bound %.3g%s%n", table, worst, table.getErrorBound(),
+                worst <= table.getErrorBound() ? "" : "  EXCEEDED");
+    }
+}
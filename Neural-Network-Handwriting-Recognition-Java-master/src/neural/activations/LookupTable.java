@@ -0,0 +1,117 @@
+package neural.activations;
+
+/**
+ * A saturating activation (sigmoid, tanh) read from a table instead of
+ * computed, with linear interpolation between entries.
+ *
+ * Inside [min, max] the interpolation error is at most h^2 / 8 * M2, where h
+ * is the spacing between entries and M2 bounds |f''|; outside it the table
+ * returns f(min) or f(max), off by at most how far f still moves beyond
+ * them. getErrorBound() adds the two and float rounding. The
+ * derivative needs no table, it comes from the exact function.
+ */
+public final class LookupTable implements Activation {
+
+    private final Activation exact;
+    private final float min;
+    private final float scale;
+    private final int intervals;
+    // entry i is f(min + i * h); slope i is entry i + 1 minus entry i
+    private final float[] values;
+    private final float[] slopes;
+    private final double errorBound;
+
+    /**
+     * @param maxSecondDerivative an upper bound on |f''| over [min, max]
+     */
+    public LookupTable(Activation exact, double min, double max, int intervals, double maxSecondDerivative) {
+        if (!(max > min) || intervals < 1)
+            throw new IllegalArgumentException("Need min < max and at least one interval");
+        this.exact = exact;
+        this.min = (float) min;
+        this.scale = (float) (intervals / (max - min));
+        this.intervals = intervals;
+        this.values = new float[intervals + 1];
+        this.slopes = new float[intervals + 1];
+
+        double h = (max - min) / intervals;
+        for (int i = 0; i <= intervals; i++) {
+            values[i] = (float) exact.value(min + i * h);
+        }
+        for (int i = 0; i < intervals; i++) {
+            slopes[i] = values[i + 1] - values[i];
+        }
+
+        double maxSlope = 0;
+        for (int i = 0; i < intervals; i++) {
+            maxSlope = Math.max(maxSlope, Math.abs(slopes[i]) / h);
+        }
+        double interpolation = h * h / 8 * maxSecondDerivative;
+        double tail = Math.max(Math.abs(exact.value(min) - exact.value(min - 1e6)),
+                Math.abs(exact.value(max + 1e6) - exact.value(max)));
+        // float arithmetic finds the position in the table to within an ulp of
+        // the range, and rounds the entries and the result
+        double rounding = maxSlope * Math.ulp((float) (max - min)) + 2 * Math.ulp(1f);
+        this.errorBound = interpolation + tail + rounding;
+    }
+
+    /** Sigmoid over [-16, 16] in 4096 steps, within 2.1e-6 of the exact value. */
+    public static LookupTable sigmoid() {
+        // |sigmoid''| peaks at 1 / (6 * sqrt(3))
+        return new LookupTable(new Sigmoid(), -16, 16, 4096, 0.0963);
+    }
+
+    /** Tanh over [-8, 8] in 4096 steps, within 3.9e-6 of the exact value. */
+    public static LookupTable tanh() {
+        // |tanh''| peaks at 4 / (3 * sqrt(3))
+        return new LookupTable(new Tanh(), -8, 8, 4096, 0.7699);
+    }
+
+    public double getErrorBound() {
+        return errorBound;
+    }
+
+    public float value(float x) {
+        float t = (x - min) * scale;
+        if (t <= 0)
+            return values[0];
+        if (t >= intervals)
+            return values[intervals];
+        int i = (int) t;
+        return values[i] + slopes[i] * (t - i);
+    }
+
+    @Override
+    public double value(double x) {
+        return value((float) x);
+    }
+
+    @Override
+    public void apply(float[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = value(x[i]);
+        }
+    }
+
+    @Override
+    public void apply(double[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = value((float) x[i]);
+        }
+    }
+
+    @Override
+    public void derivative(float[] y, float[] out, int offset, int length) {
+        exact.derivative(y, out, offset, length);
+    }
+
+    @Override
+    public void derivative(double[] y, double[] out, int offset, int length) {
+        exact.derivative(y, out, offset, length);
+    }
+
+    @Override
+    public String toString() {
+        return exact + "-table";
+    }
+}
@@ -0,0 +1,42 @@
+package neural.activations;
+
+public final class Relu implements Activation {
+
+    @Override
+    public double value(double x) {
+        return x > 0 ? x : 0;
+    }
+
+    @Override
+    public void apply(float[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = Math.max(x[i], 0f);
+        }
+    }
+
+    @Override
+    public void apply(double[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = Math.max(x[i], 0d);
+        }
+    }
+
+    @Override
+    public void derivative(float[] y, float[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = y[i] > 0 ? 1f : 0f;
+        }
+    }
+
+    @Override
+    public void derivative(double[] y, double[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = y[i] > 0 ? 1d : 0d;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "relu";
+    }
+}
@@ -0,0 +1,46 @@
+package neural.activations;
+
+public final class Sigmoid implements Activation {
+
+    public static double sigmoid(double x) {
+        return 1 / (1 + Math.exp(-x));
+    }
+
+    @Override
+    public double value(double x) {
+        return sigmoid(x);
+    }
+
+    @Override
+    public void apply(float[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = (float) (1 / (1 + Math.exp(-x[i])));
+        }
+    }
+
+    @Override
+    public void apply(double[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = 1 / (1 + Math.exp(-x[i]));
+        }
+    }
+
+    @Override
+    public void derivative(float[] y, float[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = y[i] * (1 - y[i]);
+        }
+    }
+
+    @Override
+    public void derivative(double[] y, double[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = y[i] * (1 - y[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "sigmoid";
+    }
+}
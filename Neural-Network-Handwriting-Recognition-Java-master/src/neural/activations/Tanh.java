@@ -0,0 +1,42 @@
+package neural.activations;
+
+public final class Tanh implements Activation {
+
+    @Override
+    public double value(double x) {
+        return Math.tanh(x);
+    }
+
+    @Override
+    public void apply(float[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = (float) Math.tanh(x[i]);
+        }
+    }
+
+    @Override
+    public void apply(double[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = Math.tanh(x[i]);
+        }
+    }
+
+    @Override
+    public void derivative(float[] y, float[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = 1 - y[i] * y[i];
+        }
+    }
+
+    @Override
+    public void derivative(double[] y, double[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = 1 - y[i] * y[i];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "tanh";
+    }
+}
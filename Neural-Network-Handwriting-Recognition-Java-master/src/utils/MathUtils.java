@@ -1,9 +1,16 @@
 package utils;
 
+import neural.activations.Sigmoid;
+
 public class MathUtils {
 
+    /**
+     * One neuron at a time, boxed. Layers should use the batch kernels in
+     * neural.activations instead.
+     */
+    @Deprecated
     public static double sigmoidValue(Double arg) {
-        return (1 / (1 + Math.exp(-arg)));
+        return Sigmoid.sigmoid(arg);
     }
 
 }